@@ -46,6 +46,7 @@ import static gov.cms.ab2d.api.util.SwaggerConstants.BULK_EXPORT;
 import static gov.cms.ab2d.api.util.SwaggerConstants.BULK_EXPORT_TYPE;
 import static gov.cms.ab2d.api.util.SwaggerConstants.BULK_OUTPUT_FORMAT;
 import static gov.cms.ab2d.api.util.SwaggerConstants.BULK_PREFER;
+import static gov.cms.ab2d.common.service.JobService.GZIPFORMAT;
 import static gov.cms.ab2d.common.service.JobService.ZIPFORMAT;
 import static gov.cms.ab2d.common.util.Constants.*;
 import static java.time.format.DateTimeFormatter.ISO_DATE_TIME;
@@ -63,7 +64,7 @@ public class BulkDataAccessAPI {
 
     // Since this is used in an annotation, it can't be derived from the Set, otherwise it will be an error
     private static final String ALLOWABLE_OUTPUT_FORMATS =
-            "application/fhir+ndjson,application/ndjson,ndjson," + ZIPFORMAT;
+            "application/fhir+ndjson,application/ndjson,ndjson," + ZIPFORMAT + "," + GZIPFORMAT;
 
     private static final Set<String> ALLOWABLE_OUTPUT_FORMAT_SET = Set.of(ALLOWABLE_OUTPUT_FORMATS.split(","));
 
@@ -183,7 +184,8 @@ public class BulkDataAccessAPI {
         }
 
         final boolean zipSupportOn = propertiesService.isToggleOn(ZIP_SUPPORT_ON);
-        if (!zipSupportOn && ZIPFORMAT.equalsIgnoreCase(outputFormat)) {
+        // Compressed output formats are only available when the toggle is on
+        if (!zipSupportOn && (ZIPFORMAT.equalsIgnoreCase(outputFormat) || GZIPFORMAT.equalsIgnoreCase(outputFormat))) {
             throw new InvalidUserInputException(errMsg);
         }
     }
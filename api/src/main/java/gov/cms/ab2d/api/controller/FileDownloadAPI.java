@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 import static gov.cms.ab2d.api.util.Constants.GENERIC_FHIR_ERR_MSG;
+import static gov.cms.ab2d.common.service.JobService.GZIPFORMAT;
 import static gov.cms.ab2d.common.service.JobService.ZIPFORMAT;
 import static gov.cms.ab2d.common.util.Constants.*;
 
@@ -42,18 +43,18 @@ public class FileDownloadAPI {
     private LogManager eventLogger;
 
     @ApiOperation(value = "Downloads a file produced by an export job.", response = String.class,
-            produces = NDJSON_FIRE_CONTENT_TYPE + " or " + ZIPFORMAT,
+            produces = NDJSON_FIRE_CONTENT_TYPE + ", " + ZIPFORMAT + " or " + GZIPFORMAT,
             authorizations = {
                     @Authorization(value = "Authorization", scopes = {
                             @AuthorizationScope(description = "Downloads Export File", scope = "Authorization") })
             })
     @ApiImplicitParams(value = {
             @ApiImplicitParam(name = "Accept", required = false, paramType = "header", value =
-                    NDJSON_FIRE_CONTENT_TYPE + " or " + ZIPFORMAT, defaultValue = NDJSON_FIRE_CONTENT_TYPE)}
+                    NDJSON_FIRE_CONTENT_TYPE + ", " + ZIPFORMAT + " or " + GZIPFORMAT, defaultValue = NDJSON_FIRE_CONTENT_TYPE)}
     )
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Returns the requested file as " +
-                    NDJSON_FIRE_CONTENT_TYPE + " or " + ZIPFORMAT, responseHeaders = {
+                    NDJSON_FIRE_CONTENT_TYPE + ", " + ZIPFORMAT + " or " + GZIPFORMAT, responseHeaders = {
                     @ResponseHeader(name = "Content-Type", description =
                             "Content-Type header that matches the file format being delivered: " +
                                     NDJSON_FIRE_CONTENT_TYPE,
@@ -83,6 +84,8 @@ public class FileDownloadAPI {
         String mimeType = NDJSON_FIRE_CONTENT_TYPE;
         if (downloadResource.getFilename().endsWith("zip")) {
             mimeType = ZIPFORMAT;
+        } else if (downloadResource.getFilename().endsWith("gz")) {
+            mimeType = GZIPFORMAT;
         }
         response.setHeader(HttpHeaders.CONTENT_TYPE, mimeType);
 
@@ -1,5 +1,6 @@
 package gov.cms.ab2d.api.util;
 
+import static gov.cms.ab2d.common.service.JobServiceImpl.GZIPFORMAT;
 import static gov.cms.ab2d.common.service.JobServiceImpl.ZIPFORMAT;
 
 public final class SwaggerConstants {
@@ -20,11 +21,11 @@ public final class SwaggerConstants {
 
     public static final String BULK_PREFER = "Value must be respond-async";
 
-    public static final String BULK_ACCEPT = "Value must be application/fhir+json or " + ZIPFORMAT;
+    public static final String BULK_ACCEPT = "Value must be application/fhir+json, " + ZIPFORMAT + " or " + GZIPFORMAT;
 
     public static final String BULK_OUTPUT_FORMAT = "The format for the " +
-            "requested bulk data files to be generated. Currently, only application/fhir+json and " + ZIPFORMAT +
-            " are supported.";
+            "requested bulk data files to be generated. Currently, only application/fhir+json, " + ZIPFORMAT +
+            " and " + GZIPFORMAT + " are supported.";
 
     public static final String BULK_CONTRACT_EXPORT = "Initiate Part A & B bulk claim export job for a given contract number";
     public static final String BULK_CANCEL = "Cancel a pending or in progress export job";
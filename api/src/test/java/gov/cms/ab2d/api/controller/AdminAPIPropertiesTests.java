@@ -84,6 +84,8 @@ public class AdminAPIPropertiesTests {
             put(MAINTENANCE_MODE, "false");
             put(CONTRACT_2_BENE_CACHING_ON, "false");
             put(ZIP_SUPPORT_ON, "false");
+            put(PCP_SCHEDULING_POLICY, "ROUND_ROBIN");
+            put(PCP_SCHEDULING_WEIGHTS, "");
         }};
 
         MvcResult mvcResult = this.mockMvc.perform(
@@ -98,7 +100,7 @@ public class AdminAPIPropertiesTests {
         ObjectMapper mapper = new ObjectMapper();
         List<PropertiesDTO> propertiesDTOs = mapper.readValue(result, new TypeReference<List<PropertiesDTO>>() { } );
 
-        Assert.assertEquals(6, propertiesDTOs.size());
+        Assert.assertEquals(8, propertiesDTOs.size());
         for(PropertiesDTO propertiesDTO : propertiesDTOs) {
             Object value = propertyMap.get(propertiesDTO.getKey());
 
@@ -32,7 +32,9 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.OffsetDateTime;
@@ -41,9 +43,11 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import static gov.cms.ab2d.api.controller.JobCompletedResponse.CHECKSUM_STRING;
 import static gov.cms.ab2d.api.controller.JobCompletedResponse.CONTENT_LENGTH_STRING;
+import static gov.cms.ab2d.common.service.JobService.GZIPFORMAT;
 import static gov.cms.ab2d.common.service.JobServiceImpl.INITIAL_JOB_STATUS_MESSAGE;
 import static gov.cms.ab2d.common.util.Constants.*;
 import static gov.cms.ab2d.common.util.DataSetup.TEST_USER;
@@ -113,6 +117,7 @@ public class BulkDataAccessAPIIntegrationTests {
         doAll.delete();
 
         testUtil.turnMaintenanceModeOff();
+        testUtil.setZipSupport(false);
         token = testUtil.setupToken(List.of(SPONSOR_ROLE));
     }
 
@@ -394,6 +399,37 @@ public class BulkDataAccessAPIIntegrationTests {
                         Is.is("An _outputFormat of application/zip is not valid")));
     }
 
+    @Test
+    public void testPatientExportWithGzipOutputFormatWhenZipSupportOff() throws Exception {
+        final String typeParams = "?_outputFormat=application/gzip";
+        this.mockMvc.perform(get(API_PREFIX + FHIR_PREFIX + "/" + PATIENT_EXPORT_PATH + typeParams)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", "Bearer " + token))
+                .andExpect(status().is(400))
+                .andExpect(jsonPath("$.resourceType", Is.is("OperationOutcome")))
+                .andExpect(jsonPath("$.issue[0].severity", Is.is("error")))
+                .andExpect(jsonPath("$.issue[0].code", Is.is("invalid")))
+                .andExpect(jsonPath("$.issue[0].details.text",
+                        Is.is("An _outputFormat of application/gzip is not valid")));
+
+        assertTrue(jobRepository.findAll().isEmpty());
+    }
+
+    @Test
+    public void testPatientExportWithGzipOutputFormatWhenZipSupportOn() throws Exception {
+        testUtil.setZipSupport(true);
+
+        final String typeParams = "?_outputFormat=application/gzip";
+        this.mockMvc.perform(get(API_PREFIX + FHIR_PREFIX + "/" + PATIENT_EXPORT_PATH + typeParams)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", "Bearer " + token))
+                .andExpect(status().isAccepted());
+
+        Job job = jobRepository.findAll(Sort.by(Sort.Direction.DESC, "id")).iterator().next();
+        assertEquals(GZIPFORMAT, job.getOutputFormat());
+        assertEquals(JobStatus.SUBMITTED, job.getStatus());
+    }
+
     @Test
     public void testDeleteJob() throws Exception {
         this.mockMvc.perform(
@@ -879,6 +915,46 @@ public class BulkDataAccessAPIIntegrationTests {
         Assert.assertTrue(!Files.exists(Paths.get(destinationStr + File.separator + testFile)));
     }
 
+    @Test
+    public void testDownloadGzipFile() throws Exception {
+        testUtil.setZipSupport(true);
+        MvcResult mvcResult = this.mockMvc.perform(
+                get(API_PREFIX + FHIR_PREFIX + PATIENT_EXPORT_PATH + "?_outputFormat=application/gzip")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Authorization", "Bearer " + token))
+                .andReturn();
+        String statusUrl = mvcResult.getResponse().getHeader("Content-Location");
+
+        String testFile = "test.ndjson";
+
+        Job job = testUtil.createTestJobForDownload(testFile + ".gz");
+
+        String destinationStr = testUtil.createTestGzipDownloadFile(tmpJobLocation, job, testFile);
+
+        MvcResult mvcResultStatusCall =
+                this.mockMvc.perform(get(statusUrl).contentType(MediaType.APPLICATION_JSON)
+                        .header("Authorization", "Bearer " + token))
+                        .andReturn();
+        String downloadUrl = JsonPath.read(mvcResultStatusCall.getResponse().getContentAsString(),
+                "$.output[0].url");
+        MvcResult downloadFileCall =
+                this.mockMvc.perform(get(downloadUrl).contentType(MediaType.APPLICATION_JSON)
+                        .header("Authorization", "Bearer " + token))
+                        .andExpect(status().is(200))
+                        .andExpect(header().string("Content-Type", GZIPFORMAT))
+                        .andReturn();
+
+        String downloadedFile;
+        try (var in = new GZIPInputStream(
+                new ByteArrayInputStream(downloadFileCall.getResponse().getContentAsByteArray()))) {
+            downloadedFile = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String testValue = JsonPath.read(downloadedFile, "$.test");
+        assertEquals("value", testValue);
+
+        Assert.assertTrue(!Files.exists(Paths.get(destinationStr + File.separator + testFile + ".gz")));
+    }
+
     @Test
     public void testDownloadMissingFileGenericError() throws Exception {
         MvcResult mvcResult = this.mockMvc.perform(
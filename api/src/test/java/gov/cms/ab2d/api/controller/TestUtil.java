@@ -24,6 +24,7 @@ import javax.crypto.SecretKey;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -34,9 +35,11 @@ import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
 import static gov.cms.ab2d.common.util.Constants.EOB;
 import static gov.cms.ab2d.common.util.Constants.MAINTENANCE_MODE;
+import static gov.cms.ab2d.common.util.Constants.ZIP_SUPPORT_ON;
 import static gov.cms.ab2d.common.util.DataSetup.TEST_USER;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
@@ -126,6 +129,22 @@ public class TestUtil {
         return destinationStr;
     }
 
+    /**
+     * Write the test file compressed as the worker writes it when the job asked for application/gzip
+     *
+     * @return the directory of the job
+     */
+    public String createTestGzipDownloadFile(String tmpJobLocation, Job job, String testFile) throws IOException {
+        Path destination = Paths.get(tmpJobLocation, job.getJobUuid());
+        Files.createDirectories(destination);
+        try (InputStream in = this.getClass().getResourceAsStream("/" + testFile);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(destination.resolve(testFile + ".gz")))) {
+            IOUtils.copy(in, out);
+        }
+
+        return destination.toString();
+    }
+
     public Job createTestJobForDownload(String testFile) {
         Job job = jobRepository.findAll(Sort.by(Sort.Direction.DESC, "id")).iterator().next();
         job.setStatus(JobStatus.SUCCESSFUL);
@@ -160,6 +179,13 @@ public class TestUtil {
         propertiesService.updateProperties(propertiesDTOs);
     }
 
+    public void setZipSupport(boolean zipSupportOn) {
+        PropertiesDTO propertiesDTO = new PropertiesDTO();
+        propertiesDTO.setKey(ZIP_SUPPORT_ON);
+        propertiesDTO.setValue(String.valueOf(zipSupportOn));
+        propertiesService.updateProperties(List.of(propertiesDTO));
+    }
+
     private String buildTokenStr() {
         if(jwtStr != null) {
             return jwtStr;
@@ -11,6 +11,23 @@ public interface BFDClient {
     Bundle requestEOBFromServer(String patientID);
     Bundle requestEOBFromServer(String patientID, OffsetDateTime sinceTime);
     Bundle requestNextBundleFromServer(Bundle bundle);
+
+    /**
+     * Request the first page of the EOB bundle of a patient as it was sent, without parsing it
+     *
+     * @param patientID - the patient
+     * @param sinceTime - only EOBs last updated after this time, null for all of them
+     * @return the JSON of the bundle
+     */
+    byte[] requestEOBJsonFromServer(String patientID, OffsetDateTime sinceTime);
+
+    /**
+     * Request the next page of a bundle as it was sent, without parsing it
+     *
+     * @param nextUrl - the url of the next link of the previous page
+     * @return the JSON of the bundle
+     */
+    byte[] requestNextBundleJsonFromServer(String nextUrl);
     Bundle requestPatientByHICN(String patientId);
     Bundle requestPatientByMBI(String patientId);
 
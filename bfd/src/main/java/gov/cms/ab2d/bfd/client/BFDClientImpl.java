@@ -1,15 +1,24 @@
 package gov.cms.ab2d.bfd.client;
 
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
 import ca.uhn.fhir.rest.gclient.ICriterion;
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
 import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.util.EntityUtils;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.CapabilityStatement;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
@@ -24,6 +33,9 @@ import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import javax.validation.constraints.NotEmpty;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
@@ -49,6 +61,9 @@ public class BFDClientImpl implements BFDClient {
 
     private IGenericClient client;
 
+    // The client HAPI uses, for requests whose response isn't parsed
+    private HttpClient httpClient;
+
     @Value("${bfd.hicn.hash}")
     private String hicnHash;
 
@@ -62,8 +77,9 @@ public class BFDClientImpl implements BFDClient {
     @Value("${bfd.hash.iter}")
     private int bfdHashIter;
 
-    public BFDClientImpl(IGenericClient bfdFhirRestClient) {
+    public BFDClientImpl(IGenericClient bfdFhirRestClient, HttpClient bfdHttpClient) {
         this.client = bfdFhirRestClient;
+        this.httpClient = bfdHttpClient;
     }
 
     /**
@@ -134,6 +150,81 @@ public class BFDClientImpl implements BFDClient {
                 .execute();
     }
 
+    /**
+     * Makes the same request as {@link #requestEOBFromServer(String, OffsetDateTime)} but returns the JSON of the
+     * bundle as it was sent, so it can be filtered without parsing it into HAPI resources
+     *
+     * @param patientID The requested patient's ID
+     * @param sinceTime The start date for the request, null for all EOBs
+     * @return the JSON of the first page of the bundle
+     * @throws ResourceNotFoundException when the requested patient does not exist
+     */
+    @Override
+    @Retryable(
+            maxAttemptsExpression = "${bfd.retry.maxAttempts:3}",
+            backoff = @Backoff(delayExpression = "${bfd.retry.backoffDelay:250}", multiplier = 2),
+            exclude = { ResourceNotFoundException.class }
+    )
+    public byte[] requestEOBJsonFromServer(String patientID, OffsetDateTime sinceTime) {
+        String serverBase = StringUtils.appendIfMissing(client.getServerBase(), "/");
+        try {
+            var uriBuilder = new URIBuilder(serverBase + "ExplanationOfBenefit")
+                    .addParameter("patient", patientID)
+                    .addParameter("excludeSAMHSA", "true");
+            if (sinceTime != null) {
+                var updatedSince = new DateRangeParam(Date.from(sinceTime.toInstant()), null);
+                uriBuilder.addParameter(Constants.PARAM_LASTUPDATED,
+                        updatedSince.getLowerBound().getValueAsQueryToken(client.getFhirContext()));
+            }
+            if (pageSize > 0) {
+                uriBuilder.addParameter(Constants.PARAM_COUNT, Integer.toString(pageSize));
+            }
+            uriBuilder.addParameter(Constants.PARAM_FORMAT, Constants.FORMAT_JSON);
+            return requestJson(uriBuilder.build());
+        } catch (URISyntaxException e) {
+            throw new InvalidRequestException("Could not build the EOB request for " + serverBase);
+        }
+    }
+
+    /**
+     * Makes the same request as {@link #requestNextBundleFromServer(Bundle)} but returns the JSON of the bundle as
+     * it was sent
+     *
+     * @param nextUrl The url of the next link of the previous page
+     * @return the JSON of the next page of the bundle
+     */
+    @Override
+    @Retryable(
+            maxAttemptsExpression = "${bfd.retry.maxAttempts:3}",
+            backoff = @Backoff(delayExpression = "${bfd.retry.backoffDelay:250}", multiplier = 2),
+            exclude = { ResourceNotFoundException.class }
+    )
+    public byte[] requestNextBundleJsonFromServer(String nextUrl) {
+        return requestJson(URI.create(nextUrl));
+    }
+
+    /**
+     * Get the response without parsing it, failing the same way HAPI does when the request fails
+     */
+    private byte[] requestJson(URI uri) {
+        var request = new HttpGet(uri);
+        request.addHeader(HttpHeaders.ACCEPT, Constants.CT_FHIR_JSON_NEW);
+        try {
+            HttpResponse response = httpClient.execute(request);
+            byte[] body = response.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(response.getEntity());
+            int status = response.getStatusLine().getStatusCode();
+            if (status < 200 || status > 299) {
+                throw BaseServerResponseException.newInstance(status, "Request to " + uri + " failed with status "
+                        + status + ": " + response.getStatusLine().getReasonPhrase());
+            }
+            return body;
+        } catch (IOException e) {
+            throw new FhirClientConnectionException(e);
+        } finally {
+            request.releaseConnection();
+        }
+    }
+
     /**
      * Pull all the data (specifically IDs) from the patient
      *
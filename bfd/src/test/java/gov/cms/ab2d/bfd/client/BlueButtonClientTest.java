@@ -1,6 +1,8 @@
 package gov.cms.ab2d.bfd.client;
 
+import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -29,6 +31,7 @@ import java.text.SimpleDateFormat;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.MissingResourceException;
 import java.util.concurrent.TimeUnit;
@@ -67,6 +70,12 @@ public class BlueButtonClientTest {
     };
     private static final String CONTRACT = "S00001";
 
+    // The time EOBs are requested since when the JSON is requested
+    private static final OffsetDateTime JSON_SINCE = OffsetDateTime.parse("2020-02-13T00:00:00.000-05:00",
+            DateTimeFormatter.ISO_DATE_TIME);
+    private static final String FHIR_XML = "application/fhir+xml;charset=UTF-8";
+    private static final String FHIR_JSON = "application/fhir+json;charset=UTF-8";
+
     @Autowired
     private BFDClient bbc;
 
@@ -82,6 +91,33 @@ public class BlueButtonClientTest {
                 getRawXML(METADATA_PATH), List
                         .of());
 
+        // The JSON of a bundle is only sent for the same request with _format=json added, so these are matched
+        // before the XML for the same patient
+        createMockServerExpectation(
+                "/v1/fhir/ExplanationOfBenefit",
+                HttpStatus.SC_OK,
+                getRawJson(SAMPLE_EOB_PATH_PREFIX + TEST_PATIENT_ID + ".xml"),
+                List.of(Parameter.param("patient", TEST_PATIENT_ID),
+                        Parameter.param("excludeSAMHSA", "true"),
+                        Parameter.param("_lastUpdated", lastUpdatedSince(JSON_SINCE)),
+                        Parameter.param("_count", "10"),
+                        Parameter.param("_format", "json")),
+                100,
+                FHIR_JSON
+        );
+        createMockServerExpectation(
+                "/v1/fhir/ExplanationOfBenefit",
+                HttpStatus.SC_OK,
+                getRawJson(SAMPLE_EOB_PATH_PREFIX + TEST_PATIENT_ID + "_10.xml"),
+                List.of(Parameter.param("patient", TEST_PATIENT_ID),
+                        Parameter.param("excludeSAMHSA", "true"),
+                        Parameter.param("_count", "10"),
+                        Parameter.param("startIndex", "10"),
+                        Parameter.param("_format", "json")),
+                100,
+                FHIR_JSON
+        );
+
         // Ensure timeouts are working.
         createMockServerExpectation(
                 "/v1/fhir/ExplanationOfBenefit",
@@ -244,6 +280,32 @@ public class BlueButtonClientTest {
         assertEquals(10, nextResponse.getEntry().size());
     }
 
+    @Test
+    public void shouldGetEOBJsonAsItWasSent() throws IOException {
+        byte[] response = bbc.requestEOBJsonFromServer(TEST_PATIENT_ID, JSON_SINCE);
+
+        assertEquals(getRawJson(SAMPLE_EOB_PATH_PREFIX + TEST_PATIENT_ID + ".xml"),
+                new String(response, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void shouldGetNextBundleJsonAsItWasSent() throws IOException {
+        byte[] response = bbc.requestNextBundleJsonFromServer("http://localhost:" + mockServerPort
+                + "/v1/fhir/ExplanationOfBenefit?patient=" + TEST_PATIENT_ID
+                + "&excludeSAMHSA=true&_count=10&startIndex=10&_format=json");
+
+        assertEquals(getRawJson(SAMPLE_EOB_PATH_PREFIX + TEST_PATIENT_ID + "_10.xml"),
+                new String(response, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenEOBJsonNotFound() {
+        assertThrows(
+                ResourceNotFoundException.class,
+                () -> bbc.requestEOBJsonFromServer(TEST_NONEXISTENT_PATIENT_ID, null)
+        );
+    }
+
     @Test
     public void shouldReturnBundleContainingOnlyEOBs() {
         Bundle response = bbc.requestEOBFromServer(TEST_PATIENT_ID);
@@ -336,6 +398,12 @@ public class BlueButtonClientTest {
 
     private static void createMockServerExpectation(String path, int respCode, String payload,
                                                     List<Parameter> qStringParams, int delayMs) {
+        createMockServerExpectation(path, respCode, payload, qStringParams, delayMs, FHIR_XML);
+    }
+
+    private static void createMockServerExpectation(String path, int respCode, String payload,
+                                                    List<Parameter> qStringParams, int delayMs,
+                                                    String contentType) {
         new MockServerClient("localhost", mockServerPort)
                 .when(
                         HttpRequest.request()
@@ -348,8 +416,7 @@ public class BlueButtonClientTest {
                         org.mockserver.model.HttpResponse.response()
                                 .withStatusCode(respCode)
                                 .withHeader(
-                                        new Header("Content-Type",
-                                                "application/fhir+xml;charset=UTF-8")
+                                        new Header("Content-Type", contentType)
                                 )
                                 .withBody(payload)
                                 .withDelay(TimeUnit.MILLISECONDS, delayMs)
@@ -357,6 +424,23 @@ public class BlueButtonClientTest {
     }
 
 
+    /**
+     * The JSON BFD sends for the same bundle as one of the XML samples
+     */
+    private static String getRawJson(String xmlPath) throws IOException {
+        FhirContext context = FhirContext.forDstu3();
+        Bundle bundle = context.newXmlParser().parseResource(Bundle.class, getRawXML(xmlPath));
+        return context.newJsonParser().encodeResourceToString(bundle);
+    }
+
+    /**
+     * The _lastUpdated parameter the client sends when requesting EOBs updated since the time
+     */
+    private static String lastUpdatedSince(OffsetDateTime sinceTime) {
+        return new DateRangeParam(Date.from(sinceTime.toInstant()), null).getLowerBound()
+                .getValueAsQueryToken(FhirContext.forDstu3());
+    }
+
     private static String getRawXML(String path) throws IOException {
         InputStream sampleData =
                 BlueButtonClientTest.class.getClassLoader().getResourceAsStream(path);
@@ -0,0 +1,39 @@
+package gov.cms.ab2d.common.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.validation.constraints.NotNull;
+import java.time.OffsetDateTime;
+
+/**
+ * A serialized Bloom filter of the ccw ids in the opt_out table, rebuilt after each opt-out import
+ */
+@Entity
+@Getter
+@Setter
+public class OptOutFilter {
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @NotNull
+    private byte[] filter;
+
+    // The number of opt_out rows when the filter was built, so a filter that is out of date can be detected
+    @NotNull
+    private Long optOutCount;
+
+    // A hash of the opt_out rows when the filter was built, so a ccw id changed in place is detected as well
+    @NotNull
+    private String optOutHash;
+
+    @Column(columnDefinition = "TIMESTAMP WITH TIME ZONE")
+    @NotNull
+    private OffsetDateTime createdAt;
+}
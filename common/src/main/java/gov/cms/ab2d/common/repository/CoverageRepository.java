@@ -6,10 +6,15 @@ import gov.cms.ab2d.common.model.Coverage;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface CoverageRepository extends JpaRepository<Coverage, Long> {
@@ -21,6 +26,17 @@ public interface CoverageRepository extends JpaRepository<Coverage, Long> {
             "   AND c.partDMonth = :month ")
     List<String> findActivePatientIds(Long contractId, int month);
 
+    /**
+     * Read the patient ids active in a contract for a month a batch of rows at a time instead of loading them
+     * into a list first. The stream must be read inside a transaction and closed.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "10000"))
+    @Query(" SELECT c.beneficiary.patientId " +
+            "  FROM Coverage c " +
+            " WHERE c.contract.id = :contractId " +
+            "   AND c.partDMonth = :month ")
+    Stream<String> streamActivePatientIds(Long contractId, int month);
+
     Optional<Coverage> findByContractAndBeneficiaryAndPartDMonth(Contract contract, Beneficiary bene, int month);
 
 
@@ -42,5 +58,29 @@ public interface CoverageRepository extends JpaRepository<Coverage, Long> {
             "   AND c.partDMonth = :month  ")
     int deleteByContractIdAndMonth(Long contractId, int month);
 
+    /*
+     * Each cached month is also stored packed into a single coverage_month row, which has to go whenever the
+     * month's coverage does so the month isn't read back from it
+     */
+
+    @Modifying
+    @Query(value = " DELETE FROM coverage_month  " +
+            " WHERE part_d_month = :month  ", nativeQuery = true)
+    int deleteMonthsByMonth(int month);
+
+    @Modifying
+    @Query(value = " DELETE FROM coverage_month  " +
+            " WHERE contract_id = :contractId  ", nativeQuery = true)
+    int deleteMonthsByContractId(Long contractId);
+
+    @Modifying
+    @Query(value = " DELETE FROM coverage_month  " +
+            " WHERE contract_id = :contractId  " +
+            "   AND part_d_month = :month  ", nativeQuery = true)
+    int deleteMonthsByContractIdAndMonth(Long contractId, int month);
+
+    @Modifying
+    @Query(value = " DELETE FROM coverage_month ", nativeQuery = true)
+    int deleteAllMonths();
 
 }
@@ -0,0 +1,13 @@
+package gov.cms.ab2d.common.repository;
+
+import gov.cms.ab2d.common.model.OptOutFilter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface OptOutFilterRepository extends JpaRepository<OptOutFilter, Long> {
+
+    Optional<OptOutFilter> findFirstByOrderByIdDesc();
+}
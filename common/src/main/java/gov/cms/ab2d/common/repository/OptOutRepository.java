@@ -3,10 +3,17 @@ package gov.cms.ab2d.common.repository;
 
 import gov.cms.ab2d.common.model.OptOut;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface OptOutRepository extends JpaRepository<OptOut, Long> {
@@ -14,4 +21,28 @@ public interface OptOutRepository extends JpaRepository<OptOut, Long> {
     List<OptOut> findByCcwId(String ccwId);
 
     Optional<OptOut> findByCcwIdAndHicn(String ccwId, String hicn);
+
+    @Query("SELECT o.ccwId AS ccwId, MIN(o.effectiveDate) AS effectiveDate FROM OptOut o " +
+            "WHERE o.ccwId IS NOT NULL AND o.effectiveDate IS NOT NULL GROUP BY o.ccwId")
+    List<EarliestEffectiveDate> findEarliestEffectiveDates();
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "10000"))
+    @Query("SELECT DISTINCT o.ccwId FROM OptOut o WHERE o.ccwId IS NOT NULL")
+    Stream<String> streamDistinctCcwIds();
+
+    /**
+     * @return an md5 hash of the id and ccw id of every opt_out row, which changes whenever a row is added or
+     * removed or its ccw id is changed
+     */
+    @Query(value = "SELECT md5(COALESCE(string_agg(id || ':' || COALESCE(ccw_id, ''), ',' ORDER BY id), '')) " +
+            "FROM opt_out", nativeQuery = true)
+    String hashCcwIds();
+
+    /**
+     * The earliest effective date of the opt-out records of a beneficiary
+     */
+    interface EarliestEffectiveDate {
+        String getCcwId();
+        LocalDate getEffectiveDate();
+    }
 }
@@ -34,17 +34,21 @@ public class CacheServiceImpl implements CacheService {
 
         int deletedCount = 0;
         if (hasMonth && hasContractNumber) {
+            coverageRepo.deleteMonthsByContractIdAndMonth(contractId, month);
             deletedCount = coverageRepo.deleteByContractIdAndMonth(contractId, month);
             log.info("[{}] {} contractNumber:[{}] and month:[{}]", deletedCount, DEFAULT_MESG, contractNumber, month);
 
         } else if (hasContractNumber) {
+            coverageRepo.deleteMonthsByContractId(contractId);
             deletedCount = coverageRepo.deleteByContractId(contractId);
             log.info("[{}] {} contractNumber:[{}]", deletedCount, DEFAULT_MESG, contractNumber);
 
         } else if (hasMonth) {
+            coverageRepo.deleteMonthsByMonth(month);
             deletedCount = coverageRepo.deleteByMonth(month);
             log.info("[{}] {} month:[{}]", deletedCount, DEFAULT_MESG, month);
         } else {
+            coverageRepo.deleteAllMonths();
             coverageRepo.deleteAll();
             log.info("Deleted all rows from coverage table");
         }
@@ -9,6 +9,7 @@ import java.time.OffsetDateTime;
 
 public interface JobService {
     String ZIPFORMAT = "application/zip";
+    String GZIPFORMAT = "application/gzip";
 
     Job createJob(String resourceTypes, String url, String outputFormat);
 
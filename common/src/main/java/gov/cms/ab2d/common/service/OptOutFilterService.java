@@ -0,0 +1,12 @@
+package gov.cms.ab2d.common.service;
+
+import gov.cms.ab2d.common.util.BloomFilter;
+
+import java.util.Optional;
+
+public interface OptOutFilterService {
+
+    void rebuild();
+
+    Optional<BloomFilter> findCurrentFilter();
+}
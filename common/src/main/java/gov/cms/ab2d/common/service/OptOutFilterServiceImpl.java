@@ -0,0 +1,84 @@
+package gov.cms.ab2d.common.service;
+
+import gov.cms.ab2d.common.model.OptOutFilter;
+import gov.cms.ab2d.common.repository.OptOutFilterRepository;
+import gov.cms.ab2d.common.repository.OptOutRepository;
+import gov.cms.ab2d.common.util.BloomFilter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OptOutFilterServiceImpl implements OptOutFilterService {
+
+    @Value("${optout.filter.false.positive.rate:0.01}")
+    private double falsePositiveRate;
+
+    private final OptOutRepository optOutRepository;
+    private final OptOutFilterRepository optOutFilterRepository;
+
+    /**
+     * Build a Bloom filter of every ccw id in the opt_out table and replace the stored filter with it
+     */
+    @Override
+    @Transactional
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+
+        // Taken before the ccw ids are read, so an opt-out added while they are read makes the filter out of date
+        // rather than missing from a filter which looks current
+        long optOutCount = optOutRepository.count();
+        String optOutHash = optOutRepository.hashCcwIds();
+        BloomFilter bloomFilter = new BloomFilter(optOutCount, falsePositiveRate);
+        try (Stream<String> ccwIds = optOutRepository.streamDistinctCcwIds()) {
+            ccwIds.forEach(bloomFilter::add);
+        }
+
+        OptOutFilter optOutFilter = new OptOutFilter();
+        optOutFilter.setFilter(bloomFilter.toByteArray());
+        optOutFilter.setOptOutCount(optOutCount);
+        optOutFilter.setOptOutHash(optOutHash);
+        optOutFilter.setCreatedAt(OffsetDateTime.now());
+        optOutFilterRepository.deleteAll();
+        optOutFilterRepository.save(optOutFilter);
+
+        log.info("Built opt-out filter of [{}] bytes for [{}] opt-outs in [{}] ms", bloomFilter.getSizeInBytes(),
+                optOutCount, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Return the stored filter if it was built from the current contents of the opt_out table
+     *
+     * @return the filter or empty if there is no filter or it is out of date
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<BloomFilter> findCurrentFilter() {
+        Optional<OptOutFilter> optOutFilter = optOutFilterRepository.findFirstByOrderByIdDesc();
+        if (optOutFilter.isEmpty()) {
+            return Optional.empty();
+        }
+
+        long optOutCount = optOutRepository.count();
+        if (optOutFilter.get().getOptOutCount() != optOutCount) {
+            log.warn("Opt-out filter was built from [{}] opt-outs but there are now [{}], not using it",
+                    optOutFilter.get().getOptOutCount(), optOutCount);
+            return Optional.empty();
+        }
+
+        // The same number of rows may still hold different ccw ids
+        if (!optOutFilter.get().getOptOutHash().equals(optOutRepository.hashCcwIds())) {
+            log.warn("Opt-out filter was built from opt-outs which have since changed, not using it");
+            return Optional.empty();
+        }
+        return Optional.of(BloomFilter.fromByteArray(optOutFilter.get().getFilter()));
+    }
+}
@@ -14,6 +14,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import static gov.cms.ab2d.common.util.Constants.PCP_CORE_POOL_SIZE;
 import static gov.cms.ab2d.common.util.Constants.PCP_MAX_POOL_SIZE;
@@ -22,6 +23,10 @@ import static gov.cms.ab2d.common.util.Constants.PCP_SCALE_TO_MAX_TIME;
 import static gov.cms.ab2d.common.util.Constants.CONTRACT_2_BENE_CACHING_ON;
 import static gov.cms.ab2d.common.util.Constants.ZIP_SUPPORT_ON;
 import static gov.cms.ab2d.common.util.Constants.ALLOWED_PROPERTY_NAMES;
+import static gov.cms.ab2d.common.util.Constants.PCP_SCHEDULING_POLICIES;
+import static gov.cms.ab2d.common.util.Constants.PCP_SCHEDULING_POLICY;
+import static gov.cms.ab2d.common.util.Constants.PCP_SCHEDULING_WEIGHTS;
+import static gov.cms.ab2d.common.util.Constants.PCP_SCHEDULING_WEIGHTS_FORMAT;
 import static java.lang.Boolean.FALSE;
 
 @Service
@@ -84,6 +89,12 @@ public class PropertiesServiceImpl implements PropertiesService {
                 propertiesDTO.getKey().equals(ZIP_SUPPORT_ON)) {
                 validateBoolean(key, propertiesDTO);
                 addUpdatedPropertiesToList(propertiesDTOsReturn, propertiesDTO);
+            } else if (key.equals(PCP_SCHEDULING_POLICY)) {
+                validateOneOf(key, propertiesDTO, PCP_SCHEDULING_POLICIES);
+                addUpdatedPropertiesToList(propertiesDTOsReturn, propertiesDTO);
+            } else if (key.equals(PCP_SCHEDULING_WEIGHTS)) {
+                validateFormat(key, propertiesDTO, PCP_SCHEDULING_WEIGHTS_FORMAT);
+                addUpdatedPropertiesToList(propertiesDTOsReturn, propertiesDTO);
             }
         }
         return propertiesDTOsReturn;
@@ -103,6 +114,21 @@ public class PropertiesServiceImpl implements PropertiesService {
         }
     }
 
+    // Compared ignoring case and surrounding spaces, the same way the worker reads the value
+    void validateOneOf(String var, PropertiesDTO property, Set<String> values) {
+        String val = property.getValue();
+        if (val == null || !values.contains(val.trim().toUpperCase())) {
+            logErrorAndThrowException(var, val);
+        }
+    }
+
+    void validateFormat(String var, PropertiesDTO property, String regex) {
+        String val = property.getValue();
+        if (val == null || !val.matches(regex)) {
+            logErrorAndThrowException(var, val);
+        }
+    }
+
     void checkNameOfPropertyKey(PropertiesDTO properties) {
         if (!ALLOWED_PROPERTY_NAMES.contains(properties.getKey())) {
             log.error("Properties must contain a valid key name, received {}", properties.getKey());
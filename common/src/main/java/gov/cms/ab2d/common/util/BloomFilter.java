@@ -0,0 +1,137 @@
+package gov.cms.ab2d.common.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A Bloom filter of strings which can be serialized and shared between processes. A negative answer from
+ * mightContain is always right, a positive answer is wrong at roughly the false positive rate the filter was
+ * sized for.
+ *
+ * The hash only depends on the characters of the string so a serialized filter gives the same answers in any JVM.
+ */
+public class BloomFilter {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] bits;
+    private final long numBits;
+    private final int numHashFunctions;
+
+    /**
+     * Create a filter sized to hold the expected number of strings at the false positive rate
+     *
+     * @param expectedInsertions - the number of strings which will be added
+     * @param falsePositiveRate - the chance of mightContain returning true for a string which wasn't added
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("The false positive rate must be between 0 and 1");
+        }
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (m + 63) / 64));
+        this.bits = new long[words];
+        this.numBits = (long) words * 64;
+        this.numHashFunctions = (int) Math.max(1, Math.round((double) numBits / n * Math.log(2)));
+    }
+
+    private BloomFilter(long[] bits, int numHashFunctions) {
+        this.bits = bits;
+        this.numBits = (long) bits.length * 64;
+        this.numHashFunctions = numHashFunctions;
+    }
+
+    /**
+     * Add a string to the filter
+     *
+     * @param value - the string
+     */
+    public void add(String value) {
+        long hash1 = hash(value);
+        long hash2 = mix(hash1 ^ FNV_PRIME);
+        for (int i = 0; i < numHashFunctions; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, numBits);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Determine if the string might have been added to the filter
+     *
+     * @param value - the string
+     * @return false if the string was definitely not added, true if it probably was
+     */
+    public boolean mightContain(String value) {
+        long hash1 = hash(value);
+        long hash2 = mix(hash1 ^ FNV_PRIME);
+        for (int i = 0; i < numHashFunctions; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, numBits);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the size of the serialized filter in bytes
+     */
+    public int getSizeInBytes() {
+        return Integer.BYTES + Long.BYTES * bits.length;
+    }
+
+    /**
+     * Serialize the filter
+     *
+     * @return the filter as bytes
+     */
+    public byte[] toByteArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(getSizeInBytes());
+        buffer.putInt(numHashFunctions);
+        buffer.asLongBuffer().put(bits);
+        return buffer.array();
+    }
+
+    /**
+     * Read a filter serialized with toByteArray
+     *
+     * @param bytes - the serialized filter
+     * @return the filter
+     */
+    public static BloomFilter fromByteArray(byte[] bytes) {
+        if (bytes.length < Integer.BYTES + Long.BYTES || (bytes.length - Integer.BYTES) % Long.BYTES != 0) {
+            throw new IllegalArgumentException("Not a serialized bloom filter");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int numHashFunctions = buffer.getInt();
+        long[] bits = new long[(bytes.length - Integer.BYTES) / Long.BYTES];
+        buffer.asLongBuffer().get(bits);
+        return new BloomFilter(bits, numHashFunctions);
+    }
+
+    /**
+     * A 64 bit FNV-1a hash of the characters of the string with the bits mixed so they can be used for indexing
+     */
+    private static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The MurmurHash3 64 bit finalizer
+     */
+    private static long mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -53,8 +53,20 @@ public final class Constants {
 
     public static final String ZIP_SUPPORT_ON = "ZipSupportOn";
 
+    public static final String PCP_SCHEDULING_POLICY = "pcp.scheduling.policy";
+
+    public static final String PCP_SCHEDULING_WEIGHTS = "pcp.scheduling.weights";
+
     public static final Set<String> ALLOWED_PROPERTY_NAMES = Set.of(PCP_CORE_POOL_SIZE, PCP_MAX_POOL_SIZE,
-            PCP_SCALE_TO_MAX_TIME, MAINTENANCE_MODE, CONTRACT_2_BENE_CACHING_ON, ZIP_SUPPORT_ON);
+            PCP_SCALE_TO_MAX_TIME, MAINTENANCE_MODE, CONTRACT_2_BENE_CACHING_ON, ZIP_SUPPORT_ON,
+            PCP_SCHEDULING_POLICY, PCP_SCHEDULING_WEIGHTS);
+
+    // The policies the patient processor queue can share its threads between jobs with
+    public static final Set<String> PCP_SCHEDULING_POLICIES = Set.of("ROUND_ROBIN", "DEFICIT_ROUND_ROBIN",
+            "SHORTEST_REMAINING_WORK_FIRST");
+
+    // Comma separated weights of jobs, contracts or sponsors, e.g. "S1234=5,Z0001=2", or nothing
+    public static final String PCP_SCHEDULING_WEIGHTS_FORMAT = "^(\\s*[^=,\\s]+\\s*=\\s*[1-9]\\d{0,3}\\s*(,|$))*$";
 
     // This is the earliest time the _since filter is valid - probably should be in the properties file but I
     // wanted to include it in the swagger documentation and for the swagger annotation, the value has to be
@@ -0,0 +1,9 @@
+--liquibase formatted sql
+--  -------------------------------------------------------------------------------------------------------------------
+
+
+--changeset ab2d:add_pcp_scheduling_properties failOnError:true
+INSERT INTO properties (id, key, value) VALUES((select nextval('hibernate_sequence')), 'pcp.scheduling.policy', 'ROUND_ROBIN');
+INSERT INTO properties (id, key, value) VALUES((select nextval('hibernate_sequence')), 'pcp.scheduling.weights', '');
+
+--rollback DELETE FROM properties WHERE key IN ('pcp.scheduling.policy', 'pcp.scheduling.weights');
@@ -0,0 +1,16 @@
+--liquibase formatted sql
+--  -------------------------------------------------------------------------------------------------------------------
+
+--changeset ab2d:create_coverage_month_table failOnError:true
+CREATE TABLE coverage_month
+(
+    contract_id         BIGINT              NOT NULL,
+    part_d_month        INTEGER             NOT NULL,
+    patient_ids         BYTEA               NOT NULL
+);
+
+ALTER TABLE coverage_month ADD CONSTRAINT "pk_coverage_month" PRIMARY KEY (contract_id, part_d_month);
+ALTER TABLE coverage_month ADD CONSTRAINT "fk_coverage_month_to_contract" FOREIGN KEY (contract_id) REFERENCES contract (id) ON DELETE CASCADE;
+
+--rollback  DROP TABLE coverage_month;
+--  -------------------------------------------------------------------------------------------------------------------
@@ -0,0 +1,9 @@
+CREATE TABLE opt_out_filter (
+    id BIGINT NOT NULL,
+    filter BYTEA NOT NULL,
+    opt_out_count BIGINT NOT NULL,
+    opt_out_hash VARCHAR(32) NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+ALTER TABLE opt_out_filter ADD CONSTRAINT "pk_opt_out_filter" PRIMARY KEY (id);
@@ -51,6 +51,8 @@ public class PropertiesServiceTest {
             put(MAINTENANCE_MODE, "false");
             put(CONTRACT_2_BENE_CACHING_ON, "false");
             put(ZIP_SUPPORT_ON, "false");
+            put(PCP_SCHEDULING_POLICY, "ROUND_ROBIN");
+            put(PCP_SCHEDULING_WEIGHTS, "");
         }};
 
         List<Properties> propertyListBeforeInsert = propertiesService.getAllProperties();
@@ -177,6 +179,27 @@ public class PropertiesServiceTest {
         val.validateBoolean(ZIP_SUPPORT_ON, p2);
         p2.setValue(null);
         assertThrows(NullPointerException.class, () -> val.validateBoolean(ZIP_SUPPORT_ON, p2));
+
+        p2.setKey(PCP_SCHEDULING_POLICY);
+        p2.setValue("FIRST_COME_FIRST_SERVED");
+        assertThrows(InvalidPropertiesException.class,
+                () -> val.validateOneOf(PCP_SCHEDULING_POLICY, p2, PCP_SCHEDULING_POLICIES));
+        p2.setValue("DEFICIT_ROUND_ROBIN");
+        val.validateOneOf(PCP_SCHEDULING_POLICY, p2, PCP_SCHEDULING_POLICIES);
+        p2.setValue(" shortest_remaining_work_first ");
+        val.validateOneOf(PCP_SCHEDULING_POLICY, p2, PCP_SCHEDULING_POLICIES);
+
+        p2.setKey(PCP_SCHEDULING_WEIGHTS);
+        p2.setValue("S1234=5, Z0001 = 2");
+        val.validateFormat(PCP_SCHEDULING_WEIGHTS, p2, PCP_SCHEDULING_WEIGHTS_FORMAT);
+        p2.setValue("");
+        val.validateFormat(PCP_SCHEDULING_WEIGHTS, p2, PCP_SCHEDULING_WEIGHTS_FORMAT);
+        p2.setValue("S1234=0");
+        assertThrows(InvalidPropertiesException.class,
+                () -> val.validateFormat(PCP_SCHEDULING_WEIGHTS, p2, PCP_SCHEDULING_WEIGHTS_FORMAT));
+        p2.setValue("S1234");
+        assertThrows(InvalidPropertiesException.class,
+                () -> val.validateFormat(PCP_SCHEDULING_WEIGHTS, p2, PCP_SCHEDULING_WEIGHTS_FORMAT));
     }
 
     private void validateInvalidPropertyValues(String key, String value) {
@@ -202,6 +225,8 @@ public class PropertiesServiceTest {
             put(PCP_SCALE_TO_MAX_TIME, "3601");
             put(PCP_SCALE_TO_MAX_TIME, "0");
             put(MAINTENANCE_MODE, "BADVALUE");
+            put(PCP_SCHEDULING_POLICY, "LONGEST_FIRST");
+            put(PCP_SCHEDULING_WEIGHTS, "S1234=five");
         }};
 
         invalidKeysValues.forEach((key, value) -> {
@@ -0,0 +1,69 @@
+package gov.cms.ab2d.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    private static final int NUM_IDS = 100_000;
+
+    @Test
+    void addedValuesAreAlwaysFound() {
+        BloomFilter bloomFilter = new BloomFilter(NUM_IDS, 0.01);
+        for (int i = 0; i < NUM_IDS; i++) {
+            bloomFilter.add("-" + (19990000000000L + i));
+        }
+
+        for (int i = 0; i < NUM_IDS; i++) {
+            assertTrue(bloomFilter.mightContain("-" + (19990000000000L + i)));
+        }
+    }
+
+    @Test
+    void falsePositiveRateIsNearTheTarget() {
+        BloomFilter bloomFilter = new BloomFilter(NUM_IDS, 0.01);
+        for (int i = 0; i < NUM_IDS; i++) {
+            bloomFilter.add(String.valueOf(19990000000000L + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < NUM_IDS; i++) {
+            if (bloomFilter.mightContain(String.valueOf(20010000000000L + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < NUM_IDS * 0.02, "Too many false positives " + falsePositives);
+    }
+
+    @Test
+    void serializedFilterGivesTheSameAnswers() {
+        BloomFilter bloomFilter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            bloomFilter.add("ID" + i);
+        }
+
+        byte[] bytes = bloomFilter.toByteArray();
+        BloomFilter copy = BloomFilter.fromByteArray(bytes);
+
+        for (int i = 0; i < 2000; i++) {
+            assertTrue(bloomFilter.mightContain("ID" + i) == copy.mightContain("ID" + i));
+        }
+        assertTrue(bytes.length == copy.getSizeInBytes());
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter bloomFilter = BloomFilter.fromByteArray(new BloomFilter(0, 0.01).toByteArray());
+        assertFalse(bloomFilter.mightContain("-19990000000001"));
+    }
+
+    @Test
+    void invalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 0));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 1));
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.fromByteArray(new byte[7]));
+    }
+}
@@ -44,6 +44,17 @@ public class FileEvent extends LoggableEvent {
         }
     }
 
+    /**
+     * Create the event with a size and hash which are already known, so the file doesn't have to be read
+     */
+    public FileEvent(String user, String jobId, File file, FileStatus status, long fileSize, String fileHash) {
+        super(OffsetDateTime.now(), user, jobId);
+        this.status = status;
+        this.fileName = file.getAbsolutePath();
+        this.fileSize = fileSize;
+        this.fileHash = fileHash;
+    }
+
     private String generateChecksum(File file) {
         try (FileInputStream fileInputStream = new FileInputStream(file)) {
             return UtilMethods.hashIt(fileInputStream);
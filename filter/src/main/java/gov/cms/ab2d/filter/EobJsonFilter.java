@@ -0,0 +1,523 @@
+package gov.cms.ab2d.filter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.hl7.fhir.dstu3.model.DateTimeType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+import static gov.cms.ab2d.filter.EOBLoadUtilities.EOB_TYPE_CODE_SYS;
+import static gov.cms.ab2d.filter.EOBLoadUtilities.EOB_TYPE_PART_D_CODE_VAL;
+
+/**
+ * Filters and trims the ExplanationOfBenefit resources of a BFD bundle straight from its JSON, without parsing
+ * them into HAPI resources and encoding them again. It keeps the same elements as
+ * {@link ExplanationOfBenefitTrimmer}, drops Part D claims and claims which fail the billable period check,
+ * and writes every other claim as a line of NDJSON.
+ *
+ * The kept elements of a resource and of its items are written in the order of the FHIR definition, whatever
+ * order they were sent in, which is the order HAPI encodes them in. Any object within those elements, such as a
+ * billable period or a coding, is copied in the order it was sent. BFD sends them in the order of the definition,
+ * and then the output is the same as trimming and encoding the resource with HAPI. If they are sent in another
+ * order the output holds the same resource as HAPI's but isn't byte for byte the same.
+ *
+ * Each thread keeps the buffers the elements are copied into and reuses them from one resource to the next, so
+ * the filter can be shared between threads. A buffer which grew to hold an unusually large resource is dropped
+ * when it is reset so a thread doesn't hold on to it.
+ */
+public class EobJsonFilter {
+
+    private static final String EOB_RESOURCE_TYPE = "ExplanationOfBenefit";
+    private static final String NEXT_LINK = "next";
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    // The elements of an ExplanationOfBenefit in the order of the FHIR definition
+    private static final List<String> EOB_ELEMENTS = List.of("resourceType", "id", "meta", "implicitRules",
+            "language", "text", "contained", "extension", "modifierExtension", "identifier", "status", "type",
+            "subType", "patient", "billablePeriod", "created", "enterer", "insurer", "provider", "organization",
+            "referral", "facility", "claim", "claimResponse", "outcome", "disposition", "related", "prescription",
+            "originalPrescription", "payee", "information", "careTeam", "diagnosis", "procedure", "precedence",
+            "insurance", "accident", "employmentImpacted", "hospitalization", "item", "addItem", "totalCost",
+            "unallocDeductable", "totalBenefit", "payment", "form", "processNote", "benefitBalance");
+
+    // The elements ExplanationOfBenefitTrimmer keeps
+    private static final Set<String> KEPT_EOB_ELEMENTS = Set.of("resourceType", "id", "meta", "implicitRules",
+            "language", "text", "modifierExtension", "identifier", "type", "subType", "patient", "billablePeriod",
+            "provider", "organization", "facility", "careTeam", "diagnosis", "procedure", "precedence", "item");
+
+    // The elements of an item in the order of the FHIR definition
+    private static final List<String> ITEM_ELEMENTS = List.of("id", "extension", "modifierExtension", "sequence",
+            "careTeamLinkId", "diagnosisLinkId", "procedureLinkId", "informationLinkId", "revenue", "category",
+            "service", "modifier", "programCode", "servicedDate", "servicedPeriod", "locationCodeableConcept",
+            "locationAddress", "locationReference", "quantity", "unitPrice", "factor", "net", "udi", "bodySite",
+            "subSite", "encounter", "noteNumber", "adjudication", "detail");
+
+    // The elements of an item ExplanationOfBenefitTrimmer keeps
+    private static final Set<String> KEPT_ITEM_ELEMENTS = Set.of("id", "modifierExtension", "sequence",
+            "careTeamLinkId", "service", "servicedDate", "servicedPeriod", "locationCodeableConcept",
+            "locationAddress", "locationReference", "quantity");
+
+    private static final ElementOrder EOB_ORDER = new ElementOrder(EOB_ELEMENTS, KEPT_EOB_ELEMENTS, "precedence");
+    private static final ElementOrder ITEM_ORDER = new ElementOrder(ITEM_ELEMENTS, KEPT_ITEM_ELEMENTS, null);
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    // Where the kept elements of a resource and of an item are copied before they are written in order
+    private final ThreadLocal<ElementBuffer> resourceBuffers = ThreadLocal.withInitial(this::newElementBuffer);
+    private final ThreadLocal<ElementBuffer> itemBuffers = ThreadLocal.withInitial(this::newElementBuffer);
+
+    /**
+     * The result of filtering one page of a bundle
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class FilteredPage {
+        // The number of resources written
+        private final int resourceCount;
+        // The url of the next page of the bundle, null if this is the last page
+        private final String nextUrl;
+    }
+
+    /**
+     * Filter the ExplanationOfBenefit resources of one page of a bundle and write each one kept as a line of
+     * NDJSON. Any other type of resource is dropped.
+     *
+     * @param bundle - the JSON of the bundle
+     * @param billablePeriodCheck - given the start and end of the billable period of a claim, true if it should
+     *                            be kept. Null to keep claims whatever their billable period.
+     * @param out - where the resources are written
+     * @return the number of resources written and the url of the next page
+     * @throws IOException if the bundle can't be read or the resources can't be written
+     */
+    public FilteredPage filterBundle(InputStream bundle, BiPredicate<Date, Date> billablePeriodCheck,
+                                     OutputStream out) throws IOException {
+        int resourceCount = 0;
+        String nextUrl = null;
+
+        try (JsonParser parser = jsonFactory.createParser(bundle)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Bundle is not a JSON object");
+            }
+            var buffer = new ByteArrayOutputStream();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("link".equals(name) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        String url = readNextUrl(parser);
+                        if (url != null) {
+                            nextUrl = url;
+                        }
+                    }
+                } else if ("entry".equals(name) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        resourceCount += filterEntry(parser, billablePeriodCheck, buffer, out);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new FilteredPage(resourceCount, nextUrl);
+    }
+
+    /**
+     * Filter and trim one resource and write it as a line of NDJSON if it is kept
+     *
+     * @param resource - the JSON of the resource
+     * @param billablePeriodCheck - given the start and end of the billable period of a claim, true if it should
+     *                            be kept. Null to keep claims whatever their billable period.
+     * @param out - where the resource is written
+     * @return true if the resource was written
+     * @throws IOException if the resource can't be read or written
+     */
+    public boolean filterResource(InputStream resource, BiPredicate<Date, Date> billablePeriodCheck,
+                                  OutputStream out) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(resource)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Resource is not a JSON object");
+            }
+            return filterResource(parser, billablePeriodCheck, new ByteArrayOutputStream(), out);
+        }
+    }
+
+    private String readNextUrl(JsonParser parser) throws IOException {
+        String relation = null;
+        String url = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("relation".equals(name)) {
+                relation = parser.getValueAsString();
+            } else if ("url".equals(name)) {
+                url = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return NEXT_LINK.equals(relation) ? url : null;
+    }
+
+    private int filterEntry(JsonParser parser, BiPredicate<Date, Date> billablePeriodCheck,
+                            ByteArrayOutputStream buffer, OutputStream out) throws IOException {
+        int resourceCount = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("resource".equals(name) && token == JsonToken.START_OBJECT) {
+                if (filterResource(parser, billablePeriodCheck, buffer, out)) {
+                    resourceCount++;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return resourceCount;
+    }
+
+    /**
+     * Trim the resource the parser is at into the buffer, then write it out if it is kept
+     */
+    private boolean filterResource(JsonParser parser, BiPredicate<Date, Date> billablePeriodCheck,
+                                   ByteArrayOutputStream buffer, OutputStream out) throws IOException {
+        buffer.reset();
+        var resource = new ResourceSummary();
+
+        try (JsonGenerator gen = jsonFactory.createGenerator(buffer)) {
+            copyInDefinitionOrder(parser, gen, EOB_ORDER, resourceBuffers.get(), (name, elementParser, elementGen) -> {
+                if (name.equals("resourceType")) {
+                    resource.eob = EOB_RESOURCE_TYPE.equals(elementParser.getValueAsString());
+                    copy(elementParser, elementGen);
+                } else if (name.equals("type")) {
+                    copyType(elementParser, elementGen, resource);
+                } else if (name.equals("billablePeriod")) {
+                    copyBillablePeriod(elementParser, elementGen, resource);
+                } else if (name.equals("item")) {
+                    copyItems(elementParser, elementGen);
+                } else {
+                    copy(elementParser, elementGen);
+                }
+            });
+        }
+
+        if (!resource.eob || resource.partD) {
+            return false;
+        }
+        if (billablePeriodCheck != null && !billablePeriodCheck.test(resource.start, resource.end)) {
+            return false;
+        }
+        buffer.writeTo(out);
+        out.write(LINE_SEPARATOR);
+        return true;
+    }
+
+    /**
+     * Copy the kept elements of the object the parser is at, in the order of the FHIR definition. Each element is
+     * copied into the buffer as it is read and they are written from there once the whole object has been read.
+     */
+    private void copyInDefinitionOrder(JsonParser parser, JsonGenerator gen, ElementOrder order,
+                                       ElementBuffer buffer, ElementCopier copier) throws IOException {
+        // The value of each element followed by the value of its "_element"
+        int valueCount = order.elements.size() * 2;
+        buffer.reset(valueCount);
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            // Extensions of primitive elements are sent as "_element"
+            boolean extension = name.startsWith("_");
+            String element = extension ? name.substring(1) : name;
+            Integer index = order.index.get(element);
+            if (index == null || !order.kept.contains(element)
+                    || !extension && index == order.precedenceIndex) {
+                parser.skipChildren();
+                continue;
+            }
+
+            int value = index * 2 + (extension ? 1 : 0);
+            buffer.startValue(value);
+            copier.copy(name, parser, buffer.gen);
+            buffer.endValue(value);
+        }
+
+        gen.writeStartObject();
+        for (int i = 0; i < valueCount; i++) {
+            String element = order.elements.get(i / 2);
+            if (i == order.precedenceIndex * 2) {
+                // The trimmer sets the precedence to 0, so it is written whether or not it was sent
+                gen.writeFieldName(element);
+                gen.writeNumber(0);
+            } else if (buffer.hasValue(i)) {
+                gen.writeFieldName(i % 2 == 0 ? element : "_" + element);
+                buffer.writeValue(i, gen);
+            }
+        }
+        gen.writeEndObject();
+    }
+
+    /**
+     * Copy the type of the claim, noting whether it is a Part D claim
+     */
+    private void copyType(JsonParser parser, JsonGenerator gen, ResourceSummary resource) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            copy(parser, gen);
+            return;
+        }
+        gen.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            gen.writeFieldName(name);
+            if (!"coding".equals(name) || token != JsonToken.START_ARRAY) {
+                copy(parser, gen);
+                continue;
+            }
+            gen.writeStartArray();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                Map<String, String> coding = copyObject(parser, gen);
+                String system = coding.get("system");
+                String code = coding.get("code");
+                if (system != null && system.endsWith(EOB_TYPE_CODE_SYS)
+                        && EOB_TYPE_PART_D_CODE_VAL.equalsIgnoreCase(code)) {
+                    resource.partD = true;
+                }
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndObject();
+    }
+
+    /**
+     * Copy the billable period, noting its start and end
+     */
+    private void copyBillablePeriod(JsonParser parser, JsonGenerator gen, ResourceSummary resource) throws IOException {
+        Map<String, String> period = copyObject(parser, gen);
+        resource.start = toDate(period.get("start"));
+        resource.end = toDate(period.get("end"));
+    }
+
+    /**
+     * Copy an object, returning its string values by name
+     */
+    private Map<String, String> copyObject(JsonParser parser, JsonGenerator gen) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            copy(parser, gen);
+            return values;
+        }
+        gen.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_STRING) {
+                values.put(name, parser.getText());
+            }
+            gen.writeFieldName(name);
+            copy(parser, gen);
+        }
+        gen.writeEndObject();
+        return values;
+    }
+
+    /**
+     * Copy the items of the claim keeping only the elements the trimmer keeps
+     */
+    private void copyItems(JsonParser parser, JsonGenerator gen) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            copy(parser, gen);
+            return;
+        }
+        gen.writeStartArray();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            copyInDefinitionOrder(parser, gen, ITEM_ORDER, itemBuffers.get(),
+                    (name, itemParser, itemGen) -> copy(itemParser, itemGen));
+        }
+        gen.writeEndArray();
+    }
+
+    /**
+     * Copy the value the parser is at. Numbers are copied as they were sent, so decimals keep their precision
+     * the same way HAPI keeps it.
+     */
+    private void copy(JsonParser parser, JsonGenerator gen) throws IOException {
+        switch (parser.currentToken()) {
+            case START_OBJECT:
+                gen.writeStartObject();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    gen.writeFieldName(parser.getCurrentName());
+                    parser.nextToken();
+                    copy(parser, gen);
+                }
+                gen.writeEndObject();
+                break;
+            case START_ARRAY:
+                gen.writeStartArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    copy(parser, gen);
+                }
+                gen.writeEndArray();
+                break;
+            case VALUE_STRING:
+                gen.writeString(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                break;
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                gen.writeNumber(parser.getText());
+                break;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                gen.writeBoolean(parser.getBooleanValue());
+                break;
+            case VALUE_NULL:
+                gen.writeNull();
+                break;
+            default:
+                throw new IOException("Unexpected JSON token " + parser.currentToken());
+        }
+    }
+
+    private ElementBuffer newElementBuffer() {
+        return new ElementBuffer(jsonFactory);
+    }
+
+    /**
+     * Parse a FHIR dateTime the same way HAPI parses the billable period
+     */
+    private static Date toDate(String value) {
+        return value == null ? null : new DateTimeType(value).getValue();
+    }
+
+    /**
+     * What is needed to decide whether to keep a resource, noted while it is copied
+     */
+    private static class ResourceSummary {
+        private boolean eob;
+        private boolean partD;
+        private Date start;
+        private Date end;
+    }
+
+    /**
+     * Copies the value of one element
+     */
+    @FunctionalInterface
+    private interface ElementCopier {
+        void copy(String name, JsonParser parser, JsonGenerator gen) throws IOException;
+    }
+
+    /**
+     * The elements of a type in the order of the FHIR definition and the ones which are kept
+     */
+    private static class ElementOrder {
+        private final List<String> elements;
+        private final Map<String, Integer> index = new HashMap<>();
+        private final Set<String> kept;
+        // The element which is always written as 0, -1 if there isn't one
+        private final int precedenceIndex;
+
+        ElementOrder(List<String> elements, Set<String> kept, String precedence) {
+            this.elements = elements;
+            this.kept = kept;
+            for (int i = 0; i < elements.size(); i++) {
+                index.put(elements.get(i), i);
+            }
+            precedenceIndex = precedence == null ? -1 : index.get(precedence);
+        }
+    }
+
+    /**
+     * The values of the elements of one object, copied one after another into a single buffer and written out
+     * from there in another order. The buffer and its generator are reused for every object.
+     */
+    private static class ElementBuffer {
+        private final JsonFactory jsonFactory;
+        private final CharBuffer chars = new CharBuffer();
+        private JsonGenerator gen;
+        // Where each value starts and ends in the buffer, -1 if it wasn't sent
+        private int[] starts = new int[0];
+        private int[] ends = new int[0];
+
+        ElementBuffer(JsonFactory jsonFactory) {
+            this.jsonFactory = jsonFactory;
+        }
+
+        void reset(int valueCount) throws IOException {
+            chars.reset();
+            if (gen == null || !gen.getOutputContext().inRoot()) {
+                // A new generator if the last object couldn't be read to its end
+                gen = jsonFactory.createGenerator(chars);
+                gen.setRootValueSeparator(null);
+            }
+            if (starts.length < valueCount) {
+                starts = new int[valueCount];
+                ends = new int[valueCount];
+            }
+            Arrays.fill(starts, 0, valueCount, -1);
+        }
+
+        void startValue(int value) throws IOException {
+            gen.flush();
+            starts[value] = chars.size();
+        }
+
+        void endValue(int value) throws IOException {
+            gen.flush();
+            ends[value] = chars.size();
+        }
+
+        boolean hasValue(int value) {
+            return starts[value] >= 0;
+        }
+
+        void writeValue(int value, JsonGenerator out) throws IOException {
+            out.writeRawValue(chars.buffer(), starts[value], ends[value] - starts[value]);
+        }
+    }
+
+    /**
+     * A CharArrayWriter which lets the characters written be read without copying them
+     */
+    static class CharBuffer extends CharArrayWriter {
+
+        static final int INITIAL_SIZE = 16 * 1024;
+        static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+        CharBuffer() {
+            super(INITIAL_SIZE);
+        }
+
+        char[] buffer() {
+            return buf;
+        }
+
+        @Override
+        public void reset() {
+            synchronized (lock) {
+                super.reset();
+                if (buf.length > MAX_RETAINED_SIZE) {
+                    buf = new char[INITIAL_SIZE];
+                }
+            }
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
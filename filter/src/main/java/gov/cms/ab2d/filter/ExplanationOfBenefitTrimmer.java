@@ -3,7 +3,6 @@ package gov.cms.ab2d.filter;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Cleans out data from a copy of an ExplanationOfBenefit object that we don't want
@@ -29,10 +28,25 @@ public class ExplanationOfBenefitTrimmer {
         return newBenefit;
     }
 
+    /**
+     * Pass in an ExplanationOfBenefit and remove the data from it directly instead of from a copy. Use this
+     * when the original is not needed afterwards, copying every claim is the largest allocation in processing it.
+     *
+     * @param benefit - the ExplanationOfBenefit, which is changed
+     * @return the same ExplanationOfBenefit once it is cleaned up
+     */
+    public static ExplanationOfBenefit trimInPlace(ExplanationOfBenefit benefit) {
+        if (benefit == null) {
+            return null;
+        }
+        cleanOutUnNeededData(benefit);
+        return benefit;
+    }
+
     /**
      * Remove the unauthorized content
      *
-     * @param benefit - The ExplanationOfBenefit information (the copy)
+     * @param benefit - The ExplanationOfBenefit information
      */
     private static void cleanOutUnNeededData(ExplanationOfBenefit benefit) {
         /*
@@ -81,9 +95,7 @@ public class ExplanationOfBenefitTrimmer {
         benefit.setEmploymentImpacted(null);
         benefit.setHospitalization(null);
         if (benefit.getItem() != null) {
-            benefit.setItem(benefit.getItem().stream()
-                    .map(ExplanationOfBenefitTrimmer::cleanOutItemComponent)
-                    .collect(Collectors.toList()));
+            benefit.getItem().forEach(ExplanationOfBenefitTrimmer::cleanOutItemComponent);
         }
         clearOutList(benefit.getAddItem());
         benefit.setTotalCost(null);
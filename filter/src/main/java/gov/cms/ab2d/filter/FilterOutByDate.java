@@ -1,11 +1,16 @@
 package gov.cms.ab2d.filter;
 
-import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
 import org.hl7.fhir.dstu3.model.Period;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -15,10 +20,13 @@ import java.util.stream.Collectors;
  * those dates. Older Date objects are used instead of more modern dates because the
  * explanation of benefit object billing dates periods are in dates. For consistency
  * and to minimize time zone issues, we kept everything as Date objects.
+ *
+ * Every claim of every beneficiary is checked, so the date ranges keep their bounds as epoch milliseconds
+ * and the attestation date can be truncated to the start of its day once, leaving only primitive comparisons
+ * for each claim.
  */
 public final class FilterOutByDate {
-    private static final String SHORT = "MM/dd/yyyy";
-    private static final String FULL = "MM/dd/yyyy HH:mm:ss";
+    private static final LocalTime END_OF_DAY = LocalTime.of(23, 59, 59);
 
     /**
      * Date range class used to define a from and to date for a subscribers membership.
@@ -26,10 +34,12 @@ public final class FilterOutByDate {
      * the range is 10/01/2020 00:00:00 - 10/02/2020 23:59:59. If the start date is after the end date
      * nothing will resolve to being in that range
      */
-    @Data
+    @Getter
+    @EqualsAndHashCode
+    @ToString
     public static class DateRange {
-        private Date start;
-        private Date end;
+        private long startMillis;
+        private long endMillis;
 
         /**
          * Populate the date range
@@ -39,17 +49,25 @@ public final class FilterOutByDate {
          * @throws ParseException if there was an error constructing the Date objects
          */
         public DateRange(Date start, Date end) throws ParseException {
-            SimpleDateFormat fullDateFormat = new SimpleDateFormat(FULL);
-            SimpleDateFormat shortDateFormat = new SimpleDateFormat(SHORT);
-            if (start == null) {
-                start = new Date(0);
-            }
-            if (end == null) {
-                end = new Date(Long.MAX_VALUE);
-            }
-            this.start = shortDateFormat.parse(shortDateFormat.format(start));
+            this.startMillis = getStartOfDay(start == null ? 0 : start.getTime());
             // we're only dealing with dates, not times, so max out time
-            this.end = fullDateFormat.parse(shortDateFormat.format(end) + " 23:59:59");
+            this.endMillis = end == null ? Long.MAX_VALUE : getEndOfDay(end.getTime());
+        }
+
+        public Date getStart() {
+            return new Date(startMillis);
+        }
+
+        public void setStart(Date start) {
+            this.startMillis = start.getTime();
+        }
+
+        public Date getEnd() {
+            return new Date(endMillis);
+        }
+
+        public void setEnd(Date end) {
+            this.endMillis = end.getTime();
         }
 
         /**
@@ -59,7 +77,105 @@ public final class FilterOutByDate {
          * @return true if the date is in range
          */
         public boolean inRange(Date d) {
-            return d.getTime() <= end.getTime() && d.getTime() >= start.getTime();
+            return inRange(d.getTime());
+        }
+
+        /**
+         * True if a time is in range between the start date and the end date
+         *
+         * @param millis - the time to compare in milliseconds since the epoch
+         * @return true if the time is in range
+         */
+        public boolean inRange(long millis) {
+            return millis <= endMillis && millis >= startMillis;
+        }
+    }
+
+    /**
+     * The months of a year a subscriber is a member, kept as a bit mask where bit 0 is January. Coverage is
+     * always for whole months, so a date is covered if the month it falls in is in the mask. The start of
+     * each month is computed once so checking a date takes at most twelve comparisons and a bit test.
+     */
+    @EqualsAndHashCode
+    @ToString
+    public static class MonthsUnderContract {
+        private static final int ALL_MONTHS = 0xFFF;
+
+        @Getter
+        private final int year;
+        @Getter
+        private final int months;
+
+        // The start of each month of the year and of the January after in epoch milliseconds
+        @EqualsAndHashCode.Exclude
+        @ToString.Exclude
+        private final long[] monthStarts;
+
+        /**
+         * @param year - the year of the months
+         * @param months - a bit mask of the months, bit 0 is January
+         */
+        public MonthsUnderContract(int year, int months) {
+            this(year, months, getMonthStarts(year));
+        }
+
+        private MonthsUnderContract(int year, int months, long[] monthStarts) {
+            this.year = year;
+            this.months = months & ALL_MONTHS;
+            this.monthStarts = monthStarts;
+        }
+
+        /**
+         * Create the months of the same year with a different mask, sharing the start of each month
+         *
+         * @param otherMonths - a bit mask of the months, bit 0 is January
+         * @return the months
+         */
+        public MonthsUnderContract withMonths(int otherMonths) {
+            return new MonthsUnderContract(year, otherMonths, monthStarts);
+        }
+
+        /**
+         * True if the time falls in one of the months
+         *
+         * @param millis - the time in milliseconds since the epoch
+         * @return true if the month of the time is in the mask
+         */
+        public boolean covers(long millis) {
+            if (months == 0 || millis < monthStarts[0] || millis >= monthStarts[12]) {
+                return false;
+            }
+            int month = 11;
+            while (millis < monthStarts[month]) {
+                month--;
+            }
+            return (months & (1 << month)) != 0;
+        }
+
+        /**
+         * Create the date ranges covering the months. Consecutive months are merged into a single date range.
+         *
+         * @return the list of date ranges
+         * @throws ParseException if a date manipulation error occurs
+         */
+        public List<DateRange> toDateRanges() throws ParseException {
+            List<Integer> monthList = new ArrayList<>(Integer.bitCount(months));
+            for (int month = 1; month <= 12; month++) {
+                if ((months & (1 << (month - 1))) != 0) {
+                    monthList.add(month);
+                }
+            }
+            return getDateRanges(monthList, year);
+        }
+
+        private static long[] getMonthStarts(int year) {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate january = LocalDate.of(getYearToUse(year), 1, 1);
+            long[] monthStarts = new long[13];
+            for (int i = 0; i <= 12; i++) {
+                monthStarts[i] = january.plusMonths(i).atStartOfDay(zone).toInstant().toEpochMilli();
+            }
+            return monthStarts;
         }
     }
 
@@ -210,6 +326,27 @@ public final class FilterOutByDate {
         return new DateRange(getStartOfMonth(month, year), getEndOfMonth(month, year));
     }
 
+    /**
+     * Truncate a date to the start of its day in the default time zone
+     *
+     * @param date - the date
+     * @return the start of the day in milliseconds since the epoch
+     */
+    public static long getStartOfDay(Date date) {
+        return getStartOfDay(date.getTime());
+    }
+
+    private static long getStartOfDay(long millis) {
+        ZoneId zone = ZoneId.systemDefault();
+        return LocalDate.ofInstant(Instant.ofEpochMilli(millis), zone).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private static long getEndOfDay(long millis) {
+        ZoneId zone = ZoneId.systemDefault();
+        return LocalDate.ofInstant(Instant.ofEpochMilli(millis), zone).atTime(END_OF_DAY)
+                .atZone(zone).toInstant().toEpochMilli();
+    }
+
     /**
      * This does most of the work of the class. It takes a list of explanation of benefit objects,
      * the attestation date and list of valid date ranges and returns the list of qualifying objects
@@ -223,30 +360,97 @@ public final class FilterOutByDate {
     public static List<ExplanationOfBenefit> filterByDate(List<ExplanationOfBenefit> benes,
                                               Date attestationDate,
                                               List<DateRange> dateRanges) throws ParseException {
-        if (benes == null || benes.isEmpty()) {
+        if (benes == null || benes.isEmpty() || attestationDate == null) {
             return new ArrayList<>();
         }
-        return benes.stream().filter(b -> valid(b, attestationDate, dateRanges)).collect(Collectors.toList());
+        long attestationDayStart = getStartOfDay(attestationDate);
+        return benes.stream().filter(b -> valid(b, attestationDayStart, dateRanges)).collect(Collectors.toList());
     }
 
     public static boolean valid(ExplanationOfBenefit bene, Date attestationDate, List<DateRange> dateRanges) {
-        if (bene == null) {
+        if (attestationDate == null) {
             return false;
         }
-        try {
-            if (afterAttestation(attestationDate, bene)) {
-                for (DateRange r : dateRanges) {
-                    if (withinDateRange(bene, r)) {
-                        return true;
-                    }
-                }
-            }
-        } catch (Exception ex) {
+        return valid(bene, getStartOfDay(attestationDate), dateRanges);
+    }
+
+    /**
+     * True if the EOB object ended on or after the day of attestation and is within one of the date ranges.
+     * Nothing is allocated so it can be called for every claim.
+     *
+     * @param bene - the explanation of benefit object
+     * @param attestationDayStart - the start of the day of attestation, see {@link #getStartOfDay(Date)}
+     * @param dateRanges - the list of date ranges
+     * @return true if the EOB object should be included
+     */
+    public static boolean valid(ExplanationOfBenefit bene, long attestationDayStart, List<DateRange> dateRanges) {
+        if (bene == null || bene.getBillablePeriod() == null) {
             return false;
         }
+        Period p = bene.getBillablePeriod();
+        return valid(p.getStart(), p.getEnd(), attestationDayStart, dateRanges);
+    }
+
+    /**
+     * True if a billable period ended on or after the day of attestation and is within one of the date ranges
+     *
+     * @param start - the start of the billable period
+     * @param end - the end of the billable period
+     * @param attestationDayStart - the start of the day of attestation, see {@link #getStartOfDay(Date)}
+     * @param dateRanges - the list of date ranges
+     * @return true if the billable period should be included
+     */
+    public static boolean valid(Date start, Date end, long attestationDayStart, List<DateRange> dateRanges) {
+        if (start == null || end == null || dateRanges == null || end.getTime() < attestationDayStart) {
+            return false;
+        }
+        long startMillis = start.getTime();
+        long endMillis = end.getTime();
+        for (int i = 0; i < dateRanges.size(); i++) {
+            DateRange range = dateRanges.get(i);
+            if (range.inRange(startMillis) || range.inRange(endMillis)) {
+                return true;
+            }
+        }
         return false;
     }
 
+    /**
+     * True if the EOB object ended on or after the day of attestation and either end of its billable period
+     * falls in a month under contract. Nothing is allocated so it can be called for every claim.
+     *
+     * @param bene - the explanation of benefit object
+     * @param attestationDayStart - the start of the day of attestation, see {@link #getStartOfDay(Date)}
+     * @param monthsUnderContract - the months under contract
+     * @return true if the EOB object should be included
+     */
+    public static boolean valid(ExplanationOfBenefit bene, long attestationDayStart,
+                                MonthsUnderContract monthsUnderContract) {
+        if (bene == null || bene.getBillablePeriod() == null) {
+            return false;
+        }
+        Period p = bene.getBillablePeriod();
+        return valid(p.getStart(), p.getEnd(), attestationDayStart, monthsUnderContract);
+    }
+
+    /**
+     * True if a billable period ended on or after the day of attestation and either end of it falls in a month
+     * under contract
+     *
+     * @param start - the start of the billable period
+     * @param end - the end of the billable period
+     * @param attestationDayStart - the start of the day of attestation, see {@link #getStartOfDay(Date)}
+     * @param monthsUnderContract - the months under contract
+     * @return true if the billable period should be included
+     */
+    public static boolean valid(Date start, Date end, long attestationDayStart,
+                                MonthsUnderContract monthsUnderContract) {
+        if (start == null || end == null || monthsUnderContract == null || end.getTime() < attestationDayStart) {
+            return false;
+        }
+        return monthsUnderContract.covers(start.getTime()) || monthsUnderContract.covers(end.getTime());
+    }
+
     /**
      * True if the submitted date is after attestation date. This takes the attestation date
      * and zeros out time so that we can assume if the attestation date is 10/01/2020 23:59:59
@@ -259,15 +463,12 @@ public final class FilterOutByDate {
      * @throws ParseException - if there is an issue parsing the dates
      */
     static boolean afterAttestation(Date attestation, ExplanationOfBenefit ben) throws ParseException {
-        SimpleDateFormat fullDateFormat = new SimpleDateFormat(FULL);
-        SimpleDateFormat shortDateFormat = new SimpleDateFormat(SHORT);
         if (ben == null || ben.getBillablePeriod() == null || attestation == null) {
             return false;
         }
-        Date attToUse = fullDateFormat.parse(shortDateFormat.format(attestation) + " 00:00:00");
         Period p = ben.getBillablePeriod();
         Date end = p.getEnd();
-        return end != null && end.getTime() >= attToUse.getTime();
+        return end != null && end.getTime() >= getStartOfDay(attestation);
     }
 
     /**
@@ -0,0 +1,195 @@
+package gov.cms.ab2d.filter;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EobJsonFilterTest {
+    private static final FhirContext CONTEXT = FhirContext.forDstu3();
+    private static final List<String> NOT_PART_D = List.of("Carrier", "DME", "HHA", "Hospice", "Inpatient",
+            "Outpatient", "SNF");
+
+    private final EobJsonFilter filter = new EobJsonFilter();
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Carrier", "DME", "HHA", "Hospice", "Inpatient", "Outpatient", "SNF"})
+    void outputMatchesTheTrimmedAndEncodedResource(String claimType) throws IOException {
+        var out = new ByteArrayOutputStream();
+
+        assertTrue(filter.filterResource(new ByteArrayInputStream(readFixture(claimType)), null, out));
+
+        assertEquals(encodeWithHapi(claimType), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void nestedObjectsAreCopiedInTheOrderSent() throws IOException {
+        // The Carrier claim with the keys of every object, nested or not, in reverse order
+        var out = new ByteArrayOutputStream();
+        assertTrue(filter.filterResource(new ByteArrayInputStream(readFixture("Carrier-Shuffled")), null, out));
+        String filtered = out.toString(StandardCharsets.UTF_8);
+        String encoded = encodeWithHapi("Carrier");
+
+        // The elements of the claim and of its items are put back in the order of the definition
+        var mapper = new ObjectMapper();
+        JsonNode filteredTree = mapper.readTree(filtered);
+        JsonNode encodedTree = mapper.readTree(encoded);
+        assertEquals(fieldNames(encodedTree), fieldNames(filteredTree));
+        assertEquals(fieldNames(encodedTree.get("item").get(0)), fieldNames(filteredTree.get("item").get(0)));
+
+        // The objects within them are left in the order they were sent, so the output isn't byte for byte HAPI's
+        assertTrue(filtered.contains("\"billablePeriod\":{\"end\":\"1999-10-27\",\"start\":\"1999-10-27\"}"));
+        assertNotEquals(encoded, filtered);
+
+        // But it is the same claim
+        var reparsed = CONTEXT.newJsonParser().parseResource(filtered);
+        assertEquals(encoded, CONTEXT.newJsonParser().encodeResourceToString(reparsed) + System.lineSeparator());
+    }
+
+    @Test
+    void partDClaimsAreDropped() throws IOException {
+        var out = new ByteArrayOutputStream();
+
+        assertFalse(filter.filterResource(new ByteArrayInputStream(readFixture("Part-D")), null, out));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    void bundleEntriesAreFilteredInOrder() throws IOException {
+        var expected = new StringBuilder();
+        var bundle = new StringBuilder("{\"resourceType\":\"Bundle\",\"type\":\"searchset\",\"total\":8,\"link\":["
+                + "{\"relation\":\"self\",\"url\":\"https://bfd/ExplanationOfBenefit?patient=1\"},"
+                + "{\"relation\":\"next\",\"url\":\"https://bfd/ExplanationOfBenefit?patient=1&startIndex=8\"}],"
+                + "\"entry\":[");
+        bundle.append("{\"resource\":").append(new String(readFixture("Part-D"), StandardCharsets.UTF_8)).append('}');
+        for (String claimType : NOT_PART_D) {
+            bundle.append(",{\"fullUrl\":\"https://bfd/ExplanationOfBenefit/").append(claimType)
+                    .append("\",\"resource\":").append(new String(readFixture(claimType), StandardCharsets.UTF_8))
+                    .append('}');
+            expected.append(encodeWithHapi(claimType));
+        }
+        bundle.append(",{\"resource\":{\"resourceType\":\"OperationOutcome\"}}]}");
+
+        var out = new ByteArrayOutputStream();
+        var page = filter.filterBundle(toStream(bundle), null, out);
+
+        assertEquals(NOT_PART_D.size(), page.getResourceCount());
+        assertEquals("https://bfd/ExplanationOfBenefit?patient=1&startIndex=8", page.getNextUrl());
+        assertEquals(expected.toString(), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void billablePeriodCheckIsGivenTheBillablePeriod() throws Exception {
+        var sdf = new SimpleDateFormat("yyyy-MM-dd");
+        var carrier = new String(readFixture("Carrier"), StandardCharsets.UTF_8);
+        var bundle = "{\"resourceType\":\"Bundle\",\"entry\":[{\"resource\":" + carrier + "}]}";
+
+        var out = new ByteArrayOutputStream();
+        var page = filter.filterBundle(toStream(bundle),
+                (start, end) -> start.equals(parse(sdf, "1999-10-27")) && end.equals(parse(sdf, "1999-10-27")), out);
+        assertEquals(1, page.getResourceCount());
+        assertNull(page.getNextUrl());
+
+        out.reset();
+        page = filter.filterBundle(toStream(bundle), (start, end) -> false, out);
+        assertEquals(0, page.getResourceCount());
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    void invalidJsonIsRejected() {
+        var out = new ByteArrayOutputStream();
+        assertThrows(IOException.class, () -> filter.filterBundle(toStream("[]"), null, out));
+        assertThrows(IOException.class, () -> filter.filterResource(toStream("\"text\""), null, out));
+    }
+
+    @Test
+    void aResourceCutOffPartWayDoesNotAffectTheNext() throws IOException {
+        var carrier = readFixture("Carrier");
+        var out = new ByteArrayOutputStream();
+        assertThrows(IOException.class, () -> filter.filterResource(
+                new ByteArrayInputStream(carrier, 0, carrier.length / 2), null, out));
+
+        out.reset();
+        assertTrue(filter.filterResource(new ByteArrayInputStream(carrier), null, out));
+        assertEquals(encodeWithHapi("Carrier"), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void largeBuffersAreDroppedWhenReset() {
+        var chars = new EobJsonFilter.CharBuffer();
+        chars.write("x".repeat(EobJsonFilter.CharBuffer.MAX_RETAINED_SIZE + 1), 0,
+                EobJsonFilter.CharBuffer.MAX_RETAINED_SIZE + 1);
+
+        chars.reset();
+
+        assertEquals(EobJsonFilter.CharBuffer.INITIAL_SIZE, chars.capacity());
+        assertEquals(0, chars.size());
+    }
+
+    @Test
+    void aLargeResourceDoesNotAffectTheNext() throws IOException {
+        var carrier = new ObjectMapper().readTree(readFixture("Carrier"));
+        ((ObjectNode) carrier).put("id", "x".repeat(EobJsonFilter.CharBuffer.MAX_RETAINED_SIZE + 1));
+        var out = new ByteArrayOutputStream();
+        assertTrue(filter.filterResource(toStream(carrier.toString()), null, out));
+
+        out.reset();
+        assertTrue(filter.filterResource(new ByteArrayInputStream(readFixture("Carrier")), null, out));
+        assertEquals(encodeWithHapi("Carrier"), out.toString(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+
+    private String encodeWithHapi(String claimType) {
+        var eob = EOBLoadUtilities.getEOBFromFileInClassPath(fixturePath(claimType), CONTEXT);
+        return CONTEXT.newJsonParser().encodeResourceToString(ExplanationOfBenefitTrimmer.getBenefit(eob))
+                + System.lineSeparator();
+    }
+
+    private byte[] readFixture(String claimType) throws IOException {
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(fixturePath(claimType))) {
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+
+    private static String fixturePath(String claimType) {
+        return "eobdata/EOB-for-" + claimType + "-Claims.json";
+    }
+
+    private static InputStream toStream(CharSequence json) {
+        return new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static java.util.Date parse(SimpleDateFormat sdf, String date) {
+        try {
+            return sdf.parse(date);
+        } catch (java.text.ParseException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -108,6 +108,21 @@ class ExplanationOfBenefitTrimmerTest {
         }
     }
 
+    @Test
+    void trimInPlaceMatchesTheCopy() {
+        IParser jsonParser = context.newJsonParser();
+        assertNull(ExplanationOfBenefitTrimmer.trimInPlace(null));
+
+        for (String file : List.of("eobdata/EOB-for-Carrier-Claims.json", "eobdata/EOB-for-Part-D-Claims.json")) {
+            ExplanationOfBenefit original = EOBLoadUtilities.getEOBFromFileInClassPath(file, context);
+            String copied = jsonParser.encodeResourceToString(ExplanationOfBenefitTrimmer.getBenefit(original));
+
+            ExplanationOfBenefit trimmed = ExplanationOfBenefitTrimmer.trimInPlace(original);
+            assertSame(original, trimmed);
+            assertEquals(copied, jsonParser.encodeResourceToString(trimmed));
+        }
+    }
+
     private boolean isNullOrEmpty(List<?> items) {
         return items == null || items.isEmpty();
     }
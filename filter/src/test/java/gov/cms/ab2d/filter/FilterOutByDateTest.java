@@ -170,6 +170,67 @@ class FilterOutByDateTest {
         assertEquals("12/31/2020", sdf.format(ranges.get(0).getEnd()));
     }
 
+    @Test
+    void dateRangeCoversWholeDays() throws ParseException {
+        SimpleDateFormat full = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
+        FilterOutByDate.DateRange range = new FilterOutByDate.DateRange(full.parse("10/01/2020 13:45:00"),
+                full.parse("10/02/2020 08:00:00"));
+        assertEquals(full.parse("10/01/2020 00:00:00"), range.getStart());
+        assertEquals(full.parse("10/02/2020 23:59:59"), range.getEnd());
+        assertTrue(range.inRange(full.parse("10/02/2020 23:59:59")));
+        assertFalse(range.inRange(full.parse("10/03/2020 00:00:00")));
+
+        FilterOutByDate.DateRange open = new FilterOutByDate.DateRange(null, null);
+        assertTrue(open.inRange(full.parse("10/03/2020 00:00:00")));
+        assertEquals(range, new FilterOutByDate.DateRange(sdf.parse("10/01/2020"), sdf.parse("10/02/2020")));
+    }
+
+    @Test
+    void validWithAttestationDayStart() throws ParseException {
+        SimpleDateFormat full = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
+        List<FilterOutByDate.DateRange> ranges = List.of(FilterOutByDate.getDateRange(10, 2020));
+        long attestationDayStart = FilterOutByDate.getStartOfDay(full.parse("10/03/2020 23:00:00"));
+        assertEquals(sdf.parse("10/03/2020").getTime(), attestationDayStart);
+
+        assertTrue(FilterOutByDate.valid(createEOB("10/01/2020", "10/03/2020"), attestationDayStart, ranges));
+        assertFalse(FilterOutByDate.valid(createEOB("10/01/2020", "10/02/2020"), attestationDayStart, ranges));
+        assertFalse(FilterOutByDate.valid(createEOB("11/03/2020", "11/04/2020"), attestationDayStart, ranges));
+        assertFalse(FilterOutByDate.valid(new ExplanationOfBenefit(), attestationDayStart, ranges));
+        assertFalse(FilterOutByDate.valid(null, attestationDayStart, ranges));
+        assertFalse(FilterOutByDate.valid(createEOB("10/01/2020", "10/03/2020"), null, ranges));
+    }
+
+    @Test
+    void monthsUnderContractMatchDateRanges() throws ParseException {
+        SimpleDateFormat full = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
+        FilterOutByDate.MonthsUnderContract months = new FilterOutByDate.MonthsUnderContract(2020, 0b100000001011);
+        List<FilterOutByDate.DateRange> ranges = FilterOutByDate.getDateRanges(List.of(1, 2, 4, 12), 2020);
+        assertEquals(ranges, months.toDateRanges());
+
+        long attestationDayStart = FilterOutByDate.getStartOfDay(sdf.parse("01/01/2019"));
+        List<ExplanationOfBenefit> list = List.of(
+                createEOB("01/01/2020", "01/01/2020"), // In
+                createEOB("02/29/2020", "03/05/2020"), // In
+                createEOB("03/01/2020", "03/31/2020"), // Out
+                createEOB("03/15/2020", "04/02/2020"), // In
+                createEOB("12/20/2019", "12/31/2019"), // Out
+                createEOB("12/31/2020", "01/02/2021"), // In
+                createEOB("01/01/2021", "01/01/2021")  // Out
+        );
+        for (ExplanationOfBenefit eob : list) {
+            assertEquals(FilterOutByDate.valid(eob, attestationDayStart, ranges),
+                    FilterOutByDate.valid(eob, attestationDayStart, months));
+        }
+        assertEquals(4, list.stream().filter(eob -> FilterOutByDate.valid(eob, attestationDayStart, months)).count());
+
+        assertTrue(months.covers(full.parse("12/31/2020 23:59:59").getTime()));
+        assertFalse(months.covers(full.parse("03/31/2020 23:59:59").getTime()));
+        assertFalse(months.withMonths(0).covers(full.parse("01/15/2020 00:00:00").getTime()));
+        assertTrue(months.withMonths(0b100).covers(full.parse("03/15/2020 00:00:00").getTime()));
+        assertFalse(FilterOutByDate.valid(createEOB("01/01/2020", "01/01/2020"),
+                FilterOutByDate.getStartOfDay(sdf.parse("01/02/2020")), months));
+    }
+
     private ExplanationOfBenefit createEOB(String startDate, String endDate) throws ParseException {
         ExplanationOfBenefit b = new ExplanationOfBenefit();
         Period p = new Period();
@@ -3,6 +3,7 @@ package gov.cms.ab2d.optout;
 import gov.cms.ab2d.common.model.OptOutFile;
 import gov.cms.ab2d.common.repository.OptOutFileRepository;
 import gov.cms.ab2d.common.service.OptOutFileService;
+import gov.cms.ab2d.common.service.OptOutFilterService;
 import gov.cms.ab2d.common.service.ResourceNotFoundException;
 import gov.cms.ab2d.optout.gateway.S3Gateway;
 import lombok.RequiredArgsConstructor;
@@ -21,17 +22,36 @@ public class OptOutProcessorImpl implements OptOutProcessor {
     private final OptOutImporter optOutImporter;
     private final OptOutFileService optOutFileService;
     private final OptOutFileRepository optOutFileRepository;
+    private final OptOutFilterService optOutFilterService;
 
     @Override
     public void process() {
         final List<String> filenames = s3Gateway.listOptOutFiles();
-        filenames.stream().forEach(this::fetchAndProcessOptOutFile);
+        boolean imported = false;
+        for (String filename : filenames) {
+            imported |= fetchAndProcessOptOutFile(filename);
+        }
+
+        // The workers check opt-outs against the filter so it has to be rebuilt whenever the opt-outs change
+        if (imported || optOutFilterService.findCurrentFilter().isEmpty()) {
+            try {
+                optOutFilterService.rebuild();
+            } catch (Exception e) {
+                log.error("Opt-out filter rebuild FAILED", e);
+            }
+        }
     }
 
-    private void fetchAndProcessOptOutFile(final String filename) {
+    /**
+     * Import the opt-out file if it hasn't been imported already
+     *
+     * @param filename - the opt-out file
+     * @return true if the file was imported
+     */
+    private boolean fetchAndProcessOptOutFile(final String filename) {
         if (optOutFileProcessed(filename)) {
             log.info("Skipping import of file [{}]", filename);
-            return;
+            return false;
         }
 
         try (var inputStreamReader = s3Gateway.getOptOutFile(filename);
@@ -46,8 +66,11 @@ public class OptOutProcessorImpl implements OptOutProcessor {
             optOutFileRepository.save(optOutFile);
 
             log.info("[{}] - import completed successfully", filename);
+            return true;
         } catch (Exception e) {
             log.error("[{}] - import FAILED ", filename, e);
+            // Rows may have been saved before the failure and rebuilding the filter is harmless if they weren't
+            return true;
         }
     }
 
@@ -1,7 +1,9 @@
 package gov.cms.ab2d.optout;
 
 import gov.cms.ab2d.common.model.OptOut;
+import gov.cms.ab2d.common.repository.OptOutFilterRepository;
 import gov.cms.ab2d.common.repository.OptOutRepository;
+import gov.cms.ab2d.common.service.OptOutFilterService;
 import gov.cms.ab2d.common.util.MockBfdServiceUtils;
 import gov.cms.ab2d.common.util.AB2DPostgresqlContainer;
 import gov.cms.ab2d.eventlogger.LoggableEvent;
@@ -35,6 +37,7 @@ import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.Matchers.empty;
 import static org.junit.Assert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.times;
@@ -55,6 +58,12 @@ class OptOutProcessorIntegrationTest {
     @Autowired
     private OptOutRepository optOutRepo;
 
+    @Autowired
+    private OptOutFilterRepository optOutFilterRepo;
+
+    @Autowired
+    private OptOutFilterService optOutFilterService;
+
     @Autowired
     private OptOutProcessor cut;
 
@@ -162,4 +171,38 @@ class OptOutProcessorIntegrationTest {
         reloadEvents = doAll.load(ReloadEvent.class);
         assertEquals(2, reloadEvents.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    @Transactional
+    void process_shouldBuildFilterWhichIsOnlyUsedUntilTheOptOutsChange() {
+        optOutRepo.deleteAll();
+        optOutFilterRepo.deleteAll();
+
+        final String testInputFile = "test-data.txt";
+        final InputStream inputStream = getClass().getResourceAsStream("/" + testInputFile);
+        when(mockS3Gateway.listOptOutFiles()).thenReturn(List.of(testInputFile));
+        when(mockS3Gateway.getOptOutFile(testInputFile)).thenReturn(new InputStreamReader(inputStream));
+
+        cut.process();
+
+        assertEquals(1, optOutFilterRepo.count());
+        assertEquals(optOutRepo.count(), optOutFilterRepo.findAll().get(0).getOptOutCount());
+        assertTrue(optOutFilterService.findCurrentFilter().isPresent());
+        assertTrue(optOutFilterService.findCurrentFilter().get().mightContain("20010000001115"));
+
+        // Another opt-out changes the count
+        OptOut optOut = new OptOut();
+        optOut.setCcwId("20010000009999");
+        optOut.setEffectiveDate(LocalDate.of(2020, 1, 1));
+        optOutRepo.saveAndFlush(optOut);
+        assertFalse(optOutFilterService.findCurrentFilter().isPresent());
+
+        optOutFilterService.rebuild();
+        assertTrue(optOutFilterService.findCurrentFilter().isPresent());
+
+        // Changing the ccw id of an opt-out in place leaves the count the same
+        optOut.setCcwId("20010000009998");
+        optOutRepo.saveAndFlush(optOut);
+        assertFalse(optOutFilterService.findCurrentFilter().isPresent());
+    }
+}
@@ -1,6 +1,23 @@
 package gov.cms.ab2d.worker.adapter.bluebutton;
 
+import java.util.Set;
+import java.util.function.Consumer;
+
 public interface ContractAdapter {
 
     GetPatientsByContractResponse getPatients(String contractNumber, int currentMonth);
+
+    /**
+     * Get the patients of a contract, telling the caller about the patients as they are found
+     *
+     * @param contractNumber - the contract
+     * @param currentMonth - the months to retrieve, January to this month
+     * @param patientsFound - called with each page of patients as it is retrieved, maybe from several threads
+     *                      and with patients already found
+     * @return the patients of the contract with the months they are active in
+     */
+    default GetPatientsByContractResponse getPatients(String contractNumber, int currentMonth,
+                                                      Consumer<Set<String>> patientsFound) {
+        return getPatients(contractNumber, currentMonth);
+    }
 }
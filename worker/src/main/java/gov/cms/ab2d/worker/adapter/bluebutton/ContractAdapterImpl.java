@@ -6,9 +6,6 @@ import gov.cms.ab2d.common.repository.ContractRepository;
 import gov.cms.ab2d.common.service.PropertiesService;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.eventlogger.events.ReloadEvent;
-import gov.cms.ab2d.filter.FilterOutByDate;
-import gov.cms.ab2d.filter.FilterOutByDate.DateRange;
-import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse.PatientDTO;
 import gov.cms.ab2d.worker.service.BeneficiaryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,12 +19,15 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Component;
 
-import java.text.ParseException;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static gov.cms.ab2d.common.util.Constants.CONTRACT_2_BENE_CACHING_ON;
@@ -50,56 +50,95 @@ public class ContractAdapterImpl implements ContractAdapter {
     private final PropertiesService propertiesService;
     private final LogManager eventLogger;
 
+    // Spring auto-wiring is happening here. Do not change the field name.
+    private final Executor contractMappingThreadPool;
+
     @Override
     public GetPatientsByContractResponse getPatients(final String contractNumber, final int currentMonth) {
+        return getPatients(contractNumber, currentMonth, patientIds -> { });
+    }
 
-        var patientDTOs = new ArrayList<PatientDTO>();
+    @Override
+    public GetPatientsByContractResponse getPatients(final String contractNumber, final int currentMonth,
+                                                     final Consumer<Set<String>> patientsFound) {
+
+        // the months each patient is active in the contract, in the order the patients were first seen
+        var patientMonths = new LinkedHashMap<String, Integer>();
 
         final boolean cachingOn = isContractToBeneCachingOn();
 
         var contract = contractRepo.findContractByContractNumber(contractNumber).get();
 
+        // fetch every month at once, each month is paged through independently
+        var monthFutures = new ArrayList<CompletableFuture<MonthPatients>>(currentMonth);
         for (var month = 1; month <= currentMonth; month++) {
-            var bfdPatientsIds = getPatientsForMonth(contractNumber, contract, month, cachingOn);
+            final var monthToFetch = month;
+            monthFutures.add(CompletableFuture.supplyAsync(
+                    () -> getPatientsForMonth(contractNumber, contract, monthToFetch, cachingOn, patientsFound),
+                    contractMappingThreadPool));
+        }
 
-            var monthDateRange = toDateRange(month);
+        for (var monthFuture : monthFutures) {
+            var monthPatients = getResult(monthFuture);
 
-            for (String bfdPatientId : bfdPatientsIds) {
-                buildPatientDTOs(patientDTOs, monthDateRange, bfdPatientId);
+            // the same patients are in most months so months are cached one at a time on this thread
+            if (monthPatients.needsCaching) {
+                beneficiaryService.storeBeneficiaries(contract.getId(), monthPatients.patientIds, monthPatients.month);
+            }
+
+            var monthBit = 1 << (monthPatients.month - 1);
+
+            for (String bfdPatientId : monthPatients.patientIds) {
+                patientMonths.merge(bfdPatientId, monthBit, (months, bit) -> months | bit);
             }
         }
 
-        return toGetPatientsByContractResponse(contractNumber, patientDTOs);
+        return toGetPatientsByContractResponse(contractNumber, patientMonths);
+    }
+
+    /**
+     * Wait for a month to be fetched. If fetching it failed, rethrow the original exception rather than the
+     * wrapper from the future, so callers see the same error they would if the months were fetched in turn.
+     *
+     * @param monthFuture - the month being fetched
+     * @return the patients active in the month
+     */
+    private MonthPatients getResult(CompletableFuture<MonthPatients> monthFuture) {
+        try {
+            return monthFuture.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 
     private boolean isContractToBeneCachingOn() {
         return propertiesService.isToggleOn(CONTRACT_2_BENE_CACHING_ON);
     }
 
-    private Set<String> getPatientsForMonth(String contractNumber, Contract contract, int month, boolean cachingOn) {
+    private MonthPatients getPatientsForMonth(String contractNumber, Contract contract, int month, boolean cachingOn,
+                                              Consumer<Set<String>> patientsFound) {
         Set<String> bfdPatientsIds = null;
 
         if (cachingOn) {
             bfdPatientsIds = beneficiaryService.findPatientIdsInDb(contract.getId(), month);
             if (!bfdPatientsIds.isEmpty()) {
-                return bfdPatientsIds;
+                patientsFound.accept(bfdPatientsIds);
+                return new MonthPatients(month, bfdPatientsIds, false);
             }
 
             // patient ids were not found in local DB given the contractId and currentMonth
             // call BFD to fetch the data
         }
 
-        bfdPatientsIds = getPatientIdsForMonth(contractNumber, month);
+        bfdPatientsIds = getPatientIdsForMonth(contractNumber, month, patientsFound);
 
-        if (cachingOn) {
-            //if number of benes for this month exceeds cachingThreshold, cache it
-            var beneficiaryCount = bfdPatientsIds.size();
-            if (beneficiaryCount > cachingThreshold) {
-                beneficiaryService.storeBeneficiaries(contract.getId(), bfdPatientsIds, month);
-            }
-        }
+        //if number of benes for this month exceeds cachingThreshold, cache it
+        var needsCaching = cachingOn && bfdPatientsIds.size() > cachingThreshold;
 
-        return bfdPatientsIds;
+        return new MonthPatients(month, bfdPatientsIds, needsCaching);
     }
 
     /**
@@ -109,15 +148,20 @@ public class ContractAdapterImpl implements ContractAdapter {
      *
      * @param contractNumber
      * @param month
+     * @param patientsFound - called with the patients of each page
      * @return a list of PatientIds
      */
-    private Set<String> getPatientIdsForMonth(String contractNumber, Integer month) {
+    private Set<String> getPatientIdsForMonth(String contractNumber, Integer month,
+                                              Consumer<Set<String>> patientsFound) {
         Bundle bundle = getBundle(contractNumber, month);
         final Set<String> patientIDs = extractPatientIDs(bundle);
+        patientsFound.accept(patientIDs);
 
         while (bundle.getLink(Bundle.LINK_NEXT) != null) {
             bundle = bfdClient.requestNextBundleFromServer(bundle);
-            patientIDs.addAll(extractPatientIDs(bundle));
+            var pagePatientIDs = extractPatientIDs(bundle);
+            patientsFound.accept(pagePatientIDs);
+            patientIDs.addAll(pagePatientIDs);
         }
         eventLogger.log(new ReloadEvent(null, ReloadEvent.FileType.CONTRACT_MAPPING,
                 "Contract: " + contractNumber + " - month " + month, patientIDs.size()));
@@ -173,69 +217,36 @@ public class ContractAdapterImpl implements ContractAdapter {
         return identifier.getSystem().equalsIgnoreCase(BENEFICIARY_ID);
     }
 
-    private void buildPatientDTOs(ArrayList<PatientDTO> patientDTOs, DateRange monthDateRange, String bfdPatientId) {
-        var optPatient = findPatient(patientDTOs, bfdPatientId);
-        if (optPatient.isPresent()) {
-            // patient id was already active on this contract in previous month(s)
-            // So just add this month to the patient's dateRangesUnderContract
-
-            var patientDTO = optPatient.get();
-            if (monthDateRange != null) {
-                patientDTO.getDateRangesUnderContract().add(monthDateRange);
-            }
-
-        } else {
-            // new patient id.
-            // Create a new PatientDTO for this patient
-            // And then add this month to the patient's dateRangesUnderContract
-
-            var patientDTO = PatientDTO.builder()
-                    .patientId(bfdPatientId)
-                    .build();
-
-            if (monthDateRange != null) {
-                patientDTO.getDateRangesUnderContract().add(monthDateRange);
-            }
-
-            patientDTOs.add(patientDTO);
-        }
-    }
-
     /**
-     * Given a patientId, searches for a PatientDTO in a list of PatientDTOs
+     * Given the months each patient is active in the contract, create a compact roster of the patients which
+     * creates each PatientDTO, with the date ranges the patient is under contract, as it is read.
      *
-     * @param patientDTOs
-     * @param bfdPatientId
-     * @return an optional PatientDTO
+     * @param contractNumber - the contract
+     * @param patientMonths - a bit mask of the months each patient is active, bit 0 is January
+     * @return the response
      */
-    private Optional<PatientDTO> findPatient(List<PatientDTO> patientDTOs, String bfdPatientId) {
-        return patientDTOs.stream()
-                .filter(patientDTO -> patientDTO.getPatientId().equals(bfdPatientId))
-                .findAny();
+    private GetPatientsByContractResponse toGetPatientsByContractResponse(String contractNumber,
+                                                                          Map<String, Integer> patientMonths) {
+        var roster = PatientRoster.builder(patientMonths.size());
+        patientMonths.forEach(roster::add);
+
+        // The builder would copy the roster into a list of PatientDTOs
+        return new GetPatientsByContractResponse(contractNumber, roster.build(LocalDate.now().getYear()));
     }
 
     /**
-     * Given the ordinal for a month,
-     * creates a date range from the start of the month to the end of the month for the current year
-     * @param month
-     * @return a DateRange
+     * The patients active in one month of a contract
      */
-    private DateRange toDateRange(int month) {
-        DateRange dateRange = null;
-        try {
-            dateRange = FilterOutByDate.getDateRange(month, LocalDate.now().getYear());
-        } catch (ParseException e) {
-            log.error("unable to create Date Range ", e);
-            //ignore
+    private static class MonthPatients {
+        private final int month;
+        private final Set<String> patientIds;
+        // the patients came from BFD and there are enough of them to cache
+        private final boolean needsCaching;
+
+        MonthPatients(int month, Set<String> patientIds, boolean needsCaching) {
+            this.month = month;
+            this.patientIds = patientIds;
+            this.needsCaching = needsCaching;
         }
-
-        return dateRange;
-    }
-
-    private GetPatientsByContractResponse toGetPatientsByContractResponse(String contractNumber, ArrayList<PatientDTO> patientDTOs) {
-        return GetPatientsByContractResponse.builder()
-                .contractNumber(contractNumber)
-                .patients(patientDTOs)
-                .build();
     }
 }
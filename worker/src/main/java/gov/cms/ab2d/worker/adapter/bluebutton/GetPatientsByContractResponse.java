@@ -1,13 +1,16 @@
 package gov.cms.ab2d.worker.adapter.bluebutton;
 
 import gov.cms.ab2d.filter.FilterOutByDate.DateRange;
+import gov.cms.ab2d.filter.FilterOutByDate.MonthsUnderContract;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.Singular;
 
+import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Data
@@ -31,5 +34,21 @@ public class GetPatientsByContractResponse {
         @Builder.Default
         private List<DateRange> dateRangesUnderContract = new ArrayList<>();
 
+        // When set, claims are checked against the months and the date ranges are only built if asked for
+        private MonthsUnderContract monthsUnderContract;
+
+        /**
+         * The date ranges built from the months can't be changed, since a change wouldn't be kept
+         */
+        public List<DateRange> getDateRangesUnderContract() {
+            if (dateRangesUnderContract.isEmpty() && monthsUnderContract != null) {
+                try {
+                    return Collections.unmodifiableList(monthsUnderContract.toDateRanges());
+                } catch (ParseException e) {
+                    throw new IllegalStateException("unable to create Date Range", e);
+                }
+            }
+            return dateRangesUnderContract;
+        }
     }
 }
@@ -0,0 +1,137 @@
+package gov.cms.ab2d.worker.adapter.bluebutton;
+
+import gov.cms.ab2d.filter.FilterOutByDate.MonthsUnderContract;
+import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse.PatientDTO;
+import gov.cms.ab2d.worker.util.PatientIds;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The patients of a contract and the months each of them is active in the contract.
+ *
+ * The patients of the largest contracts are kept for the whole job, so rather than a PatientDTO per patient the
+ * roster keeps each id as a primitive long and the months as a bit mask. The PatientDTO is created when a patient
+ * is read. Every patient active in the same months shares the same MonthsUnderContract, which claims are
+ * checked against without building any date ranges.
+ *
+ * The roster is read only once it has been built.
+ */
+public final class PatientRoster extends AbstractList<PatientDTO> {
+
+    private static final int ALL_MONTHS = 0xFFF;
+
+    private final long[] ids;
+    // The ids which aren't numbers, null unless there are any
+    private final String[] otherIds;
+    // A bit mask of the months each patient is active, bit 0 is January
+    private final short[] months;
+    private final Map<Integer, MonthsUnderContract> monthsUnderContract;
+
+    private PatientRoster(long[] ids, String[] otherIds, short[] months, int year) {
+        this.ids = ids;
+        this.otherIds = otherIds;
+        this.months = months;
+
+        // There are only a few thousand possible combinations of months, so each combination is only created once
+        var noMonths = new MonthsUnderContract(year, 0);
+        monthsUnderContract = new HashMap<>();
+        for (short patientMonths : months) {
+            monthsUnderContract.computeIfAbsent(patientMonths & ALL_MONTHS, noMonths::withMonths);
+        }
+    }
+
+    public static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    @Override
+    public PatientDTO get(int index) {
+        return PatientDTO.builder()
+                .patientId(getPatientId(index))
+                .monthsUnderContract(monthsUnderContract.get(getMonths(index)))
+                .build();
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    public String getPatientId(int index) {
+        if (otherIds != null && otherIds[index] != null) {
+            return otherIds[index];
+        }
+        return Long.toString(ids[index]);
+    }
+
+    /**
+     * @param index - the patient
+     * @return a bit mask of the months the patient is active in the contract, bit 0 is January
+     */
+    public int getMonths(int index) {
+        return months[index] & ALL_MONTHS;
+    }
+
+    /**
+     * Collects the patients of a contract in the order they are added
+     */
+    public static class Builder {
+
+        private long[] ids;
+        private String[] otherIds;
+        private short[] months;
+        private int size;
+
+        Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 16);
+            ids = new long[capacity];
+            months = new short[capacity];
+        }
+
+        /**
+         * Add a patient
+         *
+         * @param patientId - the beneficiary id
+         * @param patientMonths - a bit mask of the months the patient is active, bit 0 is January
+         * @return the builder
+         */
+        public Builder add(String patientId, int patientMonths) {
+            if (size == ids.length) {
+                grow();
+            }
+
+            long id = PatientIds.parse(patientId);
+            if (id == PatientIds.NOT_NUMERIC) {
+                if (otherIds == null) {
+                    otherIds = new String[ids.length];
+                }
+                otherIds[size] = patientId;
+            }
+            ids[size] = id;
+            months[size] = (short) (patientMonths & ALL_MONTHS);
+            size++;
+            return this;
+        }
+
+        /**
+         * @param year - the year the months are in
+         * @return the roster
+         */
+        public PatientRoster build(int year) {
+            return new PatientRoster(Arrays.copyOf(ids, size), otherIds == null ? null : Arrays.copyOf(otherIds, size),
+                    Arrays.copyOf(months, size), year);
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            months = Arrays.copyOf(months, capacity);
+            if (otherIds != null) {
+                otherIds = Arrays.copyOf(otherIds, capacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package gov.cms.ab2d.worker.config;
+
+import java.util.List;
+
+/**
+ * Decides which category of {@link RoundRobinBlockingQueue} the next task is taken from. Only called while
+ * holding the queue's lock.
+ */
+interface CategoryScheduler<E> {
+
+    /**
+     * Start scheduling a category which has tasks but isn't scheduled
+     */
+    void activate(TaskCategory<E> category);
+
+    /**
+     * Add a task to a category which is already scheduled
+     */
+    void addTask(TaskCategory<E> category, E task);
+
+    /**
+     * @return the category the next task is taken from, null if no category has tasks
+     */
+    TaskCategory<E> peek();
+
+    /**
+     * Take the next task. The category it came from stops being scheduled once it has no tasks left.
+     *
+     * @return the task, null if no category has tasks
+     */
+    E poll();
+
+    /**
+     * Remove a task from a scheduled category, which stops being scheduled once it has no tasks left
+     *
+     * @return true if the category had the task
+     */
+    boolean remove(TaskCategory<E> category, Object task);
+
+    /**
+     * @return the scheduled categories, in the order they would next be served
+     */
+    List<TaskCategory<E>> categories();
+
+    void clear();
+}
@@ -0,0 +1,81 @@
+package gov.cms.ab2d.worker.config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Serves the categories in a ring. The category at the head of the ring is served as many tasks as its weight
+ * before it moves to the back, and a category which gets its first task joins at the back. Every task costs the
+ * same, so the deficit of a category is simply the number of tasks it has left in its turn.
+ *
+ * With weights off every category gets one task a turn, which is plain round robin.
+ */
+class DeficitRoundRobinScheduler<E> implements CategoryScheduler<E> {
+
+    private final boolean weighted;
+    private final Deque<TaskCategory<E>> ring = new ArrayDeque<>();
+
+    DeficitRoundRobinScheduler(boolean weighted) {
+        this.weighted = weighted;
+    }
+
+    @Override
+    public void activate(TaskCategory<E> category) {
+        category.setDeficit(0);
+        ring.addLast(category);
+    }
+
+    @Override
+    public void addTask(TaskCategory<E> category, E task) {
+        category.getTasks().add(task);
+    }
+
+    @Override
+    public TaskCategory<E> peek() {
+        return ring.peekFirst();
+    }
+
+    @Override
+    public E poll() {
+        TaskCategory<E> category = ring.peekFirst();
+        if (category == null) {
+            return null;
+        }
+        if (category.getDeficit() <= 0) {
+            // A new turn
+            category.setDeficit(weighted ? category.getWeight() : 1);
+        }
+        E task = category.getTasks().poll();
+        category.setDeficit(category.getDeficit() - 1);
+        if (category.getTasks().isEmpty()) {
+            ring.pollFirst();
+            category.setDeficit(0);
+        } else if (category.getDeficit() == 0) {
+            ring.addLast(ring.pollFirst());
+        }
+        return task;
+    }
+
+    @Override
+    public boolean remove(TaskCategory<E> category, Object task) {
+        if (!category.getTasks().remove(task)) {
+            return false;
+        }
+        if (category.getTasks().isEmpty()) {
+            ring.remove(category);
+        }
+        return true;
+    }
+
+    @Override
+    public List<TaskCategory<E>> categories() {
+        return new ArrayList<>(ring);
+    }
+
+    @Override
+    public void clear() {
+        ring.clear();
+    }
+}
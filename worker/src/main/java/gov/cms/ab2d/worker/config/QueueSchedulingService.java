@@ -0,0 +1,62 @@
+package gov.cms.ab2d.worker.config;
+
+import gov.cms.ab2d.worker.properties.PropertiesChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static gov.cms.ab2d.common.util.Constants.PCP_SCHEDULING_POLICY;
+import static gov.cms.ab2d.common.util.Constants.PCP_SCHEDULING_WEIGHTS;
+
+/**
+ * Applies the pcp.scheduling.policy and pcp.scheduling.weights properties to the queue of the patient processor
+ * thread pool, so how the threads are shared between jobs can be changed in the properties table without a
+ * redeploy.
+ */
+@Slf4j
+@Service
+public class QueueSchedulingService implements ApplicationListener<PropertiesChangedEvent> {
+
+    private final RoundRobinBlockingQueue<?> queue;
+
+    @Value("${pcp.scheduling.policy:ROUND_ROBIN}")
+    private String policy;
+
+    @Value("${pcp.scheduling.weights:}")
+    private String weights;
+
+    /**
+     * Spring auto-wiring is happening here. Do not change the parameter name.
+     *
+     * @param patientProcessorThreadPool {@link Executor} whose queue is scheduled.
+     */
+    public QueueSchedulingService(Executor patientProcessorThreadPool) {
+        this.queue = (RoundRobinBlockingQueue<?>) ((ThreadPoolTaskExecutor) patientProcessorThreadPool)
+                .getThreadPoolExecutor().getQueue();
+    }
+
+    @PostConstruct
+    void init() {
+        apply(policy, weights);
+    }
+
+    // An event that originates from the PropertiesChangeDetection class
+    @Override
+    public void onApplicationEvent(PropertiesChangedEvent propertiesChangedEvent) {
+        Map<String, Object> properties = propertiesChangedEvent.getPropertiesMap();
+        apply(String.valueOf(properties.getOrDefault(PCP_SCHEDULING_POLICY, policy)),
+                String.valueOf(properties.getOrDefault(PCP_SCHEDULING_WEIGHTS, weights)));
+    }
+
+    private void apply(String newPolicy, String newWeights) {
+        policy = newPolicy;
+        weights = newWeights;
+        queue.setScheduling(SchedulingPolicy.fromProperty(newPolicy), SchedulingPolicy.parseWeights(newWeights));
+    }
+}
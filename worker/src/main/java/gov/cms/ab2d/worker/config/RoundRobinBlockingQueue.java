@@ -6,9 +6,9 @@ import org.springframework.util.Assert;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
 
 @Slf4j
 /**
@@ -19,14 +19,25 @@ import java.util.stream.Collectors;
  * particular job (or a contract to be precise), and serving tasks to the surrounding
  * {@link java.util.concurrent.Executor}
  * in round-robin fashion.
+ *
+ * Which category is served next is decided by the {@link SchedulingPolicy}, which can be changed while the
+ * queue is in use. With round robin, the categories with tasks waiting are kept in a ring whose head is the
+ * category served next. Serving a task moves its category to the back of the ring, or drops it from the ring
+ * once it has no tasks left, and a category which gets its first task joins at the back. Adding, taking and
+ * counting tasks don't depend on the number of categories.
  */
 public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
 
-    // The individual category queues
-    private final Map<String, Deque<E>> categoryQueues =
-            Collections.synchronizedMap(new LinkedHashMap<>());
-    // The current category index
-    private volatile int currentIndex;
+    // The individual category queues, only categories with tasks waiting are kept
+    private final Map<String, TaskCategory<E>> categoryQueues = new HashMap<>();
+    // Decides which category with tasks waiting is served next
+    private CategoryScheduler<E> scheduler = new DeficitRoundRobinScheduler<>(false);
+    private volatile SchedulingPolicy policy = SchedulingPolicy.ROUND_ROBIN;
+    private Map<String, Integer> weights = Collections.emptyMap();
+    // Counts the categories which got their first task
+    private long categorySequence;
+    // The number of tasks in every category, read without the lock
+    private final AtomicInteger count = new AtomicInteger();
     // Main lock guarding all access
     private final ReentrantLock lock = new ReentrantLock();
     // Not empty condition on the lock
@@ -34,14 +45,34 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
 
     public static final ThreadLocal<String> CATEGORY_HOLDER = new ThreadLocal<>();
 
+    // Optional keys the weight of the category is looked up by when it isn't weighted itself, e.g. its contract
+    // and sponsor. Set along with CATEGORY_HOLDER.
+    public static final ThreadLocal<List<String>> WEIGHT_KEYS_HOLDER = new ThreadLocal<>();
+
+    // Optional work the category has left, including tasks not added yet, which shortest remaining work first
+    // ranks it by instead of its tasks waiting. Set along with CATEGORY_HOLDER.
+    public static final ThreadLocal<Integer> REMAINING_WORK_HOLDER = new ThreadLocal<>();
+
     // New code to add items
     private boolean add(String category, E e) {
         log.debug("Adding {} - {}", category, e);
         Assert.notNull(category, "Contract number must be set via CATEGORY_HOLDER prior to using this method");
+        Integer remainingWork = REMAINING_WORK_HOLDER.get();
         lock.lock();
         try {
-            Deque<E> categoryQueue = categoryQueues.computeIfAbsent(category, k -> new LinkedList<>());
-            categoryQueue.add(e);
+            TaskCategory<E> categoryQueue = categoryQueues.get(category);
+            if (categoryQueue == null) {
+                categoryQueue = new TaskCategory<>(category, getWeightKeys(), categorySequence++);
+                categoryQueue.setWeight(getWeight(categoryQueue));
+                categoryQueue.setRemainingWork(remainingWork);
+                categoryQueue.getTasks().add(e);
+                categoryQueues.put(category, categoryQueue);
+                scheduler.activate(categoryQueue);
+            } else {
+                categoryQueue.setRemainingWork(remainingWork);
+                scheduler.addTask(categoryQueue, e);
+            }
+            count.incrementAndGet();
             notEmpty.signal();
             return true;
         } finally {
@@ -54,11 +85,62 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
         return this.add(CATEGORY_HOLDER.get(), e);
     }
 
+    /**
+     * Change how the categories are scheduled. The categories with tasks waiting keep their tasks.
+     *
+     * @param newPolicy - the policy
+     * @param newWeights - the weight of each category, or of the keys in WEIGHT_KEYS_HOLDER. Categories
+     *                   without a weight have {@link SchedulingPolicy#DEFAULT_WEIGHT}.
+     */
+    public void setScheduling(SchedulingPolicy newPolicy, Map<String, Integer> newWeights) {
+        lock.lock();
+        try {
+            if (newPolicy == policy && newWeights.equals(weights)) {
+                return;
+            }
+            log.info("Scheduling tasks with {} and weights {}", newPolicy, newWeights);
+            List<TaskCategory<E>> categories = scheduler.categories();
+            policy = newPolicy;
+            weights = Map.copyOf(newWeights);
+            scheduler = newPolicy == SchedulingPolicy.SHORTEST_REMAINING_WORK_FIRST
+                    ? new ShortestWorkFirstScheduler<>()
+                    : new DeficitRoundRobinScheduler<>(newPolicy == SchedulingPolicy.DEFICIT_ROUND_ROBIN);
+            for (TaskCategory<E> category : categories) {
+                category.setWeight(getWeight(category));
+                scheduler.activate(category);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public SchedulingPolicy getPolicy() {
+        return policy;
+    }
+
+    private static List<String> getWeightKeys() {
+        List<String> keys = WEIGHT_KEYS_HOLDER.get();
+        return keys == null ? List.of() : keys;
+    }
+
+    /**
+     * The weight of the category itself, or else of the first of its weight keys which has one
+     */
+    private int getWeight(TaskCategory<E> category) {
+        Integer weight = weights.get(category.getName());
+        for (int i = 0; weight == null && i < category.getWeightKeys().size(); i++) {
+            weight = weights.get(category.getWeightKeys().get(i));
+        }
+        return weight == null ? SchedulingPolicy.DEFAULT_WEIGHT : weight;
+    }
+
     @Override
     public void clear() {
         lock.lock();
         try {
             categoryQueues.clear();
+            scheduler.clear();
+            count.set(0);
         } finally {
             lock.unlock();
         }
@@ -71,8 +153,8 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
         }
         lock.lock();
         try {
-            for (Map.Entry<String, Deque<E>> entry : categoryQueues.entrySet()) {
-                if (entry.getValue().contains(o)) {
+            for (TaskCategory<E> category : categoryQueues.values()) {
+                if (category.getTasks().contains(o)) {
                     return true;
                 }
             }
@@ -89,11 +171,11 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
         }
         lock.lock();
         try {
-            int size = size();
-            for (Map.Entry<String, Deque<E>> entry : categoryQueues.entrySet()) {
-                c.addAll(entry.getValue());
-                entry.getValue().clear();
+            int size = count.get();
+            for (TaskCategory<E> category : scheduler.categories()) {
+                c.addAll(category.getTasks());
             }
+            clear();
             return size;
         } finally {
             lock.unlock();
@@ -156,7 +238,7 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
         long nanos = unit.toNanos(timeout);
         lock.lockInterruptibly();
         try {
-            while (size() == 0) {
+            while (count.get() == 0) {
                 if (nanos <= 0L) {
                     return null;
                 }
@@ -182,11 +264,11 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
     public boolean remove(Object o) {
         lock.lock();
         try {
-            for (Map.Entry<String, Deque<E>> entry : categoryQueues.entrySet()) {
-                final Deque<E> queue = categoryQueues.get(entry.getKey());
-                if (queue.remove(o)) {
-                    if (queue.isEmpty()) {
-                        categoryQueues.remove(entry.getKey());
+            for (TaskCategory<E> category : scheduler.categories()) {
+                if (scheduler.remove(category, o)) {
+                    count.decrementAndGet();
+                    if (category.getTasks().isEmpty()) {
+                        categoryQueues.remove(category.getName());
                     }
                     return true;
                 }
@@ -219,13 +301,7 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
 
     @Override
     public int size() {
-        lock.lock();
-        try {
-            return categoryQueues.values().stream().map(queue -> queue.size())
-                    .reduce(0, Integer::sum);
-        } finally {
-            lock.unlock();
-        }
+        return count.get();
     }
 
     @Override
@@ -238,7 +314,7 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
         try {
-            while (size() == 0) {
+            while (count.get() == 0) {
                 notEmpty.await();
             }
             return getNext();
@@ -261,9 +337,14 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append(this.getClass().getSimpleName() + ": ");
-        for (String category : categoryQueues.keySet()) {
-            builder.append(category).append(" with ").append(categoryQueues.get(category).size())
-                    .append(" Futures; ");
+        lock.lock();
+        try {
+            for (TaskCategory<E> category : scheduler.categories()) {
+                builder.append(category.getName()).append(" with ").append(category.getTasks().size())
+                        .append(" Futures; ");
+            }
+        } finally {
+            lock.unlock();
         }
         return builder.toString();
     }
@@ -271,27 +352,20 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
     /**
      * Get the next round robin Object
      *
-     * @return
+     * @return the next task of the category the scheduler serves next, null if there are no tasks
      */
     private E getNext() {
         lock.lock();
         try {
-            if (size() == 0) {
+            TaskCategory<E> currentContract = scheduler.peek();
+            if (currentContract == null) {
                 return null;
             }
-            if (currentIndex >= categoryQueues.keySet().size()) {
-                currentIndex = 0;
-            }
-            String currentContract =
-                    categoryQueues.keySet().stream().collect(Collectors.toList()).get(currentIndex);
-            Deque<E> queue = categoryQueues.get(currentContract);
-            E val = queue.poll();
-            if (queue.size() == 0) {
-                // No more requests so remove category. We don't have to increment index since we removed the item at the
-                // current index
-                categoryQueues.remove(currentContract);
-            } else {
-                currentIndex++;
+            E val = scheduler.poll();
+            count.decrementAndGet();
+            if (currentContract.getTasks().isEmpty()) {
+                // No more requests so remove category
+                categoryQueues.remove(currentContract.getName());
             }
             return val;
         } finally {
@@ -302,17 +376,10 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
     private E peekNext() {
         lock.lock();
         try {
-            if (size() == 0) {
-                return null;
-            }
-            if (currentIndex >= categoryQueues.keySet().size()) {
-                currentIndex = 0;
-            }
-            String currentContract =
-                    categoryQueues.keySet().stream().collect(Collectors.toList()).get(currentIndex);
-            return categoryQueues.get(currentContract).peek();
+            TaskCategory<E> currentContract = scheduler.peek();
+            return currentContract == null ? null : currentContract.getTasks().peek();
         } finally {
             lock.unlock();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,69 @@
+package gov.cms.ab2d.worker.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * How {@link RoundRobinBlockingQueue} shares the patient processor threads between the jobs with tasks waiting.
+ * Set with the pcp.scheduling.policy property.
+ */
+@Slf4j
+public enum SchedulingPolicy {
+
+    // Every job gets one task in turn
+    ROUND_ROBIN,
+
+    // Every job gets as many tasks in turn as its weight, see pcp.scheduling.weights
+    DEFICIT_ROUND_ROBIN,
+
+    // The job with the fewest patients left goes first, so small jobs aren't held up behind large ones
+    SHORTEST_REMAINING_WORK_FIRST;
+
+    public static final int DEFAULT_WEIGHT = 1;
+
+    // A key and its weight, e.g. "S1234=5"
+    private static final Pattern WEIGHT = Pattern.compile("\\s*([^=\\s]+)\\s*=\\s*(\\d{1,4})\\s*");
+
+    /**
+     * @param value - the value of the pcp.scheduling.policy property
+     * @return the policy, round robin if the value isn't a policy
+     */
+    public static SchedulingPolicy fromProperty(String value) {
+        if (value != null) {
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.error("Unknown scheduling policy {}, using {}", value, ROUND_ROBIN);
+            }
+        }
+        return ROUND_ROBIN;
+    }
+
+    /**
+     * Parse the weights of the jobs, contracts or sponsors the deficit round robin policy uses, given as
+     * key=weight pairs separated by commas, e.g. "S1234=5,Z0001=2". Pairs which can't be parsed are skipped.
+     *
+     * @param value - the value of the pcp.scheduling.weights property
+     * @return the weight of each key
+     */
+    public static Map<String, Integer> parseWeights(String value) {
+        if (value == null || value.isBlank()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> weights = new HashMap<>();
+        for (String pair : value.split(",")) {
+            Matcher matcher = WEIGHT.matcher(pair);
+            if (matcher.matches() && Integer.parseInt(matcher.group(2)) > 0) {
+                weights.put(matcher.group(1), Integer.parseInt(matcher.group(2)));
+            } else {
+                log.error("Skipping scheduling weight {}", pair);
+            }
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,81 @@
+package gov.cms.ab2d.worker.config;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Serves the category with the least work left first. That is the work left it was given with its last task,
+ * see {@link RoundRobinBlockingQueue#REMAINING_WORK_HOLDER}, or else its number of tasks waiting. A job which
+ * only has a few patients waiting at a time because of job.patient.window still ranks by all the patients it has
+ * left. Categories with the same work left are served in the order they got their first task.
+ *
+ * Categories are kept ordered by their work left, so a category is taken out of the order before a task is added
+ * to or taken from it and put back afterwards with its work left ranked again.
+ */
+class ShortestWorkFirstScheduler<E> implements CategoryScheduler<E> {
+
+    private final TreeSet<TaskCategory<E>> categories = new TreeSet<>(
+            Comparator.<TaskCategory<E>>comparingInt(category -> category.getRankedWork())
+                    .thenComparingLong(category -> category.getSequence()));
+
+    @Override
+    public void activate(TaskCategory<E> category) {
+        rank(category);
+    }
+
+    @Override
+    public void addTask(TaskCategory<E> category, E task) {
+        categories.remove(category);
+        category.getTasks().add(task);
+        rank(category);
+    }
+
+    @Override
+    public TaskCategory<E> peek() {
+        return categories.isEmpty() ? null : categories.first();
+    }
+
+    @Override
+    public E poll() {
+        TaskCategory<E> category = categories.pollFirst();
+        if (category == null) {
+            return null;
+        }
+        E task = category.getTasks().poll();
+        if (!category.getTasks().isEmpty()) {
+            rank(category);
+        }
+        return task;
+    }
+
+    @Override
+    public boolean remove(TaskCategory<E> category, Object task) {
+        categories.remove(category);
+        boolean removed = category.getTasks().remove(task);
+        if (!category.getTasks().isEmpty()) {
+            rank(category);
+        }
+        return removed;
+    }
+
+    @Override
+    public List<TaskCategory<E>> categories() {
+        return new ArrayList<>(categories);
+    }
+
+    @Override
+    public void clear() {
+        categories.clear();
+    }
+
+    /**
+     * Put a category which isn't in the order into it by its work left
+     */
+    private void rank(TaskCategory<E> category) {
+        Integer remainingWork = category.getRemainingWork();
+        category.setRankedWork(remainingWork != null ? remainingWork : category.getTasks().size());
+        categories.add(category);
+    }
+}
@@ -0,0 +1,41 @@
+package gov.cms.ab2d.worker.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The tasks waiting in {@link RoundRobinBlockingQueue} for one category and what its scheduler needs to know
+ * about it. Only accessed while holding the queue's lock.
+ */
+@Getter
+class TaskCategory<E> {
+
+    private final String name;
+    // The keys the weight of the category is looked up by, most specific first
+    private final List<String> weightKeys;
+    // The order the categories got their first task in, which breaks ties between them
+    private final long sequence;
+    private final Deque<E> tasks = new ArrayDeque<>();
+
+    @Setter
+    private int weight = SchedulingPolicy.DEFAULT_WEIGHT;
+    // The number of tasks the category may still be served in its current turn
+    @Setter
+    private int deficit;
+    // The work the category has left as of its last task, null if it wasn't given
+    @Setter
+    private Integer remainingWork;
+    // The work shortest remaining work first last ranked the category by, which only it changes
+    @Setter
+    private int rankedWork;
+
+    TaskCategory(String name, List<String> weightKeys, long sequence) {
+        this.name = name;
+        this.weightKeys = weightKeys;
+        this.sequence = sequence;
+    }
+}
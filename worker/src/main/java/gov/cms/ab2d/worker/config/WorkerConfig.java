@@ -61,6 +61,18 @@ public class WorkerConfig {
     @Value("${job.queue.capacity}")
     private int jobQueueCapacity;
 
+    @Value("${pcp.max.pool.size}")
+    private int pcpMaxPoolSize;
+
+    @Value("${job.file.compression.pool.size:8}")
+    private int compressionPoolSize;
+
+    @Value("${contract2bene.month.pool.size:24}")
+    private int contractMonthPoolSize;
+
+    @Value("${contract2bene.contract.pool.size:4}")
+    private int contractPoolSize;
+
     @Bean
     public Executor patientProcessorThreadPool() {
         // Regretfully, no good way to supply a custom queue to ThreadPoolTaskExecutor
@@ -80,6 +92,75 @@ public class WorkerConfig {
     }
 
 
+    /**
+     * Requests the next pages of EOBs from BFD while the patient processor threads are busy with the current page.
+     * There is a thread for every patient processor thread the pool can scale to. Requests are never queued behind
+     * other patients' requests; if no thread is free the page is requested on the calling thread instead.
+     */
+    @Bean
+    public Executor bfdPrefetchThreadPool() {
+        final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(pcpMaxPoolSize);
+        taskExecutor.setMaxPoolSize(pcpMaxPoolSize);
+        taskExecutor.setQueueCapacity(0);
+        taskExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        taskExecutor.setThreadNamePrefix("bfdp-");
+        return taskExecutor;
+    }
+
+    /**
+     * Compresses blocks of gzip output for all contracts being written.
+     */
+    @Bean
+    public Executor outputCompressionThreadPool() {
+        final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(compressionPoolSize);
+        taskExecutor.setMaxPoolSize(compressionPoolSize);
+        taskExecutor.setThreadNamePrefix("gzip-");
+        return taskExecutor;
+    }
+
+    /**
+     * Runs the single writer of each contract whose output is queued, see QueuedStreamHelperImpl. A job processes
+     * one contract at a time, so there is a thread for every job which can run at once. A writer is never left
+     * waiting for a thread; if none is free the contract fails.
+     */
+    @Bean
+    public Executor outputWriterThreadPool() {
+        final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(jobMaxPoolSize);
+        taskExecutor.setMaxPoolSize(jobMaxPoolSize);
+        taskExecutor.setQueueCapacity(0);
+        taskExecutor.setThreadNamePrefix("pcw-");
+        return taskExecutor;
+    }
+
+    /**
+     * Fetches the patients active in each month of a contract from BFD. The months of a contract are fetched
+     * at the same time instead of one after another.
+     */
+    @Bean
+    public Executor contractMappingThreadPool() {
+        final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(contractMonthPoolSize);
+        taskExecutor.setMaxPoolSize(contractMonthPoolSize);
+        taskExecutor.setThreadNamePrefix("c2b-");
+        return taskExecutor;
+    }
+
+    /**
+     * Fetches the patients of the contracts in a job at the same time. Each contract waits on its months in
+     * contractMappingThreadPool so the two must be separate pools.
+     */
+    @Bean
+    public Executor contractPatientsThreadPool() {
+        final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(contractPoolSize);
+        taskExecutor.setMaxPoolSize(contractPoolSize);
+        taskExecutor.setThreadNamePrefix("c2bc-");
+        return taskExecutor;
+    }
+
     @Bean
     public Executor mainJobProcessingPool() {
         final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
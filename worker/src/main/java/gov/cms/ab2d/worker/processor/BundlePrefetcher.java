@@ -0,0 +1,136 @@
+package gov.cms.ab2d.worker.processor;
+
+import gov.cms.ab2d.bfd.client.BFDClient;
+import org.hl7.fhir.dstu3.model.Bundle;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Requests the pages following a bundle ahead of time so that BFD latency overlaps with the filtering,
+ * trimming and encoding of the page currently being processed. As soon as a page arrives its next link
+ * is known and the following page is requested on the prefetch pool, keeping up to depth pages in flight.
+ * When the pool has no free thread the page is requested on the thread asking for it, as it would be without
+ * prefetching, and that time isn't counted as hidden.
+ *
+ * Not thread safe - a prefetcher belongs to the single patient thread that consumes the pages.
+ */
+class BundlePrefetcher {
+
+    private final BFDClient bfdClient;
+    private final Executor executor;
+    private final int depth;
+
+    // The patient thread the pages are requested for
+    private final Thread consumer = Thread.currentThread();
+
+    // Pages requested but not yet consumed, in page order
+    private final Deque<CompletableFuture<Bundle>> pending = new ArrayDeque<>();
+
+    // The most recently requested page, the next request is chained onto it
+    private CompletableFuture<Bundle> last;
+
+    // Time spent requesting pages from BFD on the prefetch pool
+    private final AtomicLong fetchNanos = new AtomicLong();
+
+    // Time the consumer spent blocked waiting for a page
+    private long waitNanos;
+
+    private boolean exhausted;
+
+    /**
+     * Start prefetching the pages that follow the first bundle
+     *
+     * @param bfdClient - the client used to request the next pages
+     * @param executor - the pool the requests are made on
+     * @param depth - the number of pages to request ahead of the consumer
+     * @param firstBundle - the first page, already retrieved
+     */
+    BundlePrefetcher(BFDClient bfdClient, Executor executor, int depth, Bundle firstBundle) {
+        this.bfdClient = bfdClient;
+        this.executor = executor;
+        this.depth = depth;
+        this.last = CompletableFuture.completedFuture(firstBundle);
+        fill();
+    }
+
+    /**
+     * Return the next page, waiting for it if it has not arrived yet
+     *
+     * @return the next page or null if there are no more pages
+     */
+    Bundle next() {
+        if (exhausted) {
+            return null;
+        }
+
+        CompletableFuture<Bundle> future = pending.poll();
+        Bundle bundle;
+        long start = System.nanoTime();
+        try {
+            bundle = future.join();
+        } catch (CompletionException ex) {
+            cancel();
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        } finally {
+            waitNanos += System.nanoTime() - start;
+        }
+
+        if (bundle == null) {
+            exhausted = true;
+            cancel();
+        } else {
+            fill();
+        }
+        return bundle;
+    }
+
+    /**
+     * Stop requesting pages that have not been started yet
+     */
+    void cancel() {
+        pending.forEach(future -> future.cancel(false));
+        pending.clear();
+    }
+
+    /**
+     * The BFD request time that overlapped with work on the patient thread
+     *
+     * @return the hidden time in milliseconds
+     */
+    long getHiddenMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(0, fetchNanos.get() - waitNanos));
+    }
+
+    private void fill() {
+        while (pending.size() < depth) {
+            last = last.thenApplyAsync(this::requestNext, executor);
+            pending.add(last);
+        }
+    }
+
+    private Bundle requestNext(Bundle bundle) {
+        if (bundle == null || bundle.getLink(Bundle.LINK_NEXT) == null) {
+            return null;
+        }
+
+        if (Thread.currentThread() == consumer) {
+            return bfdClient.requestNextBundleFromServer(bundle);
+        }
+
+        long start = System.nanoTime();
+        try {
+            return bfdClient.requestNextBundleFromServer(bundle);
+        } finally {
+            fetchNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+}
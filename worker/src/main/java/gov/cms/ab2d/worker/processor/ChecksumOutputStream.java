@@ -0,0 +1,52 @@
+package gov.cms.ab2d.worker.processor;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Computes the SHA-256 checksum of the bytes written through it as they are written, so the checksum and
+ * length of a file are known as soon as it is closed without having to read the file back
+ */
+class ChecksumOutputStream extends CountingOutputStream {
+
+    private final MessageDigest digest = DigestUtils.getSha256Digest();
+
+    private String checksum;
+
+    ChecksumOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        super.write(b);
+        digest.update((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        super.write(b, off, len);
+        digest.update(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        if (checksum == null) {
+            checksum = Hex.encodeHexString(digest.digest());
+        }
+    }
+
+    /**
+     * Return the hex encoded checksum of everything written
+     *
+     * @return the checksum or null if the stream hasn't been closed yet
+     */
+    String getChecksum() {
+        return checksum;
+    }
+}
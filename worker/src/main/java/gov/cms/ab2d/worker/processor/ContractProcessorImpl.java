@@ -2,12 +2,12 @@ package gov.cms.ab2d.worker.processor;
 
 import com.newrelic.api.agent.NewRelic;
 import com.newrelic.api.agent.Token;
+import gov.cms.ab2d.common.model.Contract;
 import gov.cms.ab2d.common.model.Job;
 import gov.cms.ab2d.common.model.JobOutput;
 import gov.cms.ab2d.common.model.JobStatus;
-import gov.cms.ab2d.common.model.OptOut;
+import gov.cms.ab2d.common.model.Sponsor;
 import gov.cms.ab2d.common.repository.JobRepository;
-import gov.cms.ab2d.common.repository.OptOutRepository;
 import gov.cms.ab2d.common.util.Constants;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.eventlogger.events.ErrorEvent;
@@ -15,9 +15,13 @@ import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse;
 import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse.PatientDTO;
 import gov.cms.ab2d.worker.config.RoundRobinBlockingQueue;
 import gov.cms.ab2d.worker.processor.StreamHelperImpl.FileOutputType;
+import gov.cms.ab2d.worker.processor.domainmodel.CompressionSettings;
 import gov.cms.ab2d.worker.processor.domainmodel.ContractData;
+import gov.cms.ab2d.worker.processor.domainmodel.ContractPatientsFetch;
+import gov.cms.ab2d.worker.processor.domainmodel.OptOutIndex;
 import gov.cms.ab2d.worker.processor.domainmodel.PatientClaimsRequest;
 import gov.cms.ab2d.worker.processor.domainmodel.ProgressTracker;
+import gov.cms.ab2d.worker.processor.domainmodel.ProgressTracker.ContractProgress;
 import gov.cms.ab2d.worker.service.FileService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -29,17 +33,22 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.time.LocalDate;
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static gov.cms.ab2d.common.model.JobStatus.CANCELLED;
 import static gov.cms.ab2d.common.util.Constants.CONTRACT_LOG;
 import static gov.cms.ab2d.common.util.Constants.EOB;
+import static gov.cms.ab2d.worker.processor.StreamHelperImpl.FileOutputType.NDJSON_GZIP;
 import static gov.cms.ab2d.worker.processor.StreamHelperImpl.FileOutputType.ZIP;
 import static net.logstash.logback.argument.StructuredArguments.keyValue;
 
@@ -48,7 +57,8 @@ import static net.logstash.logback.argument.StructuredArguments.keyValue;
 @RequiredArgsConstructor
 @SuppressWarnings("PMD.TooManyStaticImports")
 public class ContractProcessorImpl implements ContractProcessor {
-    private static final int SLEEP_DURATION = 250;
+    // How long to wait for a patient to complete before reporting progress anyway
+    private static final int WAIT_DURATION = 250;
 
     @Value("${job.file.rollover.ndjson:200}")
     private long ndjsonRollOver;
@@ -56,6 +66,15 @@ public class ContractProcessorImpl implements ContractProcessor {
     @Value("${job.file.rollover.zip:200}")
     private long zipRollOver;
 
+    @Value("${job.file.rollover.gzip:200}")
+    private long gzipRollOver;
+
+    @Value("${job.file.compression.block.kb:1024}")
+    private int compressionBlockKb;
+
+    @Value("${job.file.compression.pending.blocks:8}")
+    private int compressionPendingBlocks;
+
     @Value("${cancellation.check.frequency:10}")
     private int cancellationCheckFrequency;
 
@@ -68,18 +87,39 @@ public class ContractProcessorImpl implements ContractProcessor {
     @Value("${file.try.lock.timeout}")
     private int tryLockTimeout;
 
+    @Value("${job.file.writer.shards:1}")
+    private int writerShards;
+
+    @Value("${job.file.writer.queue.capacity:0}")
+    private int writerQueueCapacity;
+
+    @Value("${job.file.writer.close.timeout:600}")
+    private int writerCloseTimeout;
+
+    @Value("${job.patient.window:0}")
+    private int patientWindow;
+
     private final FileService fileService;
     private final JobRepository jobRepository;
     private final PatientClaimsProcessor patientClaimsProcessor;
-    private final OptOutRepository optOutRepository;
     private final LogManager eventLogger;
 
+    // Spring auto-wiring is happening here. Do not change the field name.
+    private final Executor outputCompressionThreadPool;
+
+    // Spring auto-wiring is happening here. Do not change the field name.
+    private final Executor outputWriterThreadPool;
+
     /**
      * Process the contract - retrieve all the patients for the contract and create a thread in the
      * patientProcessorThreadPool to handle searching for EOBs for each patient. Periodically check to
      * see if the job is cancelled and cancel the threads if necessary, otherwise, wait until all threads
      * have processed.
      *
+     * The patients found while the contract is still being retrieved are processed as they are found. Their
+     * claims are requested straight away but only filtered once the months of the contract are known, see
+     * {@link ContractPatientsFetch}.
+     *
      * @param contractData - the contract data (contract, progress tracker, attested time, writer)
      * @return - the job output records containing the file information
      */
@@ -88,9 +128,10 @@ public class ContractProcessorImpl implements ContractProcessor {
         log.info("Beginning to process contract {}", keyValue(CONTRACT_LOG, contractNumber));
 
         var progressTracker = contractData.getProgressTracker();
-        var patients = getPatientsByContract(contractNumber, progressTracker);
-        int patientCount = patients.size();
-        log.info("Contract [{}] has [{}] Patients", contractNumber, patientCount);
+        var patientsFetch = contractData.getPatientsFetch();
+
+        // The patients processed before the contract was retrieved, waiting for their months
+        Map<String, CompletableFuture<PatientDTO>> earlyPatients = new HashMap<>();
 
         boolean isCancelled = false;
         StreamHelper helper = null;
@@ -99,69 +140,189 @@ public class ContractProcessorImpl implements ContractProcessor {
             Job job = jobRepository.findByJobUuid(jobUuid);
             helper = createOutputHelper(outputDirPath, contractNumber, outputType, job);
 
+            var optOutIndex = contractData.getOptOutIndex();
+            final long today = LocalDate.now().toEpochDay();
+
             int recordsProcessedCount = 0;
-            var futureHandles = new ArrayList<Future<Void>>();
-            for (PatientDTO patient : patients) {
-                ++recordsProcessedCount;
+            var contractProgress = progressTracker.getContractProgress(contractNumber);
+            var futureHandles = new PatientCompletionQueue(contractProgress);
 
-                if (isOptOutPatient(patient.getPatientId())) {
-                    // this patient has opted out. skip patient record.
-                    progressTracker.incrementOptOutCount();
+            while (!patientsFetch.isDone() && !isCancelled) {
+                String patientId = pollFoundPatient(patientsFetch);
+                if (patientId == null || isOptOutPatient(optOutIndex, patientId, today)) {
+                    // an opted out patient is counted with the rest of the contract
+                    processHandles(futureHandles, progressTracker);
                     continue;
                 }
+                ++recordsProcessedCount;
 
-                futureHandles.add(processPatient(patient, contractData, helper));
+                var patientMonths = new CompletableFuture<PatientDTO>();
+                earlyPatients.put(patientId, patientMonths);
+                waitForWindow(futureHandles, progressTracker);
+                futureHandles.add(processPatient(PatientDTO.builder().patientId(patientId).build(), patientMonths,
+                        contractData, helper, contractProgress));
 
-                // Periodically check if cancelled
-                if (recordsProcessedCount % cancellationCheckFrequency == 0) {
-                    isCancelled = hasJobBeenCancelled(progressTracker.getJobUuid());
-                    if (isCancelled) {
-                        log.warn("Job [{}] has been cancelled. Attempting to stop processing the job shortly ... ", progressTracker.getJobUuid());
-                        cancelFuturesInQueue(futureHandles);
-                        break;
-                    }
+                isCancelled = checkCancelled(recordsProcessedCount, futureHandles, progressTracker);
+            }
 
-                    processHandles(futureHandles, progressTracker);
+            var patients = isCancelled ? Collections.<PatientDTO>emptyList() : getPatients(patientsFetch, progressTracker);
+            int patientCount = patients.size();
+            log.info("Contract [{}] has [{}] Patients", contractNumber, patientCount);
+
+            for (int i = 0; i < patientCount && !isCancelled; i++) {
+                PatientDTO patient = patients.get(i);
+
+                var patientMonths = earlyPatients.remove(patient.getPatientId());
+                if (patientMonths != null) {
+                    // already being processed, it only needed its months
+                    patientMonths.complete(patient);
+                    continue;
+                }
+
+                ++recordsProcessedCount;
+
+                if (isOptOutPatient(optOutIndex, patient.getPatientId(), today)) {
+                    // this patient has opted out. skip patient record.
+                    contractProgress.incrementOptOutCount();
+                    continue;
                 }
+
+                waitForWindow(futureHandles, progressTracker);
+                futureHandles.add(processPatient(patient, null, contractData, helper, contractProgress));
+
+                isCancelled = checkCancelled(recordsProcessedCount, futureHandles, progressTracker);
             }
             awaitTermination(futureHandles, progressTracker);
 
         } finally {
+            // A patient still waiting for their months would otherwise wait forever
+            earlyPatients.values().forEach(patientMonths -> patientMonths.completeExceptionally(
+                    new CancellationException("The patients of contract " + contractNumber + " were not retrieved")));
             close(helper);
         }
 
         handleCancellation(isCancelled);
 
         // All jobs are done, return the job output records
-        return createJobOutputs(helper.getDataFiles(), helper.getErrorFiles());
+        return createJobOutputs(helper);
+    }
+
+    /**
+     * Periodically check if the job has been cancelled and if so cancel the patients waiting or in progress.
+     * Otherwise deal with the patients which are done.
+     *
+     * @param recordsProcessedCount - the patients of the contract dealt with so far
+     * @param futureHandles - the patients waiting or in progress
+     * @param progressTracker - the tracker with updated tracker information
+     * @return true if the job has been cancelled
+     */
+    private boolean checkCancelled(int recordsProcessedCount, PatientCompletionQueue futureHandles,
+                                   ProgressTracker progressTracker) {
+        if (recordsProcessedCount % cancellationCheckFrequency != 0) {
+            return false;
+        }
+        if (hasJobBeenCancelled(progressTracker.getJobUuid())) {
+            log.warn("Job [{}] has been cancelled. Attempting to stop processing the job shortly ... ", progressTracker.getJobUuid());
+            futureHandles.cancelAll();
+            return true;
+        }
+
+        processHandles(futureHandles, progressTracker);
+        return false;
+    }
+
+    /**
+     * Wait a while for a patient to be found while the contract is being retrieved
+     *
+     * @param patientsFetch - the contract being retrieved
+     * @return the patient id or null if none was found in time
+     */
+    private String pollFoundPatient(ContractPatientsFetch patientsFetch) {
+        try {
+            return patientsFetch.pollFound(WAIT_DURATION, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            log.warn("interrupted exception while waiting for a patient to be found. Ignoring");
+            return null;
+        }
     }
 
     private StreamHelper createOutputHelper(Path outputDirPath, String contractNumber, FileOutputType outputType, Job job) {
+        StreamHelper helper;
         try {
             if (outputType == ZIP) {
-                return new ZipStreamHelperImpl(outputDirPath, contractNumber, getZipRolloverThreshold(),
+                helper = new ZipStreamHelperImpl(outputDirPath, contractNumber, getZipRolloverThreshold(),
                         getRollOverThreshold(), tryLockTimeout, eventLogger, job);
+            } else if (outputType == NDJSON_GZIP) {
+                var compression = new CompressionSettings(compressionBlockKb * 1024, compressionPendingBlocks,
+                        outputCompressionThreadPool);
+                helper = new GzipStreamHelperImpl(outputDirPath, contractNumber, gzipRollOver * Constants.ONE_MEGA_BYTE,
+                        tryLockTimeout, eventLogger, job, compression);
+            } else if (writerShards > 1) {
+                helper = new ShardedTextStreamHelperImpl(outputDirPath, contractNumber, getRollOverThreshold(),
+                        tryLockTimeout, eventLogger, job, writerShards);
             } else {
-                return new TextStreamHelperImpl(outputDirPath, contractNumber, getRollOverThreshold(), tryLockTimeout,
+                helper = new TextStreamHelperImpl(outputDirPath, contractNumber, getRollOverThreshold(), tryLockTimeout,
                         eventLogger, job);
             }
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
+
+        // Hand the writing off to a single writer thread for the contract
+        if (writerQueueCapacity > 0) {
+            helper = new QueuedStreamHelperImpl(helper, contractNumber, writerQueueCapacity, writerCloseTimeout,
+                    outputWriterThreadPool);
+        }
+        return helper;
     }
 
     /**
-     * While there are still patient records in progress, sleep for a bit and check progress
+     * While there are still patient records in progress, wait for them to complete and check progress
      * @param futureHandles - the running threads
      * @param progressTracker - the object maintaining the progress of the job
      */
-    private void awaitTermination(ArrayList<Future<Void>> futureHandles, ProgressTracker progressTracker) {
+    private void awaitTermination(PatientCompletionQueue futureHandles, ProgressTracker progressTracker) {
         while (!futureHandles.isEmpty()) {
-            sleep();
+            awaitCompletion(futureHandles, progressTracker);
             processHandles(futureHandles, progressTracker);
         }
     }
 
+    /**
+     * When the number of patients a contract may have waiting or in progress is limited, wait until a patient is
+     * done before another one is submitted. Only the patients in the window are queued, so a large contract
+     * doesn't hold a task for every patient in memory and cancelling it only has the window to cancel.
+     *
+     * @param futureHandles - the patients waiting or in progress
+     * @param progressTracker - the tracker with updated tracker information
+     */
+    private void waitForWindow(PatientCompletionQueue futureHandles, ProgressTracker progressTracker) {
+        if (patientWindow <= 0) {
+            return;
+        }
+        while (futureHandles.size() >= patientWindow) {
+            awaitCompletion(futureHandles, progressTracker);
+            processHandles(futureHandles, progressTracker);
+        }
+    }
+
+    /**
+     * Wait a while for a patient to be done and deal with it
+     *
+     * @param futureHandles - the patients waiting or in progress
+     * @param progressTracker - the tracker with updated tracker information
+     */
+    private void awaitCompletion(PatientCompletionQueue futureHandles, ProgressTracker progressTracker) {
+        try {
+            var future = futureHandles.poll(WAIT_DURATION, TimeUnit.MILLISECONDS);
+            if (future != null) {
+                processFuture(futureHandles, progressTracker, future);
+            }
+        } catch (InterruptedException e) {
+            log.warn("interrupted exception while waiting for a patient. Ignoring");
+        }
+    }
+
     private void close(StreamHelper helper) {
         if (helper != null) {
             try {
@@ -187,11 +348,15 @@ public class ContractProcessorImpl implements ContractProcessor {
      * See https://docs.newrelic.com/docs/agents/java-agent/async-instrumentation/java-agent-api-asynchronous-applications
      *
      * @param patient - process to process
+     * @param patientMonths - the patient with their months once the contract is retrieved, null if they have them
      * @param contractData - the contract data information
      * @param helper - the helper used to write to the file
-     * @return a Future<Void>
+     * @param contractProgress - the counts of the contract, updated once the patient is done
+     * @return a CompletableFuture<Void>
      */
-    private Future<Void> processPatient(PatientDTO patient, ContractData contractData, StreamHelper helper) {
+    private CompletableFuture<Void> processPatient(PatientDTO patient, CompletableFuture<PatientDTO> patientMonths,
+                                                   ContractData contractData, StreamHelper helper,
+                                                   ContractProgress contractProgress) {
         final Token token = NewRelic.getAgent().getTransaction().getToken();
 
         // Using a ThreadLocal to communicate contract number to RoundRobinBlockingQueue
@@ -199,36 +364,66 @@ public class ContractProcessorImpl implements ContractProcessor {
         // tons of extra code.
         var jobUuid = contractData.getProgressTracker().getJobUuid();
         RoundRobinBlockingQueue.CATEGORY_HOLDER.set(jobUuid);
+        RoundRobinBlockingQueue.WEIGHT_KEYS_HOLDER.set(getWeightKeys(contractData.getContract()));
+        RoundRobinBlockingQueue.REMAINING_WORK_HOLDER.set(getRemainingPatients(contractData.getProgressTracker()));
         try {
             var attestedOn = contractData.getContract().getAttestedOn();
             var sinceTime = contractData.getSinceTime();
             var patientClaimsRequest = new PatientClaimsRequest(patient, helper, attestedOn, sinceTime,
                     contractData.getUserId(), jobUuid,
-                    contractData.getContract() != null ? contractData.getContract().getContractNumber() : null, token);
+                    contractData.getContract() != null ? contractData.getContract().getContractNumber() : null, token,
+                    contractProgress, patientMonths);
             return patientClaimsProcessor.process(patientClaimsRequest);
 
         } finally {
             RoundRobinBlockingQueue.CATEGORY_HOLDER.remove();
+            RoundRobinBlockingQueue.WEIGHT_KEYS_HOLDER.remove();
+            RoundRobinBlockingQueue.REMAINING_WORK_HOLDER.remove();
+        }
+    }
+
+    /**
+     * The patients the job has left, which shortest remaining work first ranks the job by, so a job limited to a
+     * few patients at a time by job.patient.window isn't ranked by those few. Null until the size of the job is
+     * known, when its tasks waiting are used instead.
+     *
+     * @param progressTracker - the progress of the job
+     * @return the patients not processed yet
+     */
+    private static Integer getRemainingPatients(ProgressTracker progressTracker) {
+        int estimatedTotal = progressTracker.getEstimatedTotalCount();
+        return estimatedTotal == 0 ? null : Math.max(0, estimatedTotal - progressTracker.getProcessedCount());
+    }
+
+    /**
+     * The keys the scheduling weight of the job is looked up by when the job itself has no weight
+     *
+     * @param contract - the contract being processed
+     * @return the contract number and the sponsor's HPMS id
+     */
+    private static List<String> getWeightKeys(Contract contract) {
+        if (contract == null) {
+            return Collections.emptyList();
         }
+        Sponsor sponsor = contract.getSponsor();
+        return sponsor == null || sponsor.getHpmsId() == null
+                ? List.of(contract.getContractNumber())
+                : List.of(contract.getContractNumber(), String.valueOf(sponsor.getHpmsId()));
     }
 
     /**
-     * Retrieve the patients by contract
+     * Wait for the patients of the contract to be retrieved and add them to the progress tracker
      *
-     * @param contractNumber - the contract number
+     * @param patientsFetch - the contract being retrieved
      * @param progressTracker - the progress tracker for all contracts and patients for the job
      * @return the contract's patients
      */
-    private List<PatientDTO> getPatientsByContract(String contractNumber, ProgressTracker progressTracker) {
-        return progressTracker.getPatientsByContracts()
-                .stream()
-                .filter(byContract -> byContract.getContractNumber().equals(contractNumber))
-                .findFirst()
-                .map(GetPatientsByContractResponse::getPatients)
-                .orElse(Collections.emptyList());
+    private List<PatientDTO> getPatients(ContractPatientsFetch patientsFetch, ProgressTracker progressTracker) {
+        GetPatientsByContractResponse patientsByContract = patientsFetch.getPatients();
+        progressTracker.addPatientsByContract(patientsByContract);
+        return patientsByContract.getPatients() == null ? Collections.emptyList() : patientsByContract.getPatients();
     }
 
-
     /**
      * Return the number of bytes when to rollover given the number of megabytes in a zip file if used
      *
@@ -248,38 +443,16 @@ public class ContractProcessorImpl implements ContractProcessor {
     }
 
     /**
-     * Check the opt out repository to see if a patient has opted out of data services
+     * Check the opt out index loaded for the job to see if a patient has opted out of data services
      *
+     * @param optOutIndex - the opt-outs loaded for the job
      * @param patientId - the patient id
+     * @param today - the current epoch day
      * @return true if the patient has opted out
      */
-    private boolean isOptOutPatient(String patientId) {
-
-        final List<OptOut> optOuts = optOutRepository.findByCcwId(patientId);
-        if (optOuts.isEmpty()) {
-            // No opt-out record found for this patient - Opt-In by default.
-            return false;
-        }
-
-        // opt-out record has an effective date.
+    private boolean isOptOutPatient(OptOutIndex optOutIndex, String patientId, long today) {
         // if any of the opt-out records for a patient is effective as of today or earlier, the patient has opted-out
-        final LocalDate tomorrow = LocalDate.now().plusDays(1);
-        return optOuts.stream()
-                .anyMatch(optOut -> optOut.getEffectiveDate().isBefore(tomorrow));
-    }
-
-    /**
-     * Cancel threads
-     *
-     * @param futureHandles - the running threads
-     */
-    private void cancelFuturesInQueue(List<Future<Void>> futureHandles) {
-
-        // cancel any futures that have not started processing and are waiting in the queue.
-        futureHandles.parallelStream().forEach(future -> future.cancel(false));
-
-        //At this point, there may be a few futures that are already in progress.
-        //But all the futures that are not yet in progress would be cancelled.
+        return optOutIndex.isOptedOut(patientId, today);
     }
 
     /**
@@ -297,20 +470,15 @@ public class ContractProcessorImpl implements ContractProcessor {
 
 
     /**
-     * For each future, check to see if it's done. If it is, remove it from the list of future handles
-     * and increment the number processed
+     * Deal with the patients which are done since this was last called. They were already counted as processed
+     * when they completed.
      *
      * @param futureHandles - the thread futures
      * @param progressTracker - the tracker with updated tracker information
      */
-    private void processHandles(List<Future<Void>> futureHandles, ProgressTracker progressTracker) {
-        var iterator = futureHandles.iterator();
-        while (iterator.hasNext()) {
-            var future = iterator.next();
-            if (future.isDone()) {
-                processFuture(futureHandles, progressTracker, future);
-                iterator.remove();
-            }
+    private void processHandles(PatientCompletionQueue futureHandles, ProgressTracker progressTracker) {
+        for (var future = futureHandles.poll(); future != null; future = futureHandles.poll()) {
+            processFuture(futureHandles, progressTracker, future);
         }
 
         // update the progress in the DB & logs periodically
@@ -320,12 +488,12 @@ public class ContractProcessorImpl implements ContractProcessor {
     /**
      * process the future that is marked as done.
      * On doing a get(), if an exception is thrown, analyze it to decide whether to stop the batch or not.
-     * @param futureHandles - List of Futures
+     * @param futureHandles - the patients waiting or in progress
      * @param progressTracker - progress tracker instance
      * @param future - a specific future
      */
-    private void processFuture(List<Future<Void>> futureHandles, ProgressTracker progressTracker, Future<Void> future) {
-        progressTracker.incrementProcessedCount();
+    private void processFuture(PatientCompletionQueue futureHandles, ProgressTracker progressTracker,
+                               Future<Void> future) {
         try {
             future.get();
         } catch (InterruptedException | ExecutionException e) {
@@ -339,15 +507,13 @@ public class ContractProcessorImpl implements ContractProcessor {
         }
     }
 
-    private void analyzeException(List<Future<Void>> futureHandles, ProgressTracker progressTracker, Exception e) {
-        progressTracker.incrementFailureCount();
-
+    private void analyzeException(PatientCompletionQueue futureHandles, ProgressTracker progressTracker, Exception e) {
         if (progressTracker.isErrorCountBelowThreshold()) {
             final Throwable rootCause = ExceptionUtils.getRootCause(e);
             log.error("exception while processing patient {}", rootCause.getMessage(), rootCause);
             // log exception, but continue processing job as errorCount is below threshold
         } else {
-            cancelFuturesInQueue(futureHandles);
+            futureHandles.cancelAll();
             String description = progressTracker.getFailureCount() + " out of " + progressTracker.getTotalCount() + " records failed. Stopping job";
             eventLogger.log(new ErrorEvent(null, progressTracker.getJobUuid(),
                     ErrorEvent.ErrorType.TOO_MANY_SEARCH_ERRORS, description));
@@ -372,13 +538,18 @@ public class ContractProcessorImpl implements ContractProcessor {
             }
         }
 
-        var processedCount = progressTracker.getProcessedCount();
         if (progressTracker.isTimeToLog(reportProgressLogFrequency)) {
-            progressTracker.setLastLogUpdateCount(processedCount);
-
-            var totalCount = progressTracker.getTotalCount();
-            var percentageCompleted = progressTracker.getPercentageCompleted();
-            log.info("[{}/{}] records processed = [{}% completed]", processedCount, totalCount, percentageCompleted);
+            var progress = progressTracker.snapshot();
+            var lastLogged = progressTracker.getLastLogSnapshot();
+            progressTracker.setLastLogSnapshot(progress);
+            progressTracker.setLastLogUpdateCount(progress.getProcessedCount());
+
+            log.info("[{}/{}] records processed = [{}% completed] at [{}] records per second, "
+                            + "[{}] records and [{}] EOBs per second since the last update",
+                    progress.getProcessedCount(), progress.getTotalCount(), progress.getPercentageCompleted(),
+                    String.format("%.1f", progress.getPatientsPerSecond()),
+                    String.format("%.1f", progress.getPatientsPerSecondSince(lastLogged)),
+                    String.format("%.1f", progress.getEobsPerSecondSince(lastLogged)));
         }
     }
 
@@ -386,19 +557,18 @@ public class ContractProcessorImpl implements ContractProcessor {
      * Once the job writer is finished, create a list of job output objects with
      * the data files and the error files
      *
-     * @param dataFiles - the results of writing the contract
-     * @param errorFiles - any errors that arose due to writing the contract
+     * @param helper - the closed helper with the results of writing the contract and any errors that arose
      * @return the list of job output objects
      */
-    private List<JobOutput> createJobOutputs(List<Path> dataFiles, List<Path> errorFiles) {
+    private List<JobOutput> createJobOutputs(StreamHelper helper) {
 
         // create Job Output records for data files from the job writer
-        final List<JobOutput> jobOutputs = dataFiles.stream()
-                .map(dataFile -> createJobOutput(dataFile, false)).collect(Collectors.toList());
+        final List<JobOutput> jobOutputs = helper.getDataFiles().stream()
+                .map(dataFile -> createJobOutput(dataFile, false, helper)).collect(Collectors.toList());
 
         // create Job Output record for error file
-        final List<JobOutput> errorJobOutputs = errorFiles.stream()
-                .map(errorFile -> createJobOutput(errorFile, true))
+        final List<JobOutput> errorJobOutputs = helper.getErrorFiles().stream()
+                .map(errorFile -> createJobOutput(errorFile, true, helper))
                 .collect(Collectors.toList());
         jobOutputs.addAll(errorJobOutputs);
 
@@ -415,26 +585,24 @@ public class ContractProcessorImpl implements ContractProcessor {
      *
      * @param outputFile - the output file from the job
      * @param isError - if there was an error
+     * @param helper - the helper which wrote the file
      * @return - the joub output object
      */
-    private JobOutput createJobOutput(Path outputFile, boolean isError) {
+    private JobOutput createJobOutput(Path outputFile, boolean isError, StreamHelper helper) {
         JobOutput jobOutput = new JobOutput();
         jobOutput.setFilePath(outputFile.getFileName().toString());
         jobOutput.setFhirResourceType(EOB);
         jobOutput.setError(isError);
-        jobOutput.setChecksum(fileService.generateChecksum(outputFile.toFile()));
-        jobOutput.setFileLength(outputFile.toFile().length());
-        return jobOutput;
-    }
 
-    /**
-     * Tell the thread to sleep
-     */
-    private void sleep() {
-        try {
-            Thread.sleep(SLEEP_DURATION);
-        } catch (InterruptedException e) {
-            log.warn("interrupted exception in thread.sleep(). Ignoring");
+        // Data files have their checksum and length captured as they are written, anything else is read back
+        String checksum = helper.getChecksum(outputFile);
+        if (checksum == null) {
+            jobOutput.setChecksum(fileService.generateChecksum(outputFile.toFile()));
+            jobOutput.setFileLength(outputFile.toFile().length());
+        } else {
+            jobOutput.setChecksum(checksum);
+            jobOutput.setFileLength(helper.getFileLength(outputFile));
         }
+        return jobOutput;
     }
 }
@@ -0,0 +1,38 @@
+package gov.cms.ab2d.worker.processor;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Keeps a running count of the bytes written through it to the underlying stream
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        ++count;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    /**
+     * Return the number of bytes written so far
+     *
+     * @return the byte count
+     */
+    long getCount() {
+        return count;
+    }
+}
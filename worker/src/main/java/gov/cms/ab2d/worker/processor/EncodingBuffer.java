@@ -0,0 +1,91 @@
+package gov.cms.ab2d.worker.processor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A buffer one record at a time is encoded into as UTF-8 and then handed to a {@link StreamHelper}, so a record
+ * is only copied once on its way to the file instead of being built as a String and converted to bytes.
+ *
+ * Each thread reuses its own buffer for every record it writes. A buffer which grew to hold an unusually large
+ * record is dropped when it is reset so a thread doesn't hold on to it.
+ */
+class EncodingBuffer extends ByteArrayOutputStream {
+
+    static final int INITIAL_SIZE = 16 * 1024;
+    static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    private final Writer writer = new OutputStreamWriter(this, StandardCharsets.UTF_8);
+
+    // Bytes handed to helpers since the count was last taken
+    private long bytesWritten;
+
+    EncodingBuffer() {
+        super(INITIAL_SIZE);
+    }
+
+    /**
+     * @return the writer which encodes into the buffer, flushed by {@link #writeTo(StreamHelper)}
+     */
+    Writer getWriter() {
+        return writer;
+    }
+
+    /**
+     * Hand what has been encoded since the last reset to the helper
+     *
+     * @param helper - the helper used to write to the file
+     * @throws IOException if the helper couldn't write the data
+     */
+    void writeTo(StreamHelper helper) throws IOException {
+        writer.flush();
+        helper.addData(buf, 0, count);
+        bytesWritten += count;
+    }
+
+    /**
+     * @return the number of bytes handed to helpers since the last call, which starts the count again
+     */
+    long takeBytesWritten() {
+        long taken = bytesWritten;
+        bytesWritten = 0;
+        return taken;
+    }
+
+    /**
+     * @return what has been encoded since the last reset
+     */
+    String contents() {
+        flushWriter();
+        return toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Discard what has been encoded, including anything the writer hasn't flushed yet
+     */
+    @Override
+    public synchronized void reset() {
+        flushWriter();
+        super.reset();
+        if (buf.length > MAX_RETAINED_SIZE) {
+            buf = new byte[INITIAL_SIZE];
+        }
+    }
+
+    private void flushWriter() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            // Writing to the buffer itself never fails
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    int capacity() {
+        return buf.length;
+    }
+}
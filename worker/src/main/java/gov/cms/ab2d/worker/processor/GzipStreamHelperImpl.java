@@ -0,0 +1,211 @@
+package gov.cms.ab2d.worker.processor;
+
+import gov.cms.ab2d.common.model.Job;
+import gov.cms.ab2d.eventlogger.LogManager;
+import gov.cms.ab2d.eventlogger.events.FileEvent;
+import gov.cms.ab2d.worker.processor.domainmodel.CompressionSettings;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPOutputStream;
+
+import static gov.cms.ab2d.worker.processor.StreamHelperImpl.FileOutputType.NDJSON_GZIP;
+
+/**
+ * Implement a gzip stream helper. Data is collected into blocks which are compressed independently on a pool
+ * of threads, so a large contract compresses on several cores at once. Each compressed block is a complete gzip
+ * member and the members are written to the file in the order the data was added. A file made of several gzip
+ * members is still a standard gzip file which clients can decompress as a single stream.
+ *
+ * A block is never split across files, so every file created is a valid gzip file on its own.
+ */
+@Slf4j
+public class GzipStreamHelperImpl extends StreamHelperImpl {
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private File currentFile;
+
+    // The number of uncompressed bytes collected before a block is compressed
+    private final int blockSize;
+
+    // The number of blocks which can be compressing before the writer waits for the oldest one
+    private final int maxPendingBlocks;
+
+    // Where the blocks are compressed
+    private final Executor compressionExecutor;
+
+    // The block currently being filled
+    private final ByteArrayOutputStream currentBlock;
+
+    // Blocks being compressed, oldest first
+    private final Deque<CompletableFuture<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+    /**
+     * Implement the gzip stream helper
+     *
+     * @param path - where to create the files
+     * @param contractNumber - the contract number
+     * @param totalBytesAllowed - the total number of compressed bytes allowed to be written to a file
+     * @param tryLockTimeout - the amount of time to wait before timing out lock
+     * @param compression - the size of the compressed blocks, how many may be compressing at once and the pool
+     *                    they are compressed on
+     * @throws FileNotFoundException - if the file can't be created
+     */
+    GzipStreamHelperImpl(Path path, String contractNumber, long totalBytesAllowed, int tryLockTimeout,
+                         LogManager logger, Job job, CompressionSettings compression) throws FileNotFoundException {
+        super(path, contractNumber, totalBytesAllowed, tryLockTimeout, logger, job);
+        this.blockSize = compression.getBlockSize();
+        this.maxPendingBlocks = compression.getMaxPendingBlocks();
+        this.compressionExecutor = compression.getExecutor();
+        this.currentBlock = new ByteArrayOutputStream(blockSize);
+
+        setCurrentStream(createStream());
+    }
+
+    /**
+     * Create the next stream from the next file name
+     *
+     * @return the stream
+     * @throws FileNotFoundException if you can't create the stream
+     */
+    private OutputStream createStream() throws FileNotFoundException {
+        String fileName = getPath().toString() + "/" + createFileName(NDJSON_GZIP);
+        File f = new File(fileName);
+        f.getParentFile().mkdirs();
+        currentFile = f;
+        getLogManager().log(new FileEvent(
+                getJob() == null || getJob().getUser() == null ? null : getJob().getUser().getUsername(),
+                getJob() == null ? null : getJob().getJobUuid(), f, FileEvent.FileStatus.OPEN));
+        OutputStream stream = createDataFileStream(Path.of(fileName));
+        getFilesCreated().add(Path.of(fileName));
+        setTotalBytesWritten(0);
+        return stream;
+    }
+
+    /**
+     * Add the data to the current block, hand the block off to be compressed once it is full and write out any
+     * blocks which have finished compressing
+     *
+     * @param data - the data to write
+     */
+    @Override
+    public void addData(byte[] data) throws IOException {
+        if (data != null) {
+            addData(data, 0, data.length);
+        }
+    }
+
+    @Override
+    public void addData(byte[] data, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        tryLock(getDataFileLock());
+        try {
+            currentBlock.write(data, offset, length);
+            if (currentBlock.size() >= blockSize) {
+                submitBlock();
+            }
+            writeCompressedBlocks(false);
+        } catch (Exception ex) {
+            String error = "Unable to write compressed data for contract " + getContractNumber() + "[" + (getCounter() - 1) + "]";
+            log.error(error, ex);
+            throw new IOException(error, ex);
+        } finally {
+            getDataFileLock().unlock();
+        }
+    }
+
+    /**
+     * Start compressing the current block and begin a new one
+     */
+    private void submitBlock() {
+        if (currentBlock.size() == 0) {
+            return;
+        }
+        byte[] block = currentBlock.toByteArray();
+        currentBlock.reset();
+        pendingBlocks.add(CompletableFuture.supplyAsync(() -> compress(block), compressionExecutor));
+    }
+
+    /**
+     * Write the compressed blocks to the file in order. Blocks which are done are always written and if too many
+     * blocks are pending, wait for the oldest ones.
+     *
+     * @param all - wait for and write every pending block
+     * @throws IOException if a block couldn't be written
+     */
+    private void writeCompressedBlocks(boolean all) throws IOException {
+        while (!pendingBlocks.isEmpty()
+                && (all || pendingBlocks.size() > maxPendingBlocks || pendingBlocks.peek().isDone())) {
+            writeMember(pendingBlocks.poll().join());
+        }
+    }
+
+    /**
+     * Write a compressed block to the file, starting a new file if it would go over the limit
+     *
+     * @param member - the compressed block
+     * @throws IOException if the block couldn't be written
+     */
+    private void writeMember(byte[] member) throws IOException {
+        if (getTotalBytesWritten() + member.length > getTotalBytesAllowed() && getTotalBytesWritten() > 0) {
+            getCurrentStream().close();
+            logDataFileClosed(currentFile);
+            setCurrentStream(createStream());
+        }
+        getCurrentStream().write(member);
+        setTotalBytesWritten(getTotalBytesWritten() + member.length);
+    }
+
+    /**
+     * Compress the block into a complete gzip member
+     *
+     * @param block - the uncompressed data
+     * @return the gzip member
+     */
+    static byte[] compress(byte[] block) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(block.length / 4 + GZIP_BUFFER_SIZE);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, GZIP_BUFFER_SIZE)) {
+            gzip.write(block);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Compress and write the last block, close the stream and clean up any empty files in the files created list
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            try {
+                submitBlock();
+                writeCompressedBlocks(true);
+            } finally {
+                getCurrentStream().close();
+                logDataFileClosed(currentFile);
+            }
+            int numFiles = getFilesCreated().size();
+            if (getFilesCreated().get(numFiles - 1).toFile().length() == 0) {
+                getFilesCreated().remove(numFiles - 1);
+            }
+        } catch (Exception ex) {
+            String error = "Unable to close output stream for contract " + getContractNumber() + "[" + getCounter() + "]";
+            log.error(error, ex);
+            throw new IOException(error, ex);
+        }
+    }
+}
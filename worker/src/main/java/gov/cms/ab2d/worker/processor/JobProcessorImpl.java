@@ -14,11 +14,12 @@ import gov.cms.ab2d.eventlogger.events.ContractBeneSearchEvent;
 import gov.cms.ab2d.eventlogger.events.FileEvent;
 import gov.cms.ab2d.eventlogger.events.JobStatusChangeEvent;
 import gov.cms.ab2d.worker.adapter.bluebutton.ContractAdapter;
-import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse;
 import gov.cms.ab2d.worker.processor.StreamHelperImpl.FileOutputType;
 import gov.cms.ab2d.worker.processor.domainmodel.ContractData;
+import gov.cms.ab2d.worker.processor.domainmodel.ContractPatientsFetch;
 import gov.cms.ab2d.worker.processor.domainmodel.ProgressTracker;
 import gov.cms.ab2d.worker.service.FileService;
+import gov.cms.ab2d.worker.service.OptOutIndexService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -35,18 +36,26 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static gov.cms.ab2d.common.model.JobStatus.SUCCESSFUL;
+import static gov.cms.ab2d.common.service.JobServiceImpl.GZIPFORMAT;
 import static gov.cms.ab2d.common.service.JobServiceImpl.ZIPFORMAT;
 import static gov.cms.ab2d.worker.processor.StreamHelperImpl.FileOutputType.NDJSON;
+import static gov.cms.ab2d.worker.processor.StreamHelperImpl.FileOutputType.NDJSON_GZIP;
 import static gov.cms.ab2d.worker.processor.StreamHelperImpl.FileOutputType.ZIP;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
+@SuppressWarnings("PMD.TooManyStaticImports")
 public class JobProcessorImpl implements JobProcessor {
 
     @Value("${efs.mount}")
@@ -59,13 +68,21 @@ public class JobProcessorImpl implements JobProcessor {
     @Value("${failure.threshold}")
     private int failureThreshold;
 
+    /** The number of patients of a contract processed while the rest of the contract is still being retrieved **/
+    @Value("${job.patient.early.dispatch:100}")
+    private int earlyDispatchLimit;
+
     private final FileService fileService;
     private final JobRepository jobRepository;
     private final JobOutputRepository jobOutputRepository;
     private final ContractAdapter contractAdapter;
     private final ContractProcessor contractProcessor;
+    private final OptOutIndexService optOutIndexService;
     private final LogManager eventLogger;
 
+    // Spring auto-wiring is happening here. Do not change the field name.
+    private final Executor contractPatientsThreadPool;
+
     /**
      * Load the job and process it
      *
@@ -125,40 +142,69 @@ public class JobProcessorImpl implements JobProcessor {
         var attestedContracts = getAttestedContracts(job);
         var jobUuid = job.getJobUuid();
 
-        // Retrieve the patients for each contract and start a progress tracker
+        // Start retrieving the patients for each contract and start a progress tracker. A contract which has been
+        // retrieved is processed first, otherwise the next contract is processed while it is being retrieved, see
+        // ContractPatientsFetch, so the patients found first are processed while the rest are still being found.
+        var patientsFetches = fetchPatientsForAllContracts(attestedContracts);
+        var pendingFetches = new LinkedList<>(patientsFetches);
+        var unprocessedContracts = IntStream.range(0, attestedContracts.size()).boxed()
+                .collect(Collectors.toCollection(LinkedList::new));
         var progressTracker = initializeProgressTracker(jobUuid, attestedContracts);
 
-        for (Contract contract : attestedContracts) {
-            log.info("Job [{}] - contract [{}] ", jobUuid, contract.getContractNumber());
-
-            // Determine the type of output
-            FileOutputType outputType =  NDJSON;
-            if (job.getOutputFormat() != null && job.getOutputFormat().equalsIgnoreCase(ZIPFORMAT)) {
-                outputType = ZIP;
+        try {
+            // Load the opt-outs once for all the contracts in the job
+            var optOutIndex = optOutIndexService.loadIndex();
+
+            while (!unprocessedContracts.isEmpty()) {
+                // Take the next contract and count every contract retrieved so far
+                int i = takeNextContract(patientsFetches, unprocessedContracts);
+                var contract = attestedContracts.get(i);
+                trackFetchedContracts(progressTracker, pendingFetches);
+
+                log.info("Job [{}] - contract [{}] ", jobUuid, contract.getContractNumber());
+
+                // Determine the type of output
+                FileOutputType outputType =  NDJSON;
+                if (job.getOutputFormat() != null && job.getOutputFormat().equalsIgnoreCase(ZIPFORMAT)) {
+                    outputType = ZIP;
+                } else if (job.getOutputFormat() != null && job.getOutputFormat().equalsIgnoreCase(GZIPFORMAT)) {
+                    outputType = NDJSON_GZIP;
+                }
+
+                // Create a holder for the contract, writer, progress tracker and attested date
+                var contractData = new ContractData(contract, progressTracker, contract.getAttestedOn(), job.getSince(),
+                        job.getUser() != null ? job.getUser().getUsername() : null, optOutIndex,
+                        patientsFetches.get(i));
+
+                final Segment contractSegment = NewRelic.getAgent().getTransaction().startSegment("Patient processing of contract " + contract.getContractNumber());
+
+                var jobOutputs = contractProcessor.process(outputDirPath, contractData, outputType);
+                contractSegment.end();
+
+                // For each job output, add to the job and save the result
+                jobOutputs.forEach(job::addJobOutput);
+                jobOutputRepository.saveAll(jobOutputs);
+
+                var contractProgress = progressTracker.snapshot().getContracts().get(contract.getContractNumber());
+                eventLogger.log(new ContractBeneSearchEvent(job.getUser() == null ? null : job.getUser().getUsername(),
+                        job.getJobUuid(),
+                        contract.getContractNumber(),
+                        progressTracker.getContractCount(contract.getContractNumber()),
+                        contractProgress == null ? 0 : contractProgress.getProcessedCount(),
+                        contractProgress == null ? 0 : contractProgress.getOptOutCount(),
+                        contractProgress == null ? 0 : contractProgress.getFailureCount()));
             }
-
-            // Create a holder for the contract, writer, progress tracker and attested date
-            var contractData = new ContractData(contract, progressTracker, contract.getAttestedOn(), job.getSince(),
-                    job.getUser() != null ? job.getUser().getUsername() : null);
-
-            final Segment contractSegment = NewRelic.getAgent().getTransaction().startSegment("Patient processing of contract " + contract.getContractNumber());
-
-            var jobOutputs = contractProcessor.process(outputDirPath, contractData, outputType);
-            contractSegment.end();
-
-            // For each job output, add to the job and save the result
-            jobOutputs.forEach(job::addJobOutput);
-            jobOutputRepository.saveAll(jobOutputs);
-
-            eventLogger.log(new ContractBeneSearchEvent(job.getUser() == null ? null : job.getUser().getUsername(),
-                    job.getJobUuid(),
-                    contract.getContractNumber(),
-                    progressTracker.getContractCount(contract.getContractNumber()),
-                    progressTracker.getProcessedCount(),
-                    progressTracker.getOptOutCount(),
-                    progressTracker.getFailureCount()));
+        } finally {
+            // When the job fails or is cancelled stop retrieving the contracts it won't get to
+            patientsFetches.forEach(ContractPatientsFetch::cancel);
         }
 
+        var progress = progressTracker.snapshot();
+        log.info("Job [{}] - [{}] patients processed, [{}] EOBs and [{}] bytes written at [{}] patients per second, "
+                        + "[{}] ms of BFD requests hidden by prefetching",
+                jobUuid, progress.getProcessedCount(), progress.getEobsWritten(), progress.getBytesWritten(),
+                String.format("%.1f", progress.getPatientsPerSecond()), progress.getPrefetchHiddenMillis());
+
         completeJob(job);
     }
 
@@ -227,7 +273,8 @@ public class JobProcessorImpl implements JobProcessor {
             final String filename = name.toLowerCase();
             final String ndjson = NDJSON.getSuffix();
             final String zip = ZIP.getSuffix();
-            return filename.endsWith(ndjson) || filename.endsWith(zip);
+            final String gzip = NDJSON_GZIP.getSuffix();
+            return filename.endsWith(ndjson) || filename.endsWith(zip) || filename.endsWith(gzip);
         };
     }
 
@@ -274,32 +321,86 @@ public class JobProcessorImpl implements JobProcessor {
     }
 
     /**
-     * Creates a ProgressTracker for the list of all patients in all contracts
+     * Creates a ProgressTracker for all the contracts in the job. The patients of each contract are added once
+     * they have been retrieved.
      *
-     * @param attestedContracts - the list of attested contracts
+     * @param jobUuid - The unique id of the job
+     * @param attestedContracts - the attested contracts
      * @return the progress tracker
      */
     private ProgressTracker initializeProgressTracker(String jobUuid, List<Contract> attestedContracts) {
         return ProgressTracker.builder()
                 .jobUuid(jobUuid)
                 .failureThreshold(failureThreshold)
-                .patientsByContracts(fetchPatientsForAllContracts(attestedContracts))
+                .expectedContractCount(attestedContracts.size())
                 .build();
     }
 
     /**
-     * Calls the BB contract adaptor and creates a list patients for each contract
+     * Calls the BB contract adaptor to start retrieving the patients for each contract. The contracts are
+     * retrieved at the same time.
+     *
+     * The months a patient is active in decide which claims are kept, and a patient on a page for one month may
+     * still turn up on any page of a later month, since BFD doesn't page the patients in an order that would say
+     * otherwise. So a patient's months are only known once every month of the contract has been retrieved, but
+     * up to {@link #earlyDispatchLimit} patients of each contract are handed out as soon as they are found so their
+     * claims can be requested in the meantime.
      *
      * @param attestedContracts - the attested contracts
-     * @return the list of patients for each contract
+     * @return the patients for each contract, in the order of the contracts
      */
-    private List<GetPatientsByContractResponse> fetchPatientsForAllContracts(List<Contract> attestedContracts) {
+    private List<ContractPatientsFetch> fetchPatientsForAllContracts(List<Contract> attestedContracts) {
         int currentMonth = LocalDate.now().getMonthValue();
-        return attestedContracts
-                .stream()
-                .map(contract -> contract.getContractNumber())
-                .map(contractNumber -> contractAdapter.getPatients(contractNumber, currentMonth))
-                .collect(Collectors.toList());
+        List<ContractPatientsFetch> patientsFetches = new ArrayList<>(attestedContracts.size());
+        for (Contract contract : attestedContracts) {
+            var contractNumber = contract.getContractNumber();
+            var patientsFetch = new ContractPatientsFetch(earlyDispatchLimit);
+            CompletableFuture.supplyAsync(
+                    () -> contractAdapter.getPatients(contractNumber, currentMonth, patientsFetch::found),
+                    contractPatientsThreadPool)
+                    .whenComplete(patientsFetch::complete);
+            patientsFetches.add(patientsFetch);
+        }
+        return patientsFetches;
+    }
+
+    /**
+     * Take the next contract to process. Of the contracts which have been retrieved the first in the job is taken,
+     * so a contract which is slow to retrieve doesn't hold up the ones after it. If none has been retrieved yet the
+     * first contract not processed yet is taken and processed while it is being retrieved.
+     *
+     * @param patientsFetches - the patients for each contract, in the order of the contracts
+     * @param unprocessedContracts - the index of each contract not processed yet
+     * @return the index of the contract to process, which is removed from the unprocessed contracts
+     */
+    private int takeNextContract(List<ContractPatientsFetch> patientsFetches, List<Integer> unprocessedContracts) {
+        // A failed contract has been retrieved too, its failure is reported when its patients are read
+        var iterator = unprocessedContracts.iterator();
+        while (iterator.hasNext()) {
+            int index = iterator.next();
+            if (patientsFetches.get(index).isDone()) {
+                iterator.remove();
+                return index;
+            }
+        }
+        return unprocessedContracts.remove(0);
+    }
+
+    /**
+     * Add the patients of every contract which has been retrieved to the progress tracker
+     *
+     * @param progressTracker - the progress tracker
+     * @param pendingFetches - the contracts which haven't been added to the tracker yet
+     */
+    private void trackFetchedContracts(ProgressTracker progressTracker, List<ContractPatientsFetch> pendingFetches) {
+        var iterator = pendingFetches.iterator();
+        while (iterator.hasNext()) {
+            var fetch = iterator.next();
+            if (fetch.isDone()) {
+                progressTracker.addPatientsByContract(fetch.getPatients());
+                iterator.remove();
+            }
+        }
     }
 
     /**
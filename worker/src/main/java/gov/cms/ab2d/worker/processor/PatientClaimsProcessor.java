@@ -2,8 +2,8 @@ package gov.cms.ab2d.worker.processor;
 
 import gov.cms.ab2d.worker.processor.domainmodel.PatientClaimsRequest;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 public interface PatientClaimsProcessor {
-    Future<Void> process(PatientClaimsRequest request);
+    CompletableFuture<Void> process(PatientClaimsRequest request);
 }
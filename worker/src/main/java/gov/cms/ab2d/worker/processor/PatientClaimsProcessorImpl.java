@@ -1,14 +1,17 @@
 package gov.cms.ab2d.worker.processor;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
 import com.newrelic.api.agent.Token;
 import com.newrelic.api.agent.Trace;
 import gov.cms.ab2d.bfd.client.BFDClient;
 import gov.cms.ab2d.common.util.FHIRUtil;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.eventlogger.events.BeneficiarySearchEvent;
+import gov.cms.ab2d.filter.EobJsonFilter;
 import gov.cms.ab2d.filter.ExplanationOfBenefitTrimmer;
 import gov.cms.ab2d.filter.FilterOutByDate;
+import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse.PatientDTO;
 import gov.cms.ab2d.worker.processor.domainmodel.PatientClaimsRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -20,9 +23,9 @@ import org.hl7.fhir.dstu3.model.Resource;
 import org.hl7.fhir.dstu3.model.ResourceType;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -31,7 +34,10 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static gov.cms.ab2d.filter.EOBLoadUtilities.isPartD;
@@ -44,62 +50,124 @@ public class PatientClaimsProcessorImpl implements PatientClaimsProcessor {
     private final BFDClient bfdClient;
     private final FhirContext fhirContext;
     private final LogManager logManager;
+    // Spring auto-wiring is happening here. Do not change the field name.
+    private final Executor bfdPrefetchThreadPool;
 
     @Value("${claims.skipBillablePeriodCheck}")
     private boolean skipBillablePeriodCheck;
 
+    /**
+     * When on, each page of EOBs is filtered, trimmed and written before the next page is requested so a
+     * patient never holds more than one BFD page in memory. When off, all pages are collected before writing.
+     */
+    @Value("${claims.streaming.enabled:true}")
+    private boolean streamingEnabled;
+
+    /**
+     * Number of pages requested ahead of the page being processed when streaming. 0 turns prefetching off.
+     */
+    @Value("${claims.prefetch.depth:0}")
+    private int prefetchDepth;
+
+    /**
+     * When on, EOBs are filtered and trimmed straight from the JSON sent by BFD, one page at a time, instead of
+     * being parsed into HAPI resources and encoded again. Pages aren't prefetched when this is on.
+     */
+    @Value("${claims.json.filter.enabled:false}")
+    private boolean jsonFilterEnabled;
+
+    private final EobJsonFilter eobJsonFilter = new EobJsonFilter();
+
+    // Parsers aren't thread safe, so each thread processing patients keeps its own
+    private final ThreadLocal<IParser> jsonParsers = ThreadLocal.withInitial(this::newJsonParser);
+    private final ThreadLocal<EncodingBuffer> encodingBuffers = ThreadLocal.withInitial(EncodingBuffer::new);
+
     /**
      * Process the retrieval of patient explanation of benefit objects and write them
      * to a file using the writer
      */
     @Trace(async = true)
     @Async("patientProcessorThreadPool")
-    public Future<Void> process(PatientClaimsRequest request) {
+    public CompletableFuture<Void> process(PatientClaimsRequest request) {
         final Token token = request.getToken();
         token.link();
 
         int resourceCount = 0;
 
-        String payload = "";
         try {
-            // Retrieve the resource bundle of EOB objects
-            var resources = getEobBundleResources(request);
+            var jsonParser = jsonParsers.get();
 
-            var jsonParser = fhirContext.newJsonParser();
-
-            for (var resource : resources) {
-                ++resourceCount;
-                try {
-                    payload = jsonParser.encodeResourceToString(resource) + System.lineSeparator();
-                    request.getHelper().addData(payload.getBytes(StandardCharsets.UTF_8));
-                } catch (Exception e) {
-                    log.warn("Encountered exception while processing job resources: {}", e.getMessage());
-                    handleException(request.getHelper(), payload, e);
-                }
+            if (jsonFilterEnabled) {
+                resourceCount = streamEobJson(request);
+            } else if (streamingEnabled) {
+                resourceCount = streamEobBundleResources(request, jsonParser);
+            } else {
+                // Retrieve the resource bundle of EOB objects
+                var resources = getEobBundleResources(request);
+                resourceCount = writeResources(request.getHelper(), jsonParser, resources);
             }
         } catch (Exception e) {
             try {
-                handleException(request.getHelper(), payload, e);
+                handleException(request.getHelper(), "", e);
             } catch (IOException e1) {
                 //should not happen - original exception will be thrown
                 log.error("error during exception handling to write error record");
             }
 
             token.expire();
-            return AsyncResult.forExecutionException(e);
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            // What was written is counted even when the patient failed part way
+            request.getProgress().addBytesWritten(encodingBuffers.get().takeBytesWritten());
         }
 
         log.debug("finished writing [{}] resources", resourceCount);
+        request.getProgress().addEobsWritten(resourceCount);
 
         token.expire();
-        return new AsyncResult<>(null);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Encode each resource straight into this thread's buffer and hand it to the helper to be written
+     *
+     * @param helper - the helper used to write to the file
+     * @param jsonParser - the parser used to encode the resources
+     * @param resources - the resources to write
+     * @return the number of resources processed
+     * @throws IOException if the error record could not be written
+     */
+    private int writeResources(StreamHelper helper, IParser jsonParser, List<Resource> resources) throws IOException {
+        int resourceCount = 0;
+        var buffer = encodingBuffers.get();
+        try {
+            for (var resource : resources) {
+                ++resourceCount;
+                buffer.reset();
+                try {
+                    jsonParser.encodeResourceToWriter(resource, buffer.getWriter());
+                    buffer.getWriter().write(System.lineSeparator());
+                    buffer.writeTo(helper);
+                } catch (Exception e) {
+                    log.warn("Encountered exception while processing job resources: {}", e.getMessage());
+                    handleException(helper, buffer.contents(), e);
+                }
+            }
+        } finally {
+            buffer.reset();
+        }
+        return resourceCount;
+    }
+
+    private IParser newJsonParser() {
+        return fhirContext.newJsonParser();
     }
 
     private void handleException(StreamHelper helper, String data, Exception e) throws IOException {
         var errMsg = ExceptionUtils.getRootCauseMessage(e);
         var operationOutcome = FHIRUtil.getErrorOutcome(errMsg);
 
-        var jsonParser = fhirContext.newJsonParser();
+        var jsonParser = jsonParsers.get();
         var payload = jsonParser.encodeResourceToString(operationOutcome) + System.lineSeparator();
 
         var byteArrayOutputStream = new ByteArrayOutputStream();
@@ -107,19 +175,174 @@ public class PatientClaimsProcessorImpl implements PatientClaimsProcessor {
         helper.addError(data);
     }
 
+    /**
+     * Retrieve one page of EOBs at a time, writing the filtered and trimmed resources of a page before
+     * requesting the next one
+     *
+     * @param request - the patient request
+     * @param jsonParser - the parser used to encode the resources
+     * @return the number of resources processed
+     * @throws IOException if the error record could not be written
+     */
+    private int streamEobBundleResources(PatientClaimsRequest request, IParser jsonParser) throws IOException {
+        var attestationDayStart = getAttestationDayStart(request.getAttTime());
+        var helper = request.getHelper();
+
+        Bundle eobBundle = requestFirstBundle(request);
+
+        // Start requesting the following pages before the first one is processed
+        var prefetcher = prefetchDepth > 0
+                ? new BundlePrefetcher(bfdClient, bfdPrefetchThreadPool, prefetchDepth, eobBundle) : null;
+
+        int resourceCount = 0;
+        int pageCount = 0;
+        try {
+            // The claims are only filtered once the months of the patient are known
+            var patient = request.awaitPatientDTO();
+            while (eobBundle != null) {
+                resourceCount += writeResources(helper, jsonParser,
+                        extractResources(eobBundle.getEntry(), patient, attestationDayStart));
+                ++pageCount;
+                eobBundle = prefetcher != null ? prefetcher.next() : requestNextBundle(eobBundle);
+            }
+        } finally {
+            if (prefetcher != null) {
+                prefetcher.cancel();
+                request.getProgress().addPrefetchHiddenMillis(prefetcher.getHiddenMillis());
+            }
+        }
+
+        log.debug("Bundle - Pages: {} - Resources: {} ", pageCount, resourceCount);
+        return resourceCount;
+    }
+
+    /**
+     * Retrieve one page of EOBs at a time as JSON, filtering and trimming the resources of a page without
+     * parsing them and writing them before requesting the next one
+     *
+     * @param request - the patient request
+     * @return the number of resources written
+     * @throws IOException if a page isn't valid JSON
+     */
+    private int streamEobJson(PatientClaimsRequest request) throws IOException {
+        var helper = request.getHelper();
+
+        byte[] page = search(request, () -> bfdClient.requestEOBJsonFromServer(
+                request.getPatientDTO().getPatientId(), request.getSinceTime()));
+
+        // The claims are only filtered once the months of the patient are known
+        var billablePeriodCheck = getBillablePeriodCheck(request.awaitPatientDTO(),
+                getAttestationDayStart(request.getAttTime()));
+
+        var filtered = encodingBuffers.get();
+        int resourceCount = 0;
+        int pageCount = 0;
+        try {
+            while (page != null) {
+                filtered.reset();
+                var filteredPage = eobJsonFilter.filterBundle(new ByteArrayInputStream(page), billablePeriodCheck,
+                        filtered);
+                if (filteredPage.getResourceCount() > 0) {
+                    filtered.writeTo(helper);
+                }
+                resourceCount += filteredPage.getResourceCount();
+                ++pageCount;
+
+                String nextUrl = filteredPage.getNextUrl();
+                page = nextUrl == null ? null : bfdClient.requestNextBundleJsonFromServer(nextUrl);
+            }
+        } finally {
+            filtered.reset();
+        }
+
+        log.debug("Bundle - Pages: {} - Resources: {} ", pageCount, resourceCount);
+        return resourceCount;
+    }
+
+    /**
+     * The check the JSON filter makes on the billable period of each claim, the same check made on the
+     * resources of a bundle
+     *
+     * @param patient - the patient the claims are for
+     * @param attestationDayStart - the start of the day of attestation, null if the contract isn't attested
+     * @return the check, null to keep every claim
+     */
+    private BiPredicate<Date, Date> getBillablePeriodCheck(PatientDTO patient, Long attestationDayStart) {
+        if (attestationDayStart == null) {
+            return (start, end) -> false;
+        }
+        if (skipBillablePeriodCheck) {
+            return null;
+        }
+        final long attestedFrom = attestationDayStart;
+        var monthsUnderContract = patient.getMonthsUnderContract();
+        if (monthsUnderContract != null) {
+            return (start, end) -> FilterOutByDate.valid(start, end, attestedFrom, monthsUnderContract);
+        }
+        var dateRanges = patient.getDateRangesUnderContract();
+        return (start, end) -> FilterOutByDate.valid(start, end, attestedFrom, dateRanges);
+    }
+
+    /**
+     * Request the page following the bundle
+     *
+     * @param bundle - the current page
+     * @return the next page or null if this is the last page
+     */
+    private Bundle requestNextBundle(Bundle bundle) {
+        if (bundle.getLink(Bundle.LINK_NEXT) == null) {
+            return null;
+        }
+        return bfdClient.requestNextBundleFromServer(bundle);
+    }
+
     private List<Resource> getEobBundleResources(PatientClaimsRequest request) {
-        var patient = request.getPatientDTO();
-        var attTime = request.getAttTime();
+        var attestationDayStart = getAttestationDayStart(request.getAttTime());
+
+        Bundle eobBundle = requestFirstBundle(request);
+        var patient = request.awaitPatientDTO();
+
+        final List<BundleEntryComponent> entries = eobBundle.getEntry();
+        final List<Resource> resources = extractResources(entries, patient, attestationDayStart);
+
+        while (eobBundle.getLink(Bundle.LINK_NEXT) != null) {
+            eobBundle = bfdClient.requestNextBundleFromServer(eobBundle);
+            final List<BundleEntryComponent> nextEntries = eobBundle.getEntry();
+            resources.addAll(extractResources(nextEntries, patient, attestationDayStart));
+        }
 
+        log.debug("Bundle - Total: {} - Entries: {} ", eobBundle.getTotal(), entries.size());
+        return resources;
+    }
+
+    /**
+     * Request the first page of EOBs for the patient and log the search
+     *
+     * @param request - the patient request
+     * @return the first bundle of EOBs
+     */
+    private Bundle requestFirstBundle(PatientClaimsRequest request) {
+        return search(request, () -> bfdClient.requestEOBFromServer(
+                request.getPatientDTO().getPatientId(), request.getSinceTime()));
+    }
+
+    /**
+     * Make the search for the first page of EOBs for the patient and log it
+     *
+     * @param request - the patient request
+     * @param search - the search
+     * @return the result of the search
+     */
+    private <T> T search(PatientClaimsRequest request, Supplier<T> search) {
         OffsetDateTime start = OffsetDateTime.now();
-        Bundle eobBundle;
         try {
-            eobBundle = bfdClient.requestEOBFromServer(patient.getPatientId(), request.getSinceTime());
+            T result = search.get();
             logManager.log(LogManager.LogType.KINESIS,
                     new BeneficiarySearchEvent(request.getUser(), request.getJob(), request.getContractNum(),
                             start, OffsetDateTime.now(),
                             request.getPatientDTO() != null ? request.getPatientDTO().getPatientId() : null,
                             "SUCCESS"));
+            return result;
 
         } catch (Exception ex) {
             logManager.log(LogManager.LogType.KINESIS,
@@ -129,36 +352,48 @@ public class PatientClaimsProcessorImpl implements PatientClaimsProcessor {
                             "ERROR: " + ex.getMessage()));
             throw ex;
         }
+    }
 
-        final List<BundleEntryComponent> entries = eobBundle.getEntry();
-        final List<Resource> resources = extractResources(entries, patient.getDateRangesUnderContract(), attTime);
-
-        while (eobBundle.getLink(Bundle.LINK_NEXT) != null) {
-            eobBundle = bfdClient.requestNextBundleFromServer(eobBundle);
-            final List<BundleEntryComponent> nextEntries = eobBundle.getEntry();
-            resources.addAll(extractResources(nextEntries, patient.getDateRangesUnderContract(), attTime));
+    /**
+     * Truncate the attestation time to the start of its day once, rather than for every claim of the patient
+     *
+     * @param attTime - the time the contract was attested
+     * @return the start of the day of attestation in epoch milliseconds or null if the contract isn't attested
+     */
+    private Long getAttestationDayStart(OffsetDateTime attTime) {
+        if (attTime == null) {
+            return null;
         }
+        return FilterOutByDate.getStartOfDay(new Date(attTime.toInstant().toEpochMilli()));
+    }
 
-        log.debug("Bundle - Total: {} - Entries: {} ", eobBundle.getTotal(), entries.size());
-        return resources;
+    /**
+     * Check a claim against the months the patient is under contract, or their date ranges if the months
+     * aren't known
+     */
+    private boolean isUnderContract(ExplanationOfBenefit eob, PatientDTO patient, long attestationDayStart) {
+        var monthsUnderContract = patient.getMonthsUnderContract();
+        if (monthsUnderContract != null) {
+            return FilterOutByDate.valid(eob, attestationDayStart, monthsUnderContract);
+        }
+        return FilterOutByDate.valid(eob, attestationDayStart, patient.getDateRangesUnderContract());
     }
 
-    private List<Resource> extractResources(List<BundleEntryComponent> entries, final List<FilterOutByDate.DateRange> dateRanges,
-                                            OffsetDateTime attTime) {
-        if (attTime == null) {
+    private List<Resource> extractResources(List<BundleEntryComponent> entries, PatientDTO patient,
+                                            Long attestationDayStart) {
+        if (attestationDayStart == null) {
             return new ArrayList<>();
         }
-        long epochMilli = attTime.toInstant().toEpochMilli();
-        Date attDate = new Date(epochMilli);
+        final long attestedFrom = attestationDayStart;
         return entries.stream()
                 // Get the resource
                 .map(BundleEntryComponent::getResource)
                 // Get only the explanation of benefits
                 .filter(resource -> resource.getResourceType() == ResourceType.ExplanationOfBenefit)
                 // Filter by date
-                .filter(resource -> skipBillablePeriodCheck || FilterOutByDate.valid((ExplanationOfBenefit) resource, attDate, dateRanges))
-                // filter it
-                .map(resource -> ExplanationOfBenefitTrimmer.getBenefit((ExplanationOfBenefit) resource))
+                .filter(resource -> skipBillablePeriodCheck || isUnderContract((ExplanationOfBenefit) resource, patient, attestedFrom))
+                // filter it, in place since the bundle is discarded once its resources are written
+                .map(resource -> ExplanationOfBenefitTrimmer.trimInPlace((ExplanationOfBenefit) resource))
                 // Remove any empty values
                 .filter(Objects::nonNull)
                 // Remove Plan D
@@ -0,0 +1,82 @@
+package gov.cms.ab2d.worker.processor;
+
+import gov.cms.ab2d.worker.processor.domainmodel.ProgressTracker.ContractProgress;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The patients of a contract which have been submitted but not yet dealt with by the contract thread. A patient
+ * is counted in the contract's progress by the thread which completes it and then queued, so the contract thread
+ * only looks at the patients which are done rather than checking every patient in progress.
+ *
+ * Only the contract thread adds and takes patients.
+ */
+class PatientCompletionQueue {
+
+    private final ContractProgress progress;
+
+    // Submitted and not yet taken, so they can be cancelled
+    private final Set<CompletableFuture<Void>> pending = new HashSet<>();
+
+    private final BlockingQueue<CompletableFuture<Void>> completed = new LinkedBlockingQueue<>();
+
+    PatientCompletionQueue(ContractProgress progress) {
+        this.progress = progress;
+    }
+
+    void add(CompletableFuture<Void> future) {
+        pending.add(future);
+        future.whenComplete((result, throwable) -> {
+            progress.incrementProcessedCount();
+            if (throwable != null && !(throwable instanceof CancellationException)) {
+                progress.incrementFailureCount();
+            }
+            completed.add(future);
+        });
+    }
+
+    /**
+     * @return the next patient which is done, null if none are
+     */
+    CompletableFuture<Void> poll() {
+        return taken(completed.poll());
+    }
+
+    /**
+     * @return the next patient which is done, null if none is done before the timeout
+     */
+    CompletableFuture<Void> poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return taken(completed.poll(timeout, unit));
+    }
+
+    /**
+     * Cancel the patients which haven't started. They are still taken from the queue as they complete.
+     */
+    void cancelAll() {
+        pending.forEach(future -> future.cancel(false));
+    }
+
+    /**
+     * @return the number of patients submitted and not yet taken
+     */
+    int size() {
+        return pending.size();
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    private CompletableFuture<Void> taken(CompletableFuture<Void> future) {
+        if (future != null) {
+            pending.remove(future);
+        }
+        return future;
+    }
+}
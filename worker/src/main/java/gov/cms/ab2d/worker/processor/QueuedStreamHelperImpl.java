@@ -0,0 +1,221 @@
+package gov.cms.ab2d.worker.processor;
+
+import gov.cms.ab2d.common.util.Constants;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wraps another stream helper so that patient threads never write to it themselves. Encoded records are put on
+ * a bounded queue and a single writer per contract drains the queue, coalescing many small records into
+ * large sequential writes to the wrapped helper. When the file system is slow the queue fills up and the patient
+ * threads wait, which keeps the amount of buffered data bounded.
+ *
+ * Error records are rare and are written directly to the wrapped helper.
+ */
+@Slf4j
+public class QueuedStreamHelperImpl implements StreamHelper {
+
+    // Coalesce records into writes of about this many bytes
+    static final int BATCH_BYTES = Constants.ONE_MEGA_BYTE;
+
+    // Marks the end of the data, added by close()
+    private static final byte[] END_OF_DATA = new byte[0];
+
+    private final StreamHelper helper;
+    private final String contractNumber;
+    private final BlockingQueue<byte[]> queue;
+    private final int closeTimeout;
+
+    // Completes once the writer has stopped, whether or not it failed
+    private final CompletableFuture<Void> writer;
+
+    // Set if the writer thread fails, after which no more data is accepted
+    private volatile Throwable writerFailure;
+
+    // Time patient threads spent waiting for room in the queue
+    private final LongAdder enqueueWaitNanos = new LongAdder();
+
+    // Only updated by the writer thread, read after it has finished
+    private long writeNanos;
+    private long recordCount;
+    private long batchCount;
+
+    /**
+     * Start the writer for the contract
+     *
+     * @param helper - the helper the writer writes to
+     * @param contractNumber - the contract number
+     * @param queueCapacity - the number of records that can be waiting to be written
+     * @param closeTimeout - the seconds close waits for the writer to finish writing what is queued
+     * @param executor - the pool the writer runs on, it holds a thread until the helper is closed
+     */
+    public QueuedStreamHelperImpl(StreamHelper helper, String contractNumber, int queueCapacity, int closeTimeout,
+                                  Executor executor) {
+        this.helper = helper;
+        this.contractNumber = contractNumber;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.closeTimeout = closeTimeout;
+        this.writer = CompletableFuture.runAsync(this::drain, executor);
+    }
+
+    /**
+     * Put the data on the queue, waiting while the queue is full
+     *
+     * @param data - the data to write
+     */
+    @Override
+    public void addData(byte[] data) throws IOException {
+        if (data == null || data.length == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            while (!queue.offer(data, 1, TimeUnit.SECONDS)) {
+                checkWriter();
+            }
+            checkWriter();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queueing data for contract " + contractNumber, e);
+        } finally {
+            enqueueWaitNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void addError(String data) throws IOException {
+        helper.addError(data);
+    }
+
+    @Override
+    public List<Path> getDataFiles() {
+        return helper.getDataFiles();
+    }
+
+    @Override
+    public List<Path> getErrorFiles() {
+        return helper.getErrorFiles();
+    }
+
+    @Override
+    public String getChecksum(Path file) {
+        return helper.getChecksum(file);
+    }
+
+    @Override
+    public long getFileLength(Path file) {
+        return helper.getFileLength(file);
+    }
+
+    /**
+     * Let the writer write everything left on the queue, then close the wrapped helper. If the writer fails or
+     * doesn't finish in time the helper is closed anyway and the failure is thrown.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            while (!queue.offer(END_OF_DATA, 1, TimeUnit.SECONDS)) {
+                checkWriter();
+            }
+            writer.get(closeTimeout, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing output for contract " + contractNumber, e);
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out waiting for output to be written for contract " + contractNumber, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to write data for contract " + contractNumber, e.getCause());
+        } finally {
+            helper.close();
+        }
+
+        log.info("Contract [{}] wrote [{}] records in [{}] writes - write time [{}] ms, time waiting to queue [{}] ms",
+                contractNumber, recordCount, batchCount, TimeUnit.NANOSECONDS.toMillis(writeNanos),
+                TimeUnit.NANOSECONDS.toMillis(enqueueWaitNanos.sum()));
+
+        checkWriter();
+    }
+
+    private void checkWriter() throws IOException {
+        if (writerFailure != null) {
+            throw new IOException("Unable to write data for contract " + contractNumber, writerFailure);
+        }
+    }
+
+    /**
+     * Take records off the queue and write them in batches until the end of the data is reached
+     */
+    private void drain() {
+        List<byte[]> records = new ArrayList<>();
+        Batch batch = new Batch();
+        try {
+            boolean done = false;
+            while (!done) {
+                records.add(queue.take());
+                queue.drainTo(records);
+
+                for (byte[] data : records) {
+                    if (data == END_OF_DATA) {
+                        done = true;
+                        break;
+                    }
+                    batch.write(data);
+                    ++recordCount;
+                    if (batch.size() >= BATCH_BYTES) {
+                        write(batch);
+                    }
+                }
+                records.clear();
+                write(batch);
+            }
+        } catch (InterruptedException e) {
+            writerFailure = e;
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Unable to write data for contract {}", contractNumber, e);
+            writerFailure = e;
+        } finally {
+            // Nothing more will be taken, so don't leave patient threads waiting on a full queue
+            queue.clear();
+        }
+    }
+
+    private void write(Batch batch) throws IOException {
+        if (batch.size() == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        batch.writeTo(helper);
+        writeNanos += System.nanoTime() - start;
+        ++batchCount;
+        batch.reset();
+    }
+
+    /**
+     * Records collected for one write, handed to the wrapped helper straight from the buffer they were
+     * collected in rather than copied out first
+     */
+    private static class Batch extends ByteArrayOutputStream {
+
+        Batch() {
+            super(BATCH_BYTES);
+        }
+
+        void writeTo(StreamHelper helper) throws IOException {
+            helper.addData(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package gov.cms.ab2d.worker.processor;
+
+import gov.cms.ab2d.common.model.Job;
+import gov.cms.ab2d.eventlogger.LogManager;
+import gov.cms.ab2d.eventlogger.events.FileEvent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implement a plain text stream helper that writes to several ndjson files at once. Each writing thread is
+ * mapped to one of the shards, and each shard has its own file, lock and rollover count, so threads writing
+ * to different shards never wait on each other. The files are named in the same sequence as the files
+ * written by {@link TextStreamHelperImpl}.
+ */
+@Slf4j
+public class ShardedTextStreamHelperImpl extends StreamHelperImpl {
+
+    /**
+     * A file currently being written to along with the number of bytes written to it
+     */
+    private static class Shard {
+        private final Lock lock = new ReentrantLock();
+        private OutputStream stream;
+        private File file;
+        private long bytesWritten;
+    }
+
+    private final Shard[] shards;
+
+    /**
+     * Implement the sharded text stream helper
+     *
+     * @param path - where to create the files
+     * @param contractNumber - the contract number
+     * @param totalBytesAllowed - the total number of bytes allowed to be written to each file
+     * @param tryLockTimeout - the amount of time to wait before timing out lock
+     * @param shardCount - the number of files written to at the same time
+     */
+    public ShardedTextStreamHelperImpl(Path path, String contractNumber, long totalBytesAllowed, int tryLockTimeout,
+                                       LogManager logger, Job job, int shardCount) {
+        super(path, contractNumber, totalBytesAllowed, tryLockTimeout, logger, job);
+
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Create the next file in the sequence for a shard. Files are only created on the first write to a shard
+     * and on rollover, so this is the only place the shards synchronize with each other.
+     *
+     * @param shard - the shard that needs a new file
+     * @throws FileNotFoundException if you can't create the stream
+     */
+    private synchronized void createStream(Shard shard) throws FileNotFoundException {
+        String fileName = getPath().toString() + "/" + createFileName();
+        File f = new File(fileName);
+        f.getParentFile().mkdirs();
+        getLogManager().log(new FileEvent(
+                getJob() == null || getJob().getUser() == null ? null : getJob().getUser().getUsername(),
+                getJob() == null ? null : getJob().getJobUuid(), f, FileEvent.FileStatus.OPEN));
+        shard.stream = createDataFileStream(Path.of(fileName));
+        shard.file = f;
+        shard.bytesWritten = 0;
+        getFilesCreated().add(Path.of(fileName));
+    }
+
+    private void closeStream(Shard shard) throws IOException {
+        shard.stream.close();
+        logDataFileClosed(shard.file);
+        shard.stream = null;
+    }
+
+    /**
+     * The shard the current thread writes to
+     *
+     * @return the shard
+     */
+    private Shard currentShard() {
+        return shards[(int) (Thread.currentThread().getId() % shards.length)];
+    }
+
+    /**
+     * Write data to the current thread's shard and iterate the shard to the next file if it exceeds the limit
+     *
+     * @param data - the data to write
+     */
+    @Override
+    public void addData(byte[] data) throws IOException {
+        if (data != null) {
+            addData(data, 0, data.length);
+        }
+    }
+
+    @Override
+    public void addData(byte[] data, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        Shard shard = currentShard();
+        tryLock(shard.lock);
+        try {
+            if (shard.stream == null) {
+                createStream(shard);
+            } else if (shard.bytesWritten + length > getTotalBytesAllowed() && shard.bytesWritten > 0) {
+                closeStream(shard);
+                createStream(shard);
+            }
+            shard.stream.write(data, offset, length);
+            shard.bytesWritten += length;
+        } catch (Exception ex) {
+            String error = "Unable to create file output stream for contract " + getContractNumber() + "[" + (getCounter() - 1) + "]";
+            log.error(error, ex);
+            throw new IOException(error, ex);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Close the streams of every shard that was written to
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            for (Shard shard : shards) {
+                if (shard.stream != null) {
+                    closeStream(shard);
+                }
+            }
+        } catch (Exception ex) {
+            String error = "Unable to close output stream for contract " + getContractNumber() + "[" + getCounter() + "]";
+            log.error(error, ex);
+            throw new IOException(error, ex);
+        }
+    }
+}
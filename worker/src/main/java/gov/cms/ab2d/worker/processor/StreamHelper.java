@@ -2,12 +2,23 @@ package gov.cms.ab2d.worker.processor;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 
 public interface StreamHelper {
     void addData(byte[] data) throws IOException;
+
+    // Write part of a buffer the caller reuses. The helper doesn't keep a reference to the buffer once this returns.
+    default void addData(byte[] data, int offset, int length) throws IOException {
+        addData(Arrays.copyOfRange(data, offset, offset + length));
+    }
+
     void addError(String data) throws IOException;
     List<Path> getDataFiles();
     List<Path> getErrorFiles();
+    // The checksum of a data file captured while it was written, null if it wasn't captured
+    String getChecksum(Path file);
+    // The length of a data file captured while it was written, -1 if it wasn't captured
+    long getFileLength(Path file);
     void close() throws IOException;
 }
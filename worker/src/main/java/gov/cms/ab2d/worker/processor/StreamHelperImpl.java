@@ -2,11 +2,16 @@ package gov.cms.ab2d.worker.processor;
 
 import gov.cms.ab2d.common.model.Job;
 import gov.cms.ab2d.eventlogger.LogManager;
+import gov.cms.ab2d.eventlogger.events.FileEvent;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
@@ -14,6 +19,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -28,7 +35,8 @@ public abstract class StreamHelperImpl implements StreamHelper, AutoCloseable {
     public enum FileOutputType {
         NDJSON(".ndjson"),
         NDJSON_ERROR("_error.ndjson"),
-        ZIP(".zip");
+        ZIP(".zip"),
+        NDJSON_GZIP(".ndjson.gz");
 
         private String suffix;
         FileOutputType(String suffix) {
@@ -91,6 +99,9 @@ public abstract class StreamHelperImpl implements StreamHelper, AutoCloseable {
     // Location of error file
     private Path errorFile;
 
+    // The streams of the data files, which capture the checksum and length of each file as it is written
+    private final Map<Path, ChecksumOutputStream> dataFileStreams = new ConcurrentHashMap<>();
+
     /**
      * Main constructor
      *
@@ -117,13 +128,49 @@ public abstract class StreamHelperImpl implements StreamHelper, AutoCloseable {
      * @return the file name
      */
     String createFileName() {
+        return createFileName(FileOutputType.NDJSON);
+    }
+
+    /**
+     * Create the next file name in the sequence with the suffix of the output type
+     *
+     * @param outputType - the type of file being created
+     * @return the file name
+     */
+    String createFileName(FileOutputType outputType) {
         var partName = Integer.toString(counter);
         var paddedPartitionNo = StringUtils.leftPad(partName, 4, '0');
         counter++;
         return contractNumber +
                 "_" +
                 paddedPartitionNo +
-                FileOutputType.NDJSON.getSuffix();
+                outputType.getSuffix();
+    }
+
+    /**
+     * Open a data file for writing. The checksum and length of the file are captured as it is written.
+     *
+     * @param file - the data file
+     * @return the stream
+     * @throws FileNotFoundException if the file can't be created
+     */
+    ChecksumOutputStream createDataFileStream(Path file) throws FileNotFoundException {
+        ChecksumOutputStream stream = new ChecksumOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())));
+        dataFileStreams.put(file, stream);
+        return stream;
+    }
+
+    /**
+     * Log that a data file was closed with the checksum and length captured while it was written
+     *
+     * @param file - the closed data file
+     */
+    void logDataFileClosed(File file) {
+        ChecksumOutputStream stream = dataFileStreams.get(file.toPath());
+        logManager.log(new FileEvent(
+                job == null || job.getUser() == null ? null : job.getUser().getUsername(),
+                job == null ? null : job.getJobUuid(), file, FileEvent.FileStatus.CLOSE,
+                stream.getCount(), stream.getChecksum()));
     }
 
     /**
@@ -221,4 +268,28 @@ public abstract class StreamHelperImpl implements StreamHelper, AutoCloseable {
     public List<Path> getErrorFiles() {
         return errorFilesCreated;
     }
+
+    /**
+     * Return the checksum of a data file, captured while it was written
+     *
+     * @param file - the data file
+     * @return the checksum or null if it wasn't captured
+     */
+    @Override
+    public String getChecksum(Path file) {
+        ChecksumOutputStream stream = dataFileStreams.get(file);
+        return stream == null ? null : stream.getChecksum();
+    }
+
+    /**
+     * Return the length of a data file, captured while it was written
+     *
+     * @param file - the data file
+     * @return the length or -1 if it wasn't captured
+     */
+    @Override
+    public long getFileLength(Path file) {
+        ChecksumOutputStream stream = dataFileStreams.get(file);
+        return stream == null ? -1 : stream.getCount();
+    }
 }
@@ -8,8 +8,6 @@ import lombok.extern.slf4j.Slf4j;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
 
@@ -52,7 +50,7 @@ public class TextStreamHelperImpl extends StreamHelperImpl {
         getLogManager().log(new FileEvent(
                 getJob() == null || getJob().getUser() == null ? null : getJob().getUser().getUsername(),
                 getJob() == null ? null : getJob().getJobUuid(), f, FileEvent.FileStatus.OPEN));
-        OutputStream stream = new BufferedOutputStream(new FileOutputStream(fileName));
+        OutputStream stream = createDataFileStream(Path.of(fileName));
         Path p = Path.of(fileName);
         getFilesCreated().add(p);
         return stream;
@@ -65,21 +63,26 @@ public class TextStreamHelperImpl extends StreamHelperImpl {
      */
     @Override
     public void addData(byte[] data) throws IOException {
-        if (data == null || data.length == 0) {
+        if (data != null) {
+            addData(data, 0, data.length);
+        }
+    }
+
+    @Override
+    public void addData(byte[] data, int offset, int length) throws IOException {
+        if (length == 0) {
             return;
         }
         tryLock(getDataFileLock());
         try {
-            if (getTotalBytesWritten() + data.length > getTotalBytesAllowed() && getTotalBytesWritten() > 0) {
+            if (getTotalBytesWritten() + length > getTotalBytesAllowed() && getTotalBytesWritten() > 0) {
                 getCurrentStream().close();
-                getLogManager().log(new FileEvent(
-                        getJob() == null || getJob().getUser() == null ? null : getJob().getUser().getUsername(),
-                        getJob() == null ? null : getJob().getJobUuid(), currentFile, FileEvent.FileStatus.CLOSE));
+                logDataFileClosed(currentFile);
                 setCurrentStream(createStream());
                 setTotalBytesWritten(0);
             }
-            getCurrentStream().write(data);
-            setTotalBytesWritten(getTotalBytesWritten() + data.length);
+            getCurrentStream().write(data, offset, length);
+            setTotalBytesWritten(getTotalBytesWritten() + length);
         } catch (Exception ex) {
             String error = "Unable to create file output stream for contract " + getContractNumber() + "[" + (getCounter() - 1) + "]";
             log.error(error, ex);
@@ -96,9 +99,7 @@ public class TextStreamHelperImpl extends StreamHelperImpl {
     public void close() throws IOException {
         try {
             getCurrentStream().close();
-            getLogManager().log(new FileEvent(
-                    getJob() == null || getJob().getUser() == null ? null : getJob().getUser().getUsername(),
-                    getJob() == null ? null : getJob().getJobUuid(), currentFile, FileEvent.FileStatus.CLOSE));
+            logDataFileClosed(currentFile);
             int numFiles = getFilesCreated().size();
             if (getFilesCreated().get(numFiles - 1).toFile().length() == 0) {
                 getFilesCreated().remove(numFiles - 1);
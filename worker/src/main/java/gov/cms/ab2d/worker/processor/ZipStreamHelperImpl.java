@@ -3,7 +3,6 @@ package gov.cms.ab2d.worker.processor;
 import gov.cms.ab2d.common.model.Job;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.eventlogger.events.FileEvent;
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
@@ -13,7 +12,8 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 /**
- * Create a zip stream helper
+ * Create a zip stream helper. Data is compressed into the open zip file entry as it arrives, so nothing more
+ * than the stream buffers is held in memory.
  */
 @Slf4j
 public class ZipStreamHelperImpl extends StreamHelperImpl {
@@ -25,24 +25,29 @@ public class ZipStreamHelperImpl extends StreamHelperImpl {
     // total bytes allowed for each expanded file part
     private long totalExpandedBytesInEntryAllowed;
 
-    // The average amount of compression accross all files added (i.e., 0.2 means the resulting file is 1/5 the size
-    // of the expanded file. Initialize it to no compression
-    @Getter
-    private double averageCompression = 1.0;
+    // Counts the compressed bytes written to the current zip file
+    private CountingOutputStream currentCountingStream;
 
-    // The byte stream for the current zip part
-    private ByteArrayOutputStream currentPartByteStream;
+    // Whether a zip file entry is open and being written to
+    private boolean entryOpen;
+
+    // The number of uncompressed bytes written to the open entry
+    private long currentEntryBytes;
+
+    // The number of entries written to the current zip file
+    private int entriesInCurrentFile;
 
     /**
      * Instantiate the super constructor but include two size limits; the size of the zip file and
-     * the max uncompressed size a zip file entry can have before it gets added to the zip file
+     * the max uncompressed size a zip file entry can have before a new entry is started
      *
      * @param path - where to put the output files
      * @param contractNumber - the contract number
      * @param totalBytesAllowed - the total bytes allowed to be written to the zip file (this is
-     *                          approximate based on the average compression rate)
+     *                          approximate, a new zip file is started once the compressed bytes written
+     *                          reach this limit)
      * @param totalBytesInEntry - The total number of uncompressed bytes a zip entry must not
-     *                          exceed before it is added to the zip file
+     *                          exceed before a new entry is started
      * @param tryLockTimeout - the lock time out on the files
      * @throws FileNotFoundException if there was an error writing to the file system
      */
@@ -69,11 +74,11 @@ public class ZipStreamHelperImpl extends StreamHelperImpl {
 
         f.getParentFile().mkdirs();
         Path currentFile = Path.of(zipFileName);
-        FileOutputStream fos = new FileOutputStream(zipFileName);
-        BufferedOutputStream bos = new BufferedOutputStream(fos);
+        currentCountingStream = createDataFileStream(currentFile);
         setTotalBytesWritten(0);
+        entriesInCurrentFile = 0;
         getFilesCreated().add(currentFile);
-        return new ZipOutputStream(bos);
+        return new ZipOutputStream(currentCountingStream);
     }
 
     /**
@@ -108,22 +113,39 @@ public class ZipStreamHelperImpl extends StreamHelperImpl {
      */
     @Override
     public void addData(byte[] data) throws IOException {
-        if (data == null || data.length == 0) {
+        if (data != null) {
+            addData(data, 0, data.length);
+        }
+    }
+
+    @Override
+    public void addData(byte[] data, int offset, int length) throws IOException {
+        if (length == 0) {
             return;
         }
         tryLock(getDataFileLock());
         try {
             // If streams don't exist, create them
             checkInitStreams();
-            // If the uncompressed file is larger than it should be, create new part and add the old one to a zip file
-            // (Either the open one of if that's too large, a new one)
-            if (currentPartByteStream.size() + data.length > totalExpandedBytesInEntryAllowed) {
-                if (fileFull(currentPartByteStream)) {
+            // If the uncompressed entry would be larger than it should be, finish it so the data goes in a new one
+            if (entryOpen && currentEntryBytes > 0 && currentEntryBytes + length > totalExpandedBytesInEntryAllowed) {
+                closeEntry();
+            }
+            if (!entryOpen) {
+                // Start a new zip file if the current one has reached its size
+                if (fileFull()) {
                     resetZipFile();
                 }
-                addPartToFile();
+                openEntry();
+            }
+            getCurrentStream().write(data, offset, length);
+            currentEntryBytes += length;
+            setTotalBytesWritten(currentCountingStream.getCount());
+
+            // Once the zip file has reached its size, finish the entry so the next data starts a new zip file
+            if (fileFull()) {
+                closeEntry();
             }
-            currentPartByteStream.write(data);
         } catch (Exception ex) {
             String err = "Unable to create file output stream for contract " + getContractNumber() + "[" + (currentZipIteration - 1) + "]";
             log.error(err, ex);
@@ -142,34 +164,29 @@ public class ZipStreamHelperImpl extends StreamHelperImpl {
         if (getCurrentStream() == null) {
             setCurrentStream(createStream());
         }
-        if (currentPartByteStream == null) {
-            currentPartByteStream = new ByteArrayOutputStream();
-        }
     }
 
     /**
-     * Given a ZipEntry, add it to the zip file. At this point, you can determine the compression
-     * achieved after adding the entry. We keep a running average so we can predict whether we should add
-     * an entry to a zip file or create a new zip file. Before we have any values, we assume no compression.
-     * Compression is measured at how small the resulting entry is compared to the size of the data before
-     * compression. For example, 0.5 means that the data in the zip file is half the size of the data
-     * entered. No compression would have a value of 1.
+     * Start a new entry in the current zip file
+     *
+     * @throws IOException - if there was a problem writing to the zip file
+     */
+    private void openEntry() throws IOException {
+        ((ZipOutputStream) getCurrentStream()).putNextEntry(createFilePart());
+        entryOpen = true;
+        currentEntryBytes = 0;
+        ++entriesInCurrentFile;
+    }
+
+    /**
+     * Finish the open entry, which flushes all of its compressed data to the zip file
      *
      * @throws IOException - if there was a problem writing to the zip file
      */
-    private void addPartToFile() throws IOException {
-        ZipEntry entry = createFilePart();
-        ((ZipOutputStream) getCurrentStream()).putNextEntry(entry);
-        getCurrentStream().write(currentPartByteStream.toByteArray());
+    private void closeEntry() throws IOException {
         ((ZipOutputStream) getCurrentStream()).closeEntry();
-        setTotalBytesWritten(getTotalBytesWritten() + entry.getCompressedSize());
-        double currentCompression = (double) entry.getCompressedSize() / currentPartByteStream.size();
-        if (getCounter() == 2) {
-            averageCompression = currentCompression;
-        } else {
-            averageCompression = (averageCompression * (getCounter() - 1) + currentCompression) / getCounter();
-        }
-        currentPartByteStream = new ByteArrayOutputStream();
+        entryOpen = false;
+        setTotalBytesWritten(currentCountingStream.getCount());
     }
 
     /**
@@ -179,27 +196,21 @@ public class ZipStreamHelperImpl extends StreamHelperImpl {
      */
     private void resetZipFile() throws IOException {
         getCurrentStream().close();
-        getLogManager().log(new FileEvent(
-                getJob() == null || getJob().getUser() == null ? null : getJob().getUser().getUsername(),
-                getJob() == null ? null : getJob().getJobUuid(), currentFile, FileEvent.FileStatus.CLOSE));
-
+        logDataFileClosed(currentFile);
         setCurrentStream(createStream());
     }
 
     /**
-     * Determine if the zip file is full and can't accept the byte stream without going over
-     * the limit
+     * Determine if the zip file is full from the number of compressed bytes written to it so far
      *
-     * @param ba - the byte stream you want to add
-     * @return true if the additional data is projected to over fill the zip file (based on average compression)
+     * @return true if the zip file has reached its size limit
      */
-    private boolean fileFull(ByteArrayOutputStream ba) {
-        double probableSize = ba.size() * averageCompression;
-        return getTotalBytesWritten() + probableSize > getTotalBytesAllowed();
+    private boolean fileFull() {
+        return entriesInCurrentFile > 0 && getTotalBytesWritten() >= getTotalBytesAllowed();
     }
 
     /**
-     * Close the stream and add any lingering data to the zip file or a new one if it's too big
+     * Close the stream, finishing the open entry
      */
     @Override
     public void close() throws IOException {
@@ -207,19 +218,14 @@ public class ZipStreamHelperImpl extends StreamHelperImpl {
             return;
         }
         try {
-            if (currentPartByteStream.size() != 0) {
-                if (fileFull(currentPartByteStream)) {
-                    resetZipFile();
-                }
-                addPartToFile();
+            if (entryOpen) {
+                closeEntry();
             }
-            getLogManager().log(new FileEvent(
-                    getJob() == null || getJob().getUser() == null ? null : getJob().getUser().getUsername(),
-                    getJob() == null ? null : getJob().getJobUuid(), currentFile, FileEvent.FileStatus.CLOSE));
-
             getCurrentStream().close();
+            logDataFileClosed(currentFile);
+
             int numFiles = getFilesCreated().size();
-            if (getFilesCreated().get(numFiles - 1).toFile().length() == 0) {
+            if (entriesInCurrentFile == 0 || getFilesCreated().get(numFiles - 1).toFile().length() == 0) {
                 getFilesCreated().remove(numFiles - 1);
             }
         } catch (Exception ex) {
@@ -0,0 +1,22 @@
+package gov.cms.ab2d.worker.processor.domainmodel;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.concurrent.Executor;
+
+/**
+ * How the output of a contract is compressed in blocks on a pool of threads
+ */
+@Getter
+@AllArgsConstructor
+public class CompressionSettings {
+    // The number of uncompressed bytes collected before a block is compressed
+    private final int blockSize;
+
+    // The number of blocks which can be compressing before the writer waits for the oldest one
+    private final int maxPendingBlocks;
+
+    // Where the blocks are compressed
+    private final Executor executor;
+}
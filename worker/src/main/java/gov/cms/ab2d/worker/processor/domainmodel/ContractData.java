@@ -14,4 +14,6 @@ public class ContractData {
     private final OffsetDateTime attestedTime;
     private final OffsetDateTime sinceTime;
     private final String userId;
+    private final OptOutIndex optOutIndex;
+    private final ContractPatientsFetch patientsFetch;
 }
@@ -0,0 +1,121 @@
+package gov.cms.ab2d.worker.processor.domainmodel;
+
+import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The patients of a contract while they are being retrieved. The months a patient is active in are only known
+ * once every month of the contract has been retrieved, but the patient's claims don't depend on them, only which
+ * claims are kept does. So the first patients found are handed out as they are found, up to a limit, and their
+ * claims can be requested while the rest of the contract is still being retrieved.
+ *
+ * The patients are found on the threads retrieving the months of the contract and taken by the thread processing
+ * the contract. Cancelling the fetch stops the threads retrieving it the next time they find patients.
+ */
+public class ContractPatientsFetch {
+
+    // The number of patients handed out before the contract has been retrieved, 0 hands none out
+    private final int earlyLimit;
+
+    private final Set<String> seen = new HashSet<>();
+    private final BlockingQueue<String> found = new LinkedBlockingQueue<>();
+    private volatile boolean full;
+    private volatile boolean cancelled;
+
+    private final CompletableFuture<GetPatientsByContractResponse> patients = new CompletableFuture<>();
+
+    public ContractPatientsFetch(int earlyLimit) {
+        this.earlyLimit = earlyLimit;
+        this.full = earlyLimit <= 0;
+    }
+
+    /**
+     * Called with each page of patients as it is retrieved. The same patient may be found more than once, it is
+     * only handed out the first time.
+     *
+     * @param patientIds - the patients on the page
+     * @throws CancellationException if the fetch has been cancelled, to stop retrieving the contract
+     */
+    public void found(Set<String> patientIds) {
+        if (cancelled) {
+            throw new CancellationException("Retrieving the patients of the contract was cancelled");
+        }
+        if (full) {
+            return;
+        }
+        synchronized (seen) {
+            for (String patientId : patientIds) {
+                if (seen.size() >= earlyLimit) {
+                    full = true;
+                    return;
+                }
+                if (seen.add(patientId)) {
+                    found.add(patientId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Take the next patient found before the contract has been retrieved
+     *
+     * @param timeout - how long to wait for one
+     * @param unit - the unit of the timeout
+     * @return the patient id or null if none was found in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public String pollFound(long timeout, TimeUnit unit) throws InterruptedException {
+        return found.poll(timeout, unit);
+    }
+
+    /**
+     * Complete the fetch with the patients of the contract or the reason they could not be retrieved
+     *
+     * @param response - the patients of the contract
+     * @param failure - why they could not be retrieved, null if they were
+     */
+    public void complete(GetPatientsByContractResponse response, Throwable failure) {
+        if (failure == null) {
+            patients.complete(response);
+        } else {
+            patients.completeExceptionally(failure instanceof CompletionException ? failure.getCause() : failure);
+        }
+    }
+
+    public boolean isDone() {
+        return patients.isDone();
+    }
+
+    /**
+     * Wait for the contract to be retrieved. If it failed, rethrow the original exception rather than the
+     * wrapper from the future, so callers see the same error they would if the contract was retrieved in turn.
+     *
+     * @return the patients of the contract
+     */
+    public GetPatientsByContractResponse getPatients() {
+        try {
+            return patients.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stop retrieving the contract. Does nothing once the contract has been retrieved.
+     */
+    public void cancel() {
+        cancelled = true;
+        patients.cancel(false);
+    }
+}
@@ -0,0 +1,145 @@
+package gov.cms.ab2d.worker.processor.domainmodel;
+
+import gov.cms.ab2d.worker.util.PatientIds;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The earliest opt-out effective date of every beneficiary who has opted out, keyed by ccw id.
+ *
+ * Beneficiary ids are numeric so they are kept in an open addressing table of primitive longs, which takes a
+ * fraction of the memory of a map of strings and doesn't create any objects on lookup. Any id which isn't a
+ * number that fits in a long is kept in a regular map instead.
+ *
+ * The index is built by a single thread and only read once it has been handed to the contract processors.
+ */
+public class InMemoryOptOutIndex implements OptOutIndex {
+
+    // Marks an empty slot. It is never used as a key since ids which aren't numbers are kept in otherIds.
+    private static final long EMPTY = PatientIds.NOT_NUMERIC;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] effectiveDays;
+    private int mask;
+    private int numericCount;
+
+    private final Map<String, Integer> otherIds = new HashMap<>();
+
+    public InMemoryOptOutIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Create an index sized for the expected number of beneficiaries
+     *
+     * @param expectedSize - the number of beneficiaries expected to be added
+     */
+    public InMemoryOptOutIndex(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Add an opt-out record, keeping the earliest effective date for the beneficiary
+     *
+     * @param ccwId - the beneficiary id
+     * @param effectiveDate - the date the opt-out is effective
+     */
+    public void add(String ccwId, LocalDate effectiveDate) {
+        if (ccwId == null || effectiveDate == null) {
+            return;
+        }
+        int effectiveDay = (int) effectiveDate.toEpochDay();
+        long id = PatientIds.parse(ccwId);
+        if (id == EMPTY) {
+            otherIds.merge(ccwId, effectiveDay, Math::min);
+            return;
+        }
+
+        int slot = findSlot(keys, mask, id);
+        if (keys[slot] == id) {
+            effectiveDays[slot] = Math.min(effectiveDays[slot], effectiveDay);
+            return;
+        }
+        keys[slot] = id;
+        effectiveDays[slot] = effectiveDay;
+        if (++numericCount * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    @Override
+    public boolean isOptedOut(String ccwId, long asOfEpochDay) {
+        if (ccwId == null) {
+            return false;
+        }
+        long id = PatientIds.parse(ccwId);
+        if (id == EMPTY) {
+            Integer effectiveDay = otherIds.get(ccwId);
+            return effectiveDay != null && effectiveDay <= asOfEpochDay;
+        }
+        int slot = findSlot(keys, mask, id);
+        return keys[slot] == id && effectiveDays[slot] <= asOfEpochDay;
+    }
+
+    /**
+     * @return the number of beneficiaries in the index
+     */
+    public int size() {
+        return numericCount + otherIds.size();
+    }
+
+    private void allocate(int tableSize) {
+        keys = new long[tableSize];
+        effectiveDays = new int[tableSize];
+        mask = tableSize - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldEffectiveDays = effectiveDays;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = findSlot(keys, mask, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                effectiveDays[slot] = oldEffectiveDays[i];
+            }
+        }
+    }
+
+    /**
+     * Return the slot holding the id or the empty slot where it would go, using linear probing
+     */
+    private static int findSlot(long[] keys, int mask, long id) {
+        int slot = mix(id) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Spread the bits of the id so sequential ids don't cluster
+     */
+    private static int mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * The table is kept at most half full
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int size = MIN_CAPACITY;
+        while (size < expectedSize * 2L && size < (1 << 30)) {
+            size <<= 1;
+        }
+        return size;
+    }
+}
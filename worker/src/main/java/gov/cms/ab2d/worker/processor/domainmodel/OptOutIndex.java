@@ -0,0 +1,29 @@
+package gov.cms.ab2d.worker.processor.domainmodel;
+
+import java.time.LocalDate;
+
+/**
+ * Determines whether beneficiaries have opted out without going to the database for each one
+ */
+public interface OptOutIndex {
+
+    /**
+     * Determine if the beneficiary has an opt-out which is effective on or before the epoch day
+     *
+     * @param ccwId - the beneficiary id
+     * @param asOfEpochDay - the epoch day to check
+     * @return true if the beneficiary has opted out as of the day
+     */
+    boolean isOptedOut(String ccwId, long asOfEpochDay);
+
+    /**
+     * Determine if the beneficiary has an opt-out which is effective on or before the date
+     *
+     * @param ccwId - the beneficiary id
+     * @param asOf - the date to check
+     * @return true if the beneficiary has opted out as of the date
+     */
+    default boolean isOptedOut(String ccwId, LocalDate asOf) {
+        return isOptedOut(ccwId, asOf.toEpochDay());
+    }
+}
@@ -7,6 +7,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 
 import java.time.OffsetDateTime;
+import java.util.concurrent.CompletableFuture;
 
 @Getter
 @AllArgsConstructor
@@ -19,4 +20,17 @@ public class PatientClaimsRequest {
     private final String job;
     private final String contractNum;
     private final Token token;
+    private final ProgressTracker.ContractProgress progress;
+    // The patient with the months they are under contract, null if the patient already has them
+    private final CompletableFuture<PatientDTO> patientMonths;
+
+    /**
+     * The patient with the months they are under contract. A patient found before the contract had been retrieved
+     * doesn't have them yet, so this waits for them.
+     *
+     * @return the patient
+     */
+    public PatientDTO awaitPatientDTO() {
+        return patientMonths == null ? patientDTO : patientMonths.join();
+    }
 }
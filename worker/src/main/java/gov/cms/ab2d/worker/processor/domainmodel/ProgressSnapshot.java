@@ -0,0 +1,89 @@
+package gov.cms.ab2d.worker.processor.domainmodel;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * The counts of a job and of each of its contracts at one point in time, see {@link ProgressTracker#snapshot()}
+ */
+@Getter
+@Builder
+public class ProgressSnapshot {
+    private final String jobUuid;
+    private final Instant startedAt;
+    private final Instant takenAt;
+    private final int totalCount;
+    private final int estimatedTotalCount;
+    private final int processedCount;
+    private final int failureCount;
+    private final int optOutCount;
+    private final long eobsWritten;
+    private final long bytesWritten;
+    private final long prefetchHiddenMillis;
+
+    // By contract number
+    private final Map<String, ContractSnapshot> contracts;
+
+    /**
+     * @return the percentage of the expected patients processed (0-100)
+     */
+    public int getPercentageCompleted() {
+        if (estimatedTotalCount == 0) {
+            return 0;
+        }
+        return Math.min(processedCount * 100 / estimatedTotalCount, 100);
+    }
+
+    /**
+     * @return the patients processed per second since the job started
+     */
+    public double getPatientsPerSecond() {
+        return perSecond(processedCount, Duration.between(startedAt, takenAt));
+    }
+
+    /**
+     * @param earlier - a snapshot of the same job taken earlier, null to measure from when the job started
+     * @return the patients processed per second between the snapshots
+     */
+    public double getPatientsPerSecondSince(ProgressSnapshot earlier) {
+        if (earlier == null) {
+            return getPatientsPerSecond();
+        }
+        return perSecond(processedCount - earlier.processedCount, Duration.between(earlier.takenAt, takenAt));
+    }
+
+    /**
+     * @param earlier - a snapshot of the same job taken earlier, null to measure from when the job started
+     * @return the EOBs written per second between the snapshots
+     */
+    public double getEobsPerSecondSince(ProgressSnapshot earlier) {
+        if (earlier == null) {
+            return perSecond(eobsWritten, Duration.between(startedAt, takenAt));
+        }
+        return perSecond(eobsWritten - earlier.eobsWritten, Duration.between(earlier.takenAt, takenAt));
+    }
+
+    private static double perSecond(long count, Duration duration) {
+        long millis = duration.toMillis();
+        return millis <= 0 ? 0 : count * 1000.0 / millis;
+    }
+
+    /**
+     * The counts of one contract of the job
+     */
+    @Getter
+    @Builder
+    public static class ContractSnapshot {
+        private final String contractNumber;
+        private final int patientCount;
+        private final int processedCount;
+        private final int failureCount;
+        private final int optOutCount;
+        private final long eobsWritten;
+        private final long bytesWritten;
+    }
+}
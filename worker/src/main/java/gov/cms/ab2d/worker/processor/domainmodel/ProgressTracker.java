@@ -1,26 +1,53 @@
 package gov.cms.ab2d.worker.processor.domainmodel;
 
 import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse;
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.Singular;
 
+import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Tracks the progress of a job across all of its contracts. The patients of a contract are added once they
+ * have been fetched, so the first contracts can be processed while the patients of the later ones are still
+ * being fetched. Until every contract has been added the total count only covers the contracts added so far.
+ *
+ * The counts are striped counters, so patient threads can count a patient as soon as it is done without
+ * contending with each other or with the contract thread reading them. Each contract is also counted on its own,
+ * see {@link #getContractProgress(String)}, and {@link #snapshot()} reads every count without any coordination.
+ */
 @Getter
-@Builder
-public class ProgressTracker {
+public final class ProgressTracker {
 
     private final String jobUuid;
 
-    @Singular
-    private final List<GetPatientsByContractResponse> patientsByContracts;
-    private int totalCount;
-    private int processedCount;
+    private final List<GetPatientsByContractResponse> patientsByContracts = new CopyOnWriteArrayList<>();
+
+    @Getter(AccessLevel.NONE)
+    private final Map<String, ContractProgress> contractProgress = new ConcurrentHashMap<>();
+
+    private final Instant startedAt = Instant.now();
+
+    // The number of contracts in the job, 0 if every contract was added when the tracker was built
+    private final int expectedContractCount;
+
+    @Getter(AccessLevel.NONE)
+    private final LongAdder processedCount = new LongAdder();
 
     private final int failureThreshold;
-    private int failureCount;
+
+    @Getter(AccessLevel.NONE)
+    private final LongAdder failureCount = new LongAdder();
 
     @Setter
     private int lastDbUpdateCount;
@@ -28,25 +55,134 @@ public class ProgressTracker {
     @Setter
     private int lastLogUpdateCount;
 
+    // The snapshot the progress was last logged with, so the next log can report the throughput since then
     @Setter
-    private int lastUpdatedPercentage;
+    private volatile ProgressSnapshot lastLogSnapshot;
 
     @Setter
-    private int optOutCount;
+    private int lastUpdatedPercentage;
+
+    @Getter(AccessLevel.NONE)
+    private final LongAdder optOutCount = new LongAdder();
+
+    @Getter(AccessLevel.NONE)
+    private final LongAdder eobsWritten = new LongAdder();
+
+    @Getter(AccessLevel.NONE)
+    private final LongAdder bytesWritten = new LongAdder();
+
+    // BFD request time that overlapped with work on the patient threads because pages were prefetched
+    @Getter(AccessLevel.NONE)
+    private final LongAdder prefetchHiddenMillis = new LongAdder();
+
+    @Builder
+    private ProgressTracker(String jobUuid, @Singular List<GetPatientsByContractResponse> patientsByContracts,
+                            int expectedContractCount, int failureThreshold) {
+        this.jobUuid = jobUuid;
+        this.expectedContractCount = expectedContractCount;
+        this.failureThreshold = failureThreshold;
+        patientsByContracts.forEach(this::addPatientsByContract);
+    }
+
+    /**
+     * Add the patients of a contract once they have been fetched. A contract already added isn't added again.
+     *
+     * @param patientsByContract - the patients of the contract
+     */
+    public synchronized void addPatientsByContract(GetPatientsByContractResponse patientsByContract) {
+        String contractNumber = patientsByContract.getContractNumber();
+        boolean added = patientsByContracts.stream()
+                .anyMatch(byContract -> Objects.equals(contractNumber, byContract.getContractNumber()));
+        if (!added) {
+            patientsByContracts.add(patientsByContract);
+        }
+    }
 
     /**
      * Increment the number of patients processed
      */
     public void incrementProcessedCount() {
-        ++processedCount;
+        processedCount.increment();
     }
 
     public void incrementFailureCount() {
-        ++failureCount;
+        failureCount.increment();
     }
 
     public void incrementOptOutCount() {
-        ++optOutCount;
+        optOutCount.increment();
+    }
+
+    public void addEobsWritten(long count) {
+        eobsWritten.add(count);
+    }
+
+    public void addBytesWritten(long count) {
+        bytesWritten.add(count);
+    }
+
+    public void addPrefetchHiddenMillis(long millis) {
+        prefetchHiddenMillis.add(millis);
+    }
+
+    public int getProcessedCount() {
+        return processedCount.intValue();
+    }
+
+    public int getFailureCount() {
+        return failureCount.intValue();
+    }
+
+    public int getOptOutCount() {
+        return optOutCount.intValue();
+    }
+
+    public long getEobsWritten() {
+        return eobsWritten.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getPrefetchHiddenMillis() {
+        return prefetchHiddenMillis.sum();
+    }
+
+    /**
+     * Get the counts of a contract. What is counted for the contract is counted for the job as well.
+     *
+     * @param contractNumber - the contract number
+     * @return the contract's counts
+     */
+    public ContractProgress getContractProgress(String contractNumber) {
+        return contractProgress.computeIfAbsent(contractNumber, ContractProgress::new);
+    }
+
+    /**
+     * Read the counts of the job and of each of its contracts as they are now. The counts are read one at a time
+     * while patients are still counted, so they may be a patient or two apart.
+     *
+     * @return the counts
+     */
+    public ProgressSnapshot snapshot() {
+        Map<String, ProgressSnapshot.ContractSnapshot> contracts = new TreeMap<>();
+        contractProgress.values().forEach(progress ->
+                contracts.put(progress.getContractNumber(), progress.snapshot()));
+        return ProgressSnapshot.builder()
+                .jobUuid(jobUuid)
+                .startedAt(startedAt)
+                .takenAt(Instant.now())
+                .totalCount(getTotalCount())
+                .estimatedTotalCount(getEstimatedTotalCount())
+                .processedCount(getProcessedCount())
+                .failureCount(getFailureCount())
+                .optOutCount(getOptOutCount())
+                .eobsWritten(getEobsWritten())
+                .bytesWritten(getBytesWritten())
+                .prefetchHiddenMillis(getPrefetchHiddenMillis())
+                .contracts(Collections.unmodifiableMap(contracts))
+                .build();
     }
 
     public int getContractCount(String contractNumber) {
@@ -58,19 +194,32 @@ public class ProgressTracker {
         }
         return response.getPatients().size();
     }
+
     /**
-     * Get the total number of patients we're processing across all contracts
+     * Get the total number of patients in the contracts added so far
      *
      * @return number of patients
      */
     public int getTotalCount() {
-        if (totalCount == 0) {
-            totalCount = patientsByContracts.stream()
-                    .mapToInt(patientsByContract -> patientsByContract.getPatients().size())
-                    .sum();
-        }
+        return patientsByContracts.stream()
+                .filter(patientsByContract -> patientsByContract.getPatients() != null)
+                .mapToInt(patientsByContract -> patientsByContract.getPatients().size())
+                .sum();
+    }
 
-        return totalCount;
+    /**
+     * Get the total number of patients expected across all contracts. Until every contract has been added, the
+     * contracts still being fetched are assumed to be the same size as the average of the ones added so far.
+     *
+     * @return the expected number of patients
+     */
+    public int getEstimatedTotalCount() {
+        int totalCount = getTotalCount();
+        int contractsAdded = patientsByContracts.size();
+        if (contractsAdded == 0 || contractsAdded >= expectedContractCount) {
+            return totalCount;
+        }
+        return (int) ((long) totalCount * expectedContractCount / contractsAdded);
     }
 
     /**
@@ -80,7 +229,7 @@ public class ProgressTracker {
      * @return true if it's been long enough
      */
     public boolean isTimeToUpdateDatabase(int reportProgressFrequency) {
-        return processedCount - lastDbUpdateCount >= reportProgressFrequency;
+        return getProcessedCount() - lastDbUpdateCount >= reportProgressFrequency;
     }
 
     /**
@@ -90,22 +239,94 @@ public class ProgressTracker {
      * @return true if it's  been long enough
      */
     public boolean isTimeToLog(int reportProgressLogFrequency) {
-        return processedCount - lastLogUpdateCount >= reportProgressLogFrequency;
+        return getProcessedCount() - lastLogUpdateCount >= reportProgressLogFrequency;
     }
 
     /**
-     * Return the percentage complete on the job by dividing the processed count by the total count of
-     * patients and multiplying by 100 as an integer (0-100)
+     * Return the percentage complete on the job by dividing the processed count by the expected total count of
+     * patients and multiplying by 100 as an integer (0-100). Patients found before any contract was added are
+     * processed before the total is known, so nothing is complete until then.
      *
      * @return the percent complete
      */
     public int getPercentageCompleted() {
-        final int percentCompleted = (processedCount * 100) / getTotalCount();
-        lastDbUpdateCount = processedCount;
-        return percentCompleted;
+        final int processed = getProcessedCount();
+        final int estimatedTotal = getEstimatedTotalCount();
+        lastDbUpdateCount = processed;
+        if (estimatedTotal == 0) {
+            return 0;
+        }
+        return Math.min((processed * 100) / estimatedTotal, 100);
     }
 
+    /**
+     * Whether few enough patients have failed to carry on. Until a contract has been added the failures can't be
+     * compared with the total, so the job carries on.
+     *
+     * @return true if the failures are below the threshold
+     */
     public boolean isErrorCountBelowThreshold() {
-        return (failureCount * 100) / getTotalCount() < failureThreshold;
+        final int totalCount = getTotalCount();
+        return totalCount == 0 || (getFailureCount() * 100) / totalCount < failureThreshold;
+    }
+
+    /**
+     * The counts of one contract of the job, updated by the patient threads as they finish each patient
+     */
+    public final class ContractProgress {
+
+        @Getter
+        private final String contractNumber;
+
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder optOuts = new LongAdder();
+        private final LongAdder eobs = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        private ContractProgress(String contractNumber) {
+            this.contractNumber = contractNumber;
+        }
+
+        public void incrementProcessedCount() {
+            processed.increment();
+            ProgressTracker.this.incrementProcessedCount();
+        }
+
+        public void incrementFailureCount() {
+            failures.increment();
+            ProgressTracker.this.incrementFailureCount();
+        }
+
+        public void incrementOptOutCount() {
+            optOuts.increment();
+            ProgressTracker.this.incrementOptOutCount();
+        }
+
+        public void addEobsWritten(long count) {
+            eobs.add(count);
+            ProgressTracker.this.addEobsWritten(count);
+        }
+
+        public void addBytesWritten(long count) {
+            bytes.add(count);
+            ProgressTracker.this.addBytesWritten(count);
+        }
+
+        public void addPrefetchHiddenMillis(long millis) {
+            ProgressTracker.this.addPrefetchHiddenMillis(millis);
+        }
+
+        private ProgressSnapshot.ContractSnapshot snapshot() {
+            return ProgressSnapshot.ContractSnapshot.builder()
+                    .contractNumber(contractNumber)
+                    .patientCount(getContractCount(contractNumber))
+                    .processedCount(processed.intValue())
+                    .failureCount(failures.intValue())
+                    .optOutCount(optOuts.intValue())
+                    .eobsWritten(eobs.sum())
+                    .bytesWritten(bytes.sum())
+                    .build();
+        }
     }
-}
\ No newline at end of file
+}
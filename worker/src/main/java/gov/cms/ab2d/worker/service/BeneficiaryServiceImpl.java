@@ -1,85 +1,116 @@
 package gov.cms.ab2d.worker.service;
 
-import gov.cms.ab2d.common.model.Beneficiary;
-import gov.cms.ab2d.common.model.Contract;
-import gov.cms.ab2d.common.model.Coverage;
-import gov.cms.ab2d.common.repository.BeneficiaryRepository;
-import gov.cms.ab2d.common.repository.ContractRepository;
 import gov.cms.ab2d.common.repository.CoverageRepository;
+import gov.cms.ab2d.worker.util.PackedPatientIds;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.PreparedStatement;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
-import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class BeneficiaryServiceImpl implements BeneficiaryService {
 
-    private final BeneficiaryRepository beneRepo;
-    private final ContractRepository contractRepo;
+    private static final String INSERT_BENEFICIARIES =
+            "INSERT INTO beneficiary (id, patient_id) " +
+            "SELECT nextval('hibernate_sequence'), patient_id FROM unnest(?) AS patient_id " +
+            "ON CONFLICT (patient_id) DO NOTHING";
+
+    private static final String INSERT_COVERAGE =
+            "INSERT INTO coverage (id, contract_id, beneficiary_id, part_d_month) " +
+            "SELECT nextval('hibernate_sequence'), ?, b.id, ? FROM beneficiary b WHERE b.patient_id = ANY(?) " +
+            "ON CONFLICT (contract_id, beneficiary_id, part_d_month) DO NOTHING";
+
+    private static final String UPSERT_COVERAGE_MONTH =
+            "INSERT INTO coverage_month (contract_id, part_d_month, patient_ids) VALUES (?, ?, ?) " +
+            "ON CONFLICT (contract_id, part_d_month) DO UPDATE SET patient_ids = EXCLUDED.patient_ids";
+
+    // The row is deleted along with the month's coverage when the cache is cleared, see CacheServiceImpl
+    private static final String SELECT_COVERAGE_MONTH =
+            "SELECT patient_ids FROM coverage_month WHERE contract_id = ? AND part_d_month = ?";
+
+    @Value("${contract2bene.caching.batch.size:10000}")
+    private int batchSize;
+
     private final CoverageRepository coverageRepo;
+    private final JdbcTemplate template;
 
 
     /**
      * Given a contractId and a month,
-     * search for bene information in the local db
+     * search for bene information in the local db.
+     * The month is read as a single packed value when one was stored with it. Otherwise the ids are streamed from
+     * the coverage rows straight into the set rather than being loaded into a list first.
      *
      * @param contractId
      * @param month
      * @return
      */
     @Override
+    @Transactional(readOnly = true)
     public Set<String> findPatientIdsInDb(Long contractId, int month) {
-        var patientIds = coverageRepo.findActivePatientIds(contractId, month);
-        return new LinkedHashSet<>(patientIds);
+        final byte[] packed = template.query(SELECT_COVERAGE_MONTH,
+                rs -> rs.next() ? rs.getBytes(1) : null, contractId, month);
+        if (packed != null) {
+            return PackedPatientIds.unpack(packed);
+        }
+
+        final Set<String> patientIds = new LinkedHashSet<>();
+        try (Stream<String> activePatientIds = coverageRepo.streamActivePatientIds(contractId, month)) {
+            activePatientIds.forEach(patientIds::add);
+        }
+        return patientIds;
     }
 
 
 
+    /**
+     * Given a contractId, a month and the patients active in the contract that month, cache them in the local db.
+     *
+     * The rows are written with a few set based statements instead of a select and inserts per patient. New
+     * beneficiaries are inserted in batches, which can safely be repeated or left partly done since existing
+     * beneficiaries are skipped. The coverage for the month is then inserted in a single statement, so a month
+     * is either cached completely or not at all, without holding a transaction open for the whole month. Last,
+     * the month's ids are stored packed into one value so later reads don't need a row per patient.
+     *
+     * @param contractId
+     * @param patientIds
+     * @param month
+     */
     @Override
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void storeBeneficiaries(Long contractId, Set<String> patientIds, int month) {
-        final Contract contract = contractRepo.findById(contractId).get();
-        patientIds.forEach(patientId -> storeBeneficiaryCoverage(contract, patientId, month));
-    }
-
-
-    private void storeBeneficiaryCoverage(Contract contract, String patientId, int month) {
-        final Beneficiary beneficiary = getBeneficiary(patientId);
-        final Coverage coverage = createCoverage(contract, beneficiary, month);
-        contract.getCoverages().add(coverage);
-        beneficiary.getCoverages().add(coverage);
-    }
-
-
-    private Beneficiary getBeneficiary(String patientId) {
-        final Optional<Beneficiary> optPatient = beneRepo.findByPatientId(patientId);
-        if (optPatient.isPresent()) {
-            return optPatient.get();
-        } else {
-            return createBeneficiary(patientId);
+        long start = System.currentTimeMillis();
+
+        final String[] ids = patientIds.toArray(new String[0]);
+        for (int from = 0; from < ids.length; from += batchSize) {
+            final String[] batch = Arrays.copyOfRange(ids, from, Math.min(from + batchSize, ids.length));
+            template.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(INSERT_BENEFICIARIES);
+                statement.setArray(1, connection.createArrayOf("text", batch));
+                return statement;
+            });
         }
 
-    }
-    private Beneficiary createBeneficiary(String patientId) {
-        Beneficiary beneficiary = new Beneficiary();
-        beneficiary.setPatientId(patientId);
-        return beneRepo.save(beneficiary);
-    }
-
-    private Coverage createCoverage(Contract contract, Beneficiary beneficiary, int month) {
-        Coverage coverage = new Coverage();
-        coverage.setContract(contract);
-        coverage.setBeneficiary(beneficiary);
-        coverage.setPartDMonth(month);
-        return coverageRepo.save(coverage);
-    }
+        int coverageCount = template.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(INSERT_COVERAGE);
+            statement.setLong(1, contractId);
+            statement.setInt(2, month);
+            statement.setArray(3, connection.createArrayOf("text", ids));
+            return statement;
+        });
 
+        template.update(UPSERT_COVERAGE_MONTH, contractId, month, PackedPatientIds.pack(patientIds));
 
+        log.info("Cached [{}] of [{}] benes for contract [{}] month [{}] in [{}] ms", coverageCount, ids.length,
+                contractId, month, System.currentTimeMillis() - start);
+    }
 }
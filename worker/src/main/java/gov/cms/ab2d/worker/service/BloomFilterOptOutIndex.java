@@ -0,0 +1,39 @@
+package gov.cms.ab2d.worker.service;
+
+import gov.cms.ab2d.common.model.OptOut;
+import gov.cms.ab2d.common.repository.OptOutRepository;
+import gov.cms.ab2d.common.util.BloomFilter;
+import gov.cms.ab2d.worker.processor.domainmodel.OptOutIndex;
+
+import java.util.List;
+
+/**
+ * An opt-out index backed by the shared Bloom filter of opted out beneficiaries. Most beneficiaries haven't opted
+ * out and the filter answers for them without touching the database. Only the beneficiaries the filter might
+ * contain are looked up, and the lookup decides, so a false positive costs a query but never drops a patient.
+ */
+class BloomFilterOptOutIndex implements OptOutIndex {
+
+    private final BloomFilter bloomFilter;
+    private final OptOutRepository optOutRepository;
+
+    BloomFilterOptOutIndex(BloomFilter bloomFilter, OptOutRepository optOutRepository) {
+        this.bloomFilter = bloomFilter;
+        this.optOutRepository = optOutRepository;
+    }
+
+    @Override
+    public boolean isOptedOut(String ccwId, long asOfEpochDay) {
+        if (ccwId == null || !bloomFilter.mightContain(ccwId)) {
+            return false;
+        }
+
+        List<OptOut> optOuts = optOutRepository.findByCcwId(ccwId);
+        for (OptOut optOut : optOuts) {
+            if (optOut.getEffectiveDate() != null && optOut.getEffectiveDate().toEpochDay() <= asOfEpochDay) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
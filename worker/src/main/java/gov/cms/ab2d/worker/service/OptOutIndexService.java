@@ -0,0 +1,8 @@
+package gov.cms.ab2d.worker.service;
+
+import gov.cms.ab2d.worker.processor.domainmodel.OptOutIndex;
+
+public interface OptOutIndexService {
+
+    OptOutIndex loadIndex();
+}
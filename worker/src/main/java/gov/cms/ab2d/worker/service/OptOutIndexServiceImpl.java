@@ -0,0 +1,57 @@
+package gov.cms.ab2d.worker.service;
+
+import gov.cms.ab2d.common.repository.OptOutRepository;
+import gov.cms.ab2d.common.repository.OptOutRepository.EarliestEffectiveDate;
+import gov.cms.ab2d.common.service.OptOutFilterService;
+import gov.cms.ab2d.common.util.BloomFilter;
+import gov.cms.ab2d.worker.processor.domainmodel.InMemoryOptOutIndex;
+import gov.cms.ab2d.worker.processor.domainmodel.OptOutIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OptOutIndexServiceImpl implements OptOutIndexService {
+
+    @Value("${optout.index.bloom.filter:true}")
+    private boolean useBloomFilter;
+
+    private final OptOutRepository optOutRepository;
+    private final OptOutFilterService optOutFilterService;
+
+    /**
+     * Load an index of the beneficiaries who have opted out so opt-outs can be checked without going to the
+     * database for each patient. The shared Bloom filter is used when it is up to date, otherwise the earliest
+     * effective date of every opt-out is loaded into memory.
+     *
+     * @return the index
+     */
+    @Override
+    public OptOutIndex loadIndex() {
+        long start = System.currentTimeMillis();
+
+        if (useBloomFilter) {
+            Optional<BloomFilter> bloomFilter = optOutFilterService.findCurrentFilter();
+            if (bloomFilter.isPresent()) {
+                log.info("Loaded opt-out filter of [{}] bytes in [{}] ms", bloomFilter.get().getSizeInBytes(),
+                        System.currentTimeMillis() - start);
+                return new BloomFilterOptOutIndex(bloomFilter.get(), optOutRepository);
+            }
+        }
+
+        List<EarliestEffectiveDate> effectiveDates = optOutRepository.findEarliestEffectiveDates();
+        InMemoryOptOutIndex index = new InMemoryOptOutIndex(effectiveDates.size());
+        for (EarliestEffectiveDate effectiveDate : effectiveDates) {
+            index.add(effectiveDate.getCcwId(), effectiveDate.getEffectiveDate());
+        }
+
+        log.info("Loaded [{}] opt-outs in [{}] ms", index.size(), System.currentTimeMillis() - start);
+        return index;
+    }
+}
@@ -0,0 +1,104 @@
+package gov.cms.ab2d.worker.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Packs the patient ids active in a contract for a month into a single byte array so a cached month can be read
+ * back as one value instead of a row per patient.
+ *
+ * Numeric ids are sorted and written as the gaps between them, each as a variable length number, so a typical id
+ * takes two or three bytes. Ids which are not numbers are written after them as length prefixed UTF-8.
+ */
+public final class PackedPatientIds {
+
+    private PackedPatientIds() {
+    }
+
+    /**
+     * @param patientIds - the beneficiary ids active in the month
+     * @return the ids packed into bytes
+     */
+    public static byte[] pack(Set<String> patientIds) {
+        long[] numericIds = new long[patientIds.size()];
+        int numericCount = 0;
+        List<String> otherIds = new ArrayList<>();
+        for (String patientId : patientIds) {
+            long id = PatientIds.parse(patientId);
+            if (id == PatientIds.NOT_NUMERIC) {
+                otherIds.add(patientId);
+            } else {
+                numericIds[numericCount++] = id;
+            }
+        }
+        Arrays.sort(numericIds, 0, numericCount);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(numericCount * 3 + otherIds.size() * 16 + 8);
+        writeVarLong(out, numericCount);
+        long previous = 0;
+        for (int i = 0; i < numericCount; i++) {
+            // the first id may be negative so it is zigzag encoded, the gaps after it never are
+            long gap = i == 0 ? (numericIds[0] << 1) ^ (numericIds[0] >> 63) : numericIds[i] - previous;
+            writeVarLong(out, gap);
+            previous = numericIds[i];
+        }
+
+        writeVarLong(out, otherIds.size());
+        for (String otherId : otherIds) {
+            byte[] bytes = otherId.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param packed - bytes from {@link #pack(Set)}
+     * @return the beneficiary ids, numeric ids first in ascending order
+     */
+    public static Set<String> unpack(byte[] packed) {
+        int[] position = {0};
+
+        int numericCount = (int) readVarLong(packed, position);
+        Set<String> patientIds = new LinkedHashSet<>(Math.max(16, (int) (numericCount / .75f) + 1));
+        long id = 0;
+        for (int i = 0; i < numericCount; i++) {
+            long gap = readVarLong(packed, position);
+            id = i == 0 ? (gap >>> 1) ^ -(gap & 1) : id + gap;
+            patientIds.add(Long.toString(id));
+        }
+
+        int otherCount = (int) readVarLong(packed, position);
+        for (int i = 0; i < otherCount; i++) {
+            int length = (int) readVarLong(packed, position);
+            patientIds.add(new String(packed, position[0], length, StandardCharsets.UTF_8));
+            position[0] += length;
+        }
+        return patientIds;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] packed, int[] position) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = packed[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -0,0 +1,45 @@
+package gov.cms.ab2d.worker.util;
+
+/**
+ * Beneficiary ids are numbers sent as strings. Parsing them into longs lets large collections of ids be kept in
+ * primitive arrays instead of as strings.
+ */
+public final class PatientIds {
+
+    // Returned for any id which can't be turned back into exactly the same string
+    public static final long NOT_NUMERIC = Long.MIN_VALUE;
+
+    // The most digits which always fit in a long
+    private static final int MAX_DIGITS = 18;
+
+    private PatientIds() {
+    }
+
+    /**
+     * Parse the id as a long without creating any objects. Only ids which {@link Long#toString(long)} gives back
+     * unchanged are parsed, so the number can always stand in for the id.
+     *
+     * @param patientId - the beneficiary id
+     * @return the id as a number or NOT_NUMERIC if it isn't a number that fits in a long
+     */
+    public static long parse(String patientId) {
+        int length = patientId.length();
+        int start = length > 0 && patientId.charAt(0) == '-' ? 1 : 0;
+        if (length == start || length - start > MAX_DIGITS) {
+            return NOT_NUMERIC;
+        }
+        // Leading zeros and "-0" would make different ids parse to the same number
+        if (patientId.charAt(start) == '0' && (length - start > 1 || start == 1)) {
+            return NOT_NUMERIC;
+        }
+        long value = 0;
+        for (int i = start; i < length; i++) {
+            char c = patientId.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_NUMERIC;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return start == 1 ? -value : value;
+    }
+}
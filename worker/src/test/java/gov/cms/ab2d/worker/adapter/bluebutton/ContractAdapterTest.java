@@ -23,9 +23,13 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.Instant;
 import java.time.Month;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.hamcrest.CoreMatchers.endsWith;
 import static org.hamcrest.CoreMatchers.is;
@@ -60,7 +64,8 @@ class ContractAdapterTest {
                 contractRepository,
                 beneficiaryService,
                 propertiesService,
-                eventLogger
+                eventLogger,
+                Runnable::run
         );
 
         bundle = createBundle();
@@ -101,12 +106,17 @@ class ContractAdapterTest {
     }
 
     @Test
-    void GivenPatientActiveInJanAndFeb_ShouldReturnTwoRowsInDateRangesUnderContract() {
+    void GivenPatientActiveInJanAndFeb_ShouldReturnOneMergedRowInDateRangesUnderContract() {
         var response = cut.getPatients(contractNumber, Month.FEBRUARY.getValue());
 
         var patient0 = response.getPatients().get(0);
         assertThat(patient0.getPatientId(), is("ccw_patient_000"));
-        assertThat(patient0.getDateRangesUnderContract().size(), is(2));
+        assertThat(patient0.getDateRangesUnderContract().size(), is(1));
+
+        //date range runs from the start of January to the end of February
+        var dateRange = patient0.getDateRangesUnderContract().get(0);
+        assertThat(dateRange.getStart().getMonth(), is(Calendar.JANUARY));
+        assertThat(dateRange.getEnd().getMonth(), is(Calendar.FEBRUARY));
         verify(client, times(2)).requestPartDEnrolleesFromServer(anyString(), anyInt());
         verify(client, never()).requestNextBundleFromServer(Mockito.any(Bundle.class));
     }
@@ -125,10 +135,10 @@ class ContractAdapterTest {
 
         var response = cut.getPatients(contractNumber, Month.MARCH.getValue());
 
-        //expect patient0 to be active in all 3 months
+        //expect patient0 to be active in all 3 months, which is a single date range
         var patient0 = response.getPatients().get(0);
         assertThat(patient0.getPatientId(), is("ccw_patient_000"));
-        assertThat(patient0.getDateRangesUnderContract().size(), is(3));
+        assertThat(patient0.getDateRangesUnderContract().size(), is(1));
 
         //expect patient1 to be active in only 2 months
         var patient1 = response.getPatients().get(1);
@@ -165,10 +175,10 @@ class ContractAdapterTest {
         var patients = response.getPatients();
         assertThat(patients.size(), is(2));
 
-        //1st patient has 2 rows in date ranges under contract
+        //1st patient has 1 row covering both months in date ranges under contract
         var patient0 = patients.get(0);
         assertThat(patient0.getPatientId(), is("ccw_patient_000"));
-        assertThat(patient0.getDateRangesUnderContract().size(), is(2));
+        assertThat(patient0.getDateRangesUnderContract().size(), is(1));
 
         //2nd patient has 1 row in date ranges under contract
         var patient1 = patients.get(1);
@@ -200,18 +210,19 @@ class ContractAdapterTest {
 
         var patient0 = patients.get(0);
         assertThat(patient0.getPatientId(), is("ccw_patient_000"));
-        assertThat(patient0.getDateRangesUnderContract().size(), is(2));
+        assertThat(patient0.getDateRangesUnderContract().size(), is(1));
 
         var patient1 = patients.get(1);
         assertThat(patient1.getPatientId(), is("ccw_patient_001"));
         assertThat(patient1.getDateRangesUnderContract().size(), is(1));
+        assertThat(patient1.getDateRangesUnderContract().get(0).getEnd().getMonth(), is(Calendar.JANUARY));
 
         verify(client, times(2)).requestPartDEnrolleesFromServer(anyString(), anyInt());
         verify(client, never()).requestNextBundleFromServer(Mockito.any(Bundle.class));
     }
 
     @Test
-    void GivenTwoPatientsActiveInJanAndFeb_ShouldReturnTwoPatientRowsEachWithTwoRowsInDateRangesUnderContract() {
+    void GivenTwoPatientsActiveInJanAndFeb_ShouldReturnTwoPatientRowsEachWithOneRowInDateRangesUnderContract() {
         var entries = bundle.getEntry();
         entries.add(createBundleEntry("ccw_patient_001"));
 
@@ -222,16 +233,35 @@ class ContractAdapterTest {
 
         var patient0 = patients.get(0);
         assertThat(patient0.getPatientId(), is("ccw_patient_000"));
-        assertThat(patient0.getDateRangesUnderContract().size(), is(2));
+        assertThat(patient0.getDateRangesUnderContract().size(), is(1));
 
         var patient1 = patients.get(1);
         assertThat(patient1.getPatientId(), is("ccw_patient_001"));
-        assertThat(patient1.getDateRangesUnderContract().size(), is(2));
+        assertThat(patient1.getDateRangesUnderContract().size(), is(1));
 
         verify(client, times(2)).requestPartDEnrolleesFromServer(anyString(), anyInt());
         verify(client, never()).requestNextBundleFromServer(Mockito.any(Bundle.class));
     }
 
+    @Test
+    void GivenMultiplePages_ShouldTellTheCallerAboutEachPageAsItIsRetrieved() {
+        var bundle1 = bundle.copy();
+
+        var entries = bundle1.getEntry();
+        entries.add(createBundleEntry("ccw_patient_001"));
+        bundle1.addLink(addNextLink());
+
+        var bundle2 = createBundle("ccw_patient_002");
+
+        when(client.requestPartDEnrolleesFromServer(anyString(), anyInt())).thenReturn(bundle1);
+        when(client.requestNextBundleFromServer(Mockito.any(Bundle.class))).thenReturn(bundle2);
+
+        var pages = new ArrayList<Set<String>>();
+        cut.getPatients(contractNumber, Month.JANUARY.getValue(), patientIds -> pages.add(Set.copyOf(patientIds)));
+
+        assertThat(pages, is(List.of(Set.of("ccw_patient_000", "ccw_patient_001"), Set.of("ccw_patient_002"))));
+    }
+
     @Test
     void GivenMultiplePages_ShouldProcessAllPages() {
         var bundle1 = bundle.copy();
@@ -266,6 +296,40 @@ class ContractAdapterTest {
         verify(client).requestNextBundleFromServer(Mockito.any(Bundle.class));
     }
 
+    @Test
+    void GivenMonthsFetchedConcurrently_ShouldMergeMonthsInOrder() {
+        // month N has patients 1..N so patient N joins in month N
+        when(client.requestPartDEnrolleesFromServer(anyString(), anyInt())).thenAnswer(invocation -> {
+            int month = invocation.getArgument(1);
+            var monthBundle = new Bundle();
+            for (int i = month; i >= 1; i--) {
+                monthBundle.getEntry().add(createBundleEntry("ccw_patient_00" + i));
+            }
+            return monthBundle;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            cut = new ContractAdapterImpl(client, contractRepository, beneficiaryService, propertiesService,
+                    eventLogger, executor);
+
+            var response = cut.getPatients(contractNumber, Month.MARCH.getValue());
+
+            var patients = response.getPatients();
+            assertThat(patients.size(), is(3));
+            for (int i = 0; i < 3; i++) {
+                var patient = patients.get(i);
+                assertThat(patient.getPatientId(), is("ccw_patient_00" + (i + 1)));
+                assertThat(patient.getDateRangesUnderContract().size(), is(1));
+                assertThat(patient.getDateRangesUnderContract().get(0).getStart().getMonth(), is(Calendar.JANUARY + i));
+                assertThat(patient.getDateRangesUnderContract().get(0).getEnd().getMonth(), is(Calendar.MARCH));
+            }
+            verify(client, times(3)).requestPartDEnrolleesFromServer(anyString(), anyInt());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     void GivenDuplicatePatientRowsFromBFD_ShouldEliminateDuplicates() {
         var entries = bundle.getEntry();
@@ -74,7 +74,7 @@ public class LoadPatientsByContractLoggingTest {
     @Test
     public void testLogging() {
         ContractAdapterImpl cai = new ContractAdapterImpl(bfdClient, contractRepo, beneficiaryService,
-                propertiesService, logManager);
+                propertiesService, logManager, Runnable::run);
 
         String contractId = "C1234";
         Bundle bundle = createBundle();
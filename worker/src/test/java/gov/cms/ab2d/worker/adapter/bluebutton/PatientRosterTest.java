@@ -0,0 +1,78 @@
+package gov.cms.ab2d.worker.adapter.bluebutton;
+
+import gov.cms.ab2d.filter.FilterOutByDate;
+import gov.cms.ab2d.filter.FilterOutByDate.DateRange;
+import gov.cms.ab2d.filter.FilterOutByDate.MonthsUnderContract;
+import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse.PatientDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatientRosterTest {
+
+    private static final int YEAR = 2020;
+
+    @Test
+    void patientsAreReadInTheOrderTheyWereAdded() {
+        PatientRoster roster = PatientRoster.builder(2)
+                .add("-19990000000003", 0b1)
+                .add("ccw_id_1", 0b10)
+                .add("-19990000000001", 0b1)
+                .add("007", 0b1)
+                .build(YEAR);
+
+        assertEquals(4, roster.size());
+        assertEquals(List.of("-19990000000003", "ccw_id_1", "-19990000000001", "007"),
+                List.of(roster.get(0).getPatientId(), roster.get(1).getPatientId(),
+                        roster.get(2).getPatientId(), roster.get(3).getPatientId()));
+    }
+
+    @Test
+    void consecutiveMonthsAreMergedIntoOneDateRange() throws Exception {
+        PatientRoster roster = PatientRoster.builder(1)
+                .add("-19990000000001", 0b1011)
+                .build(YEAR);
+
+        List<DateRange> dateRanges = roster.get(0).getDateRangesUnderContract();
+        assertEquals(FilterOutByDate.getDateRanges(List.of(1, 2, 4), YEAR), dateRanges);
+        assertEquals(2, dateRanges.size());
+        assertEquals(0b1011, roster.getMonths(0));
+        assertThrows(UnsupportedOperationException.class, () -> dateRanges.add(dateRanges.get(0)));
+    }
+
+    @Test
+    void patientsActiveInTheSameMonthsShareTheirMonths() {
+        PatientRoster roster = PatientRoster.builder(0)
+                .add("-19990000000001", 0b111)
+                .add("-19990000000002", 0b111)
+                .add("-19990000000003", 0b110)
+                .build(YEAR);
+
+        PatientDTO first = roster.get(0);
+        assertSame(first.getMonthsUnderContract(), roster.get(1).getMonthsUnderContract());
+        assertEquals(new MonthsUnderContract(YEAR, 0b111), first.getMonthsUnderContract());
+        assertEquals(new MonthsUnderContract(YEAR, 0b110), roster.get(2).getMonthsUnderContract());
+    }
+
+    @Test
+    void rosterGrowsPastTheExpectedSize() {
+        PatientRoster.Builder builder = PatientRoster.builder(1);
+        for (int i = 0; i < 1000; i++) {
+            builder.add(i % 10 == 0 ? "id_" + i : "-" + (19990000000000L + i), 1 << (i % 12));
+        }
+        PatientRoster roster = builder.build(YEAR);
+
+        assertEquals(1000, roster.size());
+        for (int i = 0; i < 1000; i++) {
+            String expectedId = i % 10 == 0 ? "id_" + i : "-" + (19990000000000L + i);
+            assertEquals(expectedId, roster.getPatientId(i));
+            assertEquals(1 << (i % 12), roster.getMonths(i));
+        }
+        assertTrue(roster.stream().allMatch(patient -> patient.getDateRangesUnderContract().size() == 1));
+    }
+}
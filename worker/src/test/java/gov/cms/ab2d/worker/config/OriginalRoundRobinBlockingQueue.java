@@ -0,0 +1,321 @@
+package gov.cms.ab2d.worker.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * The round robin queue as it was before its categories were served from a ring and before it had scheduling
+ * policies. It lists the categories on every take and sums every category for its size. Kept unchanged, apart
+ * from its name, only so {@link RoundRobinBlockingQueueBenchmark} can compare the two.
+ */
+@Slf4j
+public class OriginalRoundRobinBlockingQueue<E> implements BlockingQueue<E> {
+
+    // The individual category queues
+    private final Map<String, Deque<E>> categoryQueues =
+            Collections.synchronizedMap(new LinkedHashMap<>());
+    // The current category index
+    private volatile int currentIndex;
+    // Main lock guarding all access
+    private final ReentrantLock lock = new ReentrantLock();
+    // Not empty condition on the lock
+    private final Condition notEmpty = lock.newCondition();
+
+    public static final ThreadLocal<String> CATEGORY_HOLDER = new ThreadLocal<>();
+
+    // New code to add items
+    private boolean add(String category, E e) {
+        log.debug("Adding {} - {}", category, e);
+        Assert.notNull(category, "Contract number must be set via CATEGORY_HOLDER prior to using this method");
+        lock.lock();
+        try {
+            Deque<E> categoryQueue = categoryQueues.computeIfAbsent(category, k -> new LinkedList<>());
+            categoryQueue.add(e);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean add(E e) {
+        return this.add(CATEGORY_HOLDER.get(), e);
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            categoryQueues.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            for (Map.Entry<String, Deque<E>> entry : categoryQueues.entrySet()) {
+                if (entry.getValue().contains(o)) {
+                    return true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return false;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        if (c == this) {
+            throw new IllegalArgumentException("Cannot drain to itself");
+        }
+        lock.lock();
+        try {
+            int size = size();
+            for (Map.Entry<String, Deque<E>> entry : categoryQueues.entrySet()) {
+                c.addAll(entry.getValue());
+                entry.getValue().clear();
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        throw new UnsupportedOperationException("Not needed");
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        throw new UnsupportedOperationException("Not needed");
+    }
+
+    @Override
+    public boolean offer(E e) {
+        try {
+            return add(e);
+        } catch (IllegalStateException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public E remove() {
+        E next = getNext();
+        if (next == null) {
+            throw new NoSuchElementException("No elements left in the queue");
+        }
+        return next;
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) {
+        throw new UnsupportedOperationException("Not needed");
+    }
+
+    @Override
+    public E peek() {
+        return peekNext();
+    }
+
+    public E poll() {
+        return getNext();
+    }
+
+    @Override
+    public E element() {
+        var next = peekNext();
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        return next;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size() == 0) {
+                if (nanos <= 0L) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return getNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(E e) {
+        add(e);
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            for (Map.Entry<String, Deque<E>> entry : categoryQueues.entrySet()) {
+                final Deque<E> queue = categoryQueues.get(entry.getKey());
+                if (queue.remove(o)) {
+                    if (queue.isEmpty()) {
+                        categoryQueues.remove(entry.getKey());
+                    }
+                    return true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return false;
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        throw new UnsupportedOperationException("Not needed");
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        throw new UnsupportedOperationException("Not needed");
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException("Not needed");
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException("Not needed");
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return categoryQueues.values().stream().map(queue -> queue.size())
+                    .reduce(0, Integer::sum);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            while (size() == 0) {
+                notEmpty.await();
+            }
+            return getNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        throw new UnsupportedOperationException("Not needed");
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        throw new UnsupportedOperationException("Not needed");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(this.getClass().getSimpleName() + ": ");
+        for (String category : categoryQueues.keySet()) {
+            builder.append(category).append(" with ").append(categoryQueues.get(category).size())
+                    .append(" Futures; ");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Get the next round robin Object
+     *
+     * @return
+     */
+    private E getNext() {
+        lock.lock();
+        try {
+            if (size() == 0) {
+                return null;
+            }
+            if (currentIndex >= categoryQueues.keySet().size()) {
+                currentIndex = 0;
+            }
+            String currentContract =
+                    categoryQueues.keySet().stream().collect(Collectors.toList()).get(currentIndex);
+            Deque<E> queue = categoryQueues.get(currentContract);
+            E val = queue.poll();
+            if (queue.size() == 0) {
+                // No more requests so remove category. We don't have to increment index since we removed the item at the
+                // current index
+                categoryQueues.remove(currentContract);
+            } else {
+                currentIndex++;
+            }
+            return val;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private E peekNext() {
+        lock.lock();
+        try {
+            if (size() == 0) {
+                return null;
+            }
+            if (currentIndex >= categoryQueues.keySet().size()) {
+                currentIndex = 0;
+            }
+            String currentContract =
+                    categoryQueues.keySet().stream().collect(Collectors.toList()).get(currentIndex);
+            return categoryQueues.get(currentContract).peek();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
\ No newline at end of file
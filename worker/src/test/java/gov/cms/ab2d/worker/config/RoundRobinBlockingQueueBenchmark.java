@@ -0,0 +1,159 @@
+package gov.cms.ab2d.worker.config;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how many tasks {@link RoundRobinBlockingQueue} hands off while 64 threads add tasks and 64 threads take
+ * them, the way the patient threads and the contract threads share it, so the time spent waiting for its lock is
+ * part of the result. The tasks are added to the categories in turn. Each policy is measured along with the queue
+ * as it was originally, {@link OriginalRoundRobinBlockingQueue}, which only had round robin.
+ *
+ * A turn which finds nothing to take counts as an operation too, so compare the "taken" result, the tasks taken
+ * in each iteration, rather than the operations. The number of tasks waiting is capped, so when the threads taking
+ * fall behind the threads adding skip a turn rather than grow the queue without bound.
+ *
+ * Not run with the tests. After mvn test-compile run main, or org.openjdk.jmh.Main with the benchmark name, on
+ * the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundRobinBlockingQueueBenchmark {
+
+    // The tasks each category has waiting before the threads start
+    private static final int TASKS_PER_CATEGORY = 4;
+
+    // The most tasks waiting at once
+    private static final int MAX_WAITING = 100_000;
+
+    private static final Object TASK = new Object();
+
+    @Param({"1", "10", "100", "1000"})
+    private int categoryCount;
+
+    @Param({"ORIGINAL", "ROUND_ROBIN", "DEFICIT_ROUND_ROBIN", "SHORTEST_REMAINING_WORK_FIRST"})
+    private String implementation;
+
+    private BlockingQueue<Object> queue;
+    private boolean original;
+    private String[] categories;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger producers = new AtomicInteger();
+
+    /**
+     * The category a thread adding tasks adds to next. The threads start on different categories.
+     */
+    @State(Scope.Thread)
+    public static class Producer {
+        private int next;
+
+        @Setup(Level.Iteration)
+        public void start(RoundRobinBlockingQueueBenchmark benchmark) {
+            next = benchmark.producers.getAndIncrement() % benchmark.categoryCount;
+        }
+    }
+
+    /**
+     * The tasks a thread actually added or took, as opposed to the turns it had
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counts {
+        public long added;
+        public long taken;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            added = 0;
+            taken = 0;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        original = "ORIGINAL".equals(implementation);
+        if (original) {
+            queue = new OriginalRoundRobinBlockingQueue<>();
+        } else {
+            var roundRobinQueue = new RoundRobinBlockingQueue<>();
+            roundRobinQueue.setScheduling(SchedulingPolicy.valueOf(implementation), Map.of());
+            queue = roundRobinQueue;
+        }
+
+        categories = new String[categoryCount];
+        for (int i = 0; i < categoryCount; i++) {
+            categories[i] = String.format("C%05d", i);
+            setCategory(categories[i]);
+            for (int j = 0; j < TASKS_PER_CATEGORY; j++) {
+                queue.add(TASK);
+            }
+        }
+        waiting.set(categoryCount * TASKS_PER_CATEGORY);
+        producers.set(0);
+    }
+
+    @Benchmark
+    @Group("handOff")
+    @GroupThreads(64)
+    public void add(Producer producer, Counts counts) {
+        if (waiting.get() >= MAX_WAITING) {
+            return;
+        }
+        waiting.incrementAndGet();
+        setCategory(categories[producer.next]);
+        producer.next = (producer.next + 1) % categoryCount;
+        queue.add(TASK);
+        counts.added++;
+    }
+
+    @Benchmark
+    @Group("handOff")
+    @GroupThreads(64)
+    public Object take(Counts counts) {
+        Object task = queue.poll();
+        if (task != null) {
+            waiting.decrementAndGet();
+            counts.taken++;
+        }
+        return task;
+    }
+
+    private void setCategory(String category) {
+        if (original) {
+            OriginalRoundRobinBlockingQueue.CATEGORY_HOLDER.set(category);
+        } else {
+            RoundRobinBlockingQueue.CATEGORY_HOLDER.set(category);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RoundRobinBlockingQueueBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
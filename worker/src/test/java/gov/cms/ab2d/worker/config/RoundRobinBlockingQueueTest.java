@@ -6,8 +6,16 @@ import org.junit.jupiter.api.Test;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -185,4 +193,183 @@ public class RoundRobinBlockingQueueTest {
         assertEquals(future2, queue.peek());
         RoundRobinBlockingQueue.CATEGORY_HOLDER.remove();
     }
-}
\ No newline at end of file
+
+    @Test
+    void categoriesAreServedInTurn() {
+        RoundRobinBlockingQueue<String> queue = new RoundRobinBlockingQueue<>();
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("0001");
+        queue.add("a1");
+        queue.add("a2");
+        queue.add("a3");
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("0002");
+        queue.add("b1");
+        assertEquals("a1", queue.poll());
+
+        // A category getting its first task joins the back of the round
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("0003");
+        queue.add("c1");
+        queue.add("c2");
+
+        List<String> served = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            served.add(queue.poll());
+        }
+        assertEquals(List.of("b1", "a2", "c1", "a3", "c2"), served);
+        assertNull(queue.poll());
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.remove();
+    }
+
+    @Test
+    void weightedCategoriesAreServedTheirWeightInTurn() {
+        RoundRobinBlockingQueue<String> queue = new RoundRobinBlockingQueue<>();
+        queue.setScheduling(SchedulingPolicy.DEFICIT_ROUND_ROBIN, SchedulingPolicy.parseWeights("job1=3,S0002=2"));
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("job1");
+        addAll(queue, "a1", "a2", "a3", "a4");
+        // Weighted through its contract
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("job2");
+        RoundRobinBlockingQueue.WEIGHT_KEYS_HOLDER.set(List.of("S0002", "1234"));
+        addAll(queue, "b1", "b2", "b3");
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("job3");
+        RoundRobinBlockingQueue.WEIGHT_KEYS_HOLDER.remove();
+        addAll(queue, "c1", "c2");
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.remove();
+
+        assertEquals(List.of("a1", "a2", "a3", "b1", "b2", "c1", "a4", "b3", "c2"), pollAll(queue));
+    }
+
+    @Test
+    void categoriesWithTheFewestTasksAreServedFirst() {
+        RoundRobinBlockingQueue<String> queue = new RoundRobinBlockingQueue<>();
+        queue.setScheduling(SchedulingPolicy.SHORTEST_REMAINING_WORK_FIRST, Map.of());
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("job1");
+        addAll(queue, "a1", "a2", "a3");
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("job2");
+        addAll(queue, "b1");
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("job3");
+        addAll(queue, "c1", "c2");
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.remove();
+
+        assertEquals("b1", queue.peek());
+        assertTrue(queue.remove("c2"));
+        assertEquals(List.of("b1", "c1", "a1", "a2", "a3"), pollAll(queue));
+    }
+
+    @Test
+    void shortestRemainingWorkFirstRanksByTheWorkLeftWhenItIsGiven() {
+        RoundRobinBlockingQueue<String> queue = new RoundRobinBlockingQueue<>();
+        queue.setScheduling(SchedulingPolicy.SHORTEST_REMAINING_WORK_FIRST, Map.of());
+        // Only two tasks waiting at a time but many more to come
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("job1");
+        RoundRobinBlockingQueue.REMAINING_WORK_HOLDER.set(1000);
+        addAll(queue, "a1", "a2");
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("job2");
+        RoundRobinBlockingQueue.REMAINING_WORK_HOLDER.set(3);
+        addAll(queue, "b1", "b2", "b3");
+        // Falls back to its tasks waiting
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("job3");
+        RoundRobinBlockingQueue.REMAINING_WORK_HOLDER.remove();
+        addAll(queue, "c1", "c2", "c3", "c4");
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.remove();
+
+        assertEquals(List.of("b1", "b2", "b3", "c1", "c2", "c3", "c4", "a1", "a2"), pollAll(queue));
+    }
+
+    @Test
+    void tasksWaitingKeepTheirOrderWhenThePolicyChanges() {
+        RoundRobinBlockingQueue<String> queue = new RoundRobinBlockingQueue<>();
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("job1");
+        addAll(queue, "a1", "a2", "a3");
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("job2");
+        addAll(queue, "b1", "b2");
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.remove();
+        assertEquals("a1", queue.poll());
+
+        queue.setScheduling(SchedulingPolicy.DEFICIT_ROUND_ROBIN, Map.of("job2", 2));
+        assertEquals(SchedulingPolicy.DEFICIT_ROUND_ROBIN, queue.getPolicy());
+        assertEquals(4, queue.size());
+        assertEquals(List.of("b1", "b2", "a2", "a3"), pollAll(queue));
+    }
+
+    @Test
+    void schedulingPropertiesAreParsed() {
+        assertEquals(SchedulingPolicy.SHORTEST_REMAINING_WORK_FIRST,
+                SchedulingPolicy.fromProperty(" shortest_remaining_work_first "));
+        assertEquals(SchedulingPolicy.ROUND_ROBIN, SchedulingPolicy.fromProperty("LONGEST_FIRST"));
+        assertEquals(SchedulingPolicy.ROUND_ROBIN, SchedulingPolicy.fromProperty(null));
+
+        assertEquals(Map.of("S1234", 5, "Z0001", 2), SchedulingPolicy.parseWeights("S1234=5, Z0001 = 2,bad,Z0002=0"));
+        assertTrue(SchedulingPolicy.parseWeights("").isEmpty());
+    }
+
+    private static void addAll(RoundRobinBlockingQueue<String> queue, String... tasks) {
+        for (String task : tasks) {
+            queue.add(task);
+        }
+    }
+
+    private static List<String> pollAll(RoundRobinBlockingQueue<String> queue) {
+        List<String> served = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            served.add(queue.poll());
+        }
+        return served;
+    }
+
+    @Test
+    void everyTaskIsTakenOnceByManyThreads() throws Exception {
+        final int producers = 64;
+        final int consumers = 64;
+        final int tasksPerProducer = 2_000;
+        final int total = producers * tasksPerProducer;
+
+        RoundRobinBlockingQueue<Integer> queue = new RoundRobinBlockingQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger taken = new AtomicInteger();
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                final int producer = p;
+                futures.add(executor.submit(() -> {
+                    RoundRobinBlockingQueue.CATEGORY_HOLDER.set("contract" + (producer % 16));
+                    start.await();
+                    for (int i = 0; i < tasksPerProducer; i++) {
+                        queue.put(producer * tasksPerProducer + i);
+                    }
+                    RoundRobinBlockingQueue.CATEGORY_HOLDER.remove();
+                    return null;
+                }));
+            }
+            for (int c = 0; c < consumers; c++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    while (taken.get() < total) {
+                        Integer task = queue.poll(10, TimeUnit.MILLISECONDS);
+                        if (task != null) {
+                            assertTrue(seen.add(task), "Task " + task + " was taken twice");
+                            taken.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            log.info("{} tasks handed between {} threads in {} ms", total, producers + consumers,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(total, seen.size());
+        assertEquals(0, queue.size());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.peek());
+    }
+}
@@ -7,12 +7,15 @@ import gov.cms.ab2d.common.model.OptOut;
 import gov.cms.ab2d.common.model.Sponsor;
 import gov.cms.ab2d.common.model.User;
 import gov.cms.ab2d.common.repository.JobRepository;
-import gov.cms.ab2d.common.repository.OptOutRepository;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.filter.FilterOutByDate;
 import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse;
 import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse.PatientDTO;
 import gov.cms.ab2d.worker.processor.domainmodel.ContractData;
+import gov.cms.ab2d.worker.processor.domainmodel.ContractPatientsFetch;
+import gov.cms.ab2d.worker.processor.domainmodel.InMemoryOptOutIndex;
+import gov.cms.ab2d.worker.processor.domainmodel.OptOutIndex;
+import gov.cms.ab2d.worker.processor.domainmodel.PatientClaimsRequest;
 import gov.cms.ab2d.worker.processor.domainmodel.ProgressTracker;
 import gov.cms.ab2d.worker.processor.stub.PatientClaimsProcessorStub;
 import gov.cms.ab2d.worker.service.FileService;
@@ -37,14 +40,22 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static gov.cms.ab2d.worker.processor.StreamHelperImpl.FileOutputType.NDJSON;
 import static java.lang.Boolean.TRUE;
 import static org.hamcrest.CoreMatchers.startsWith;
 import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -63,7 +74,6 @@ class ContractProcessorUnitTest {
 
     @Mock private FileService fileService;
     @Mock private JobRepository jobRepository;
-    @Mock private OptOutRepository optOutRepository;
     @Mock private LogManager eventLogger;
     private PatientClaimsProcessor patientClaimsProcessor = spy(PatientClaimsProcessorStub.class);
 
@@ -78,8 +88,9 @@ class ContractProcessorUnitTest {
                 fileService,
                 jobRepository,
                 patientClaimsProcessor,
-                optOutRepository,
-                eventLogger
+                eventLogger,
+                Runnable::run,
+                Runnable::run
         );
 
         ReflectionTestUtils.setField(cut, "cancellationCheckFrequency", 2);
@@ -103,8 +114,10 @@ class ContractProcessorUnitTest {
                 .patientsByContract(patientsByContract)
                 .failureThreshold(10)
                 .build();
+        var patientsFetch = new ContractPatientsFetch(0);
+        patientsFetch.complete(patientsByContract, null);
         contractData = new ContractData(contract, progressTracker, contract.getAttestedOn(), job.getSince(),
-                job.getUser() != null ? job.getUser().getUsername() : null);
+                job.getUser() != null ? job.getUser().getUsername() : null, new InMemoryOptOutIndex(), patientsFetch);
     }
 
 
@@ -127,11 +140,12 @@ class ContractProcessorUnitTest {
     @DisplayName("When patient has opted out, their record will be skipped.")
     void processJob_whenSomePatientHasOptedOut_ShouldSkipThatPatientRecord() throws Exception {
 
+        // patient ids are random so leave out any opt-out which would also opt out the first patient
         final List<OptOut> optOuts = getOptOutRows(patientsByContract);
-        when(optOutRepository.findByCcwId(anyString()))
-                .thenReturn(new ArrayList<>())
-                .thenReturn(Arrays.asList(optOuts.get(1)))
-                .thenReturn(Arrays.asList(optOuts.get(2)));
+        final String firstPatientId = optOuts.get(0).getCcwId();
+        contractData = createContractData(optOuts.subList(1, 3).stream()
+                .filter(optOut -> !optOut.getCcwId().equals(firstPatientId))
+                .collect(Collectors.toList()));
 
         var jobOutputs = cut.process(outputDir, contractData, NDJSON);
 
@@ -144,10 +158,7 @@ class ContractProcessorUnitTest {
     void processJob_whenAllPatientsHaveOptedOut_ShouldThrowException() throws Exception {
 
         final List<OptOut> optOuts = getOptOutRows(patientsByContract);
-        when(optOutRepository.findByCcwId(anyString()))
-                .thenReturn(Arrays.asList(optOuts.get(0)))
-                .thenReturn(Arrays.asList(optOuts.get(1)))
-                .thenReturn(Arrays.asList(optOuts.get(2)));
+        contractData = createContractData(optOuts);
 
         // Test data has 3 patientIds each of whom has opted out.
         // So the patientsClaimsProcessor should never be called.
@@ -179,6 +190,131 @@ class ContractProcessorUnitTest {
         verify(patientClaimsProcessor, atLeast(1)).process(any());
     }
 
+    @Test
+    @DisplayName("When a patient's opt-out is not effective yet, their record is processed.")
+    void processJob_whenOptOutIsInTheFuture_ShouldProcessThatPatientRecord() throws Exception {
+
+        final List<OptOut> optOuts = getOptOutRows(patientsByContract);
+        optOuts.forEach(optOut -> optOut.setEffectiveDate(LocalDate.now().plusDays(1)));
+        contractData = createContractData(optOuts);
+
+        var jobOutputs = cut.process(outputDir, contractData, NDJSON);
+
+        assertFalse(jobOutputs.isEmpty());
+        verify(patientClaimsProcessor, times(3)).process(any());
+    }
+
+    @Test
+    @DisplayName("When the patient window is set, no more patients than the window are waiting or in progress")
+    void processJob_whenPatientWindowIsSet_ShouldLimitThePatientsInProgress() throws Exception {
+        ReflectionTestUtils.setField(cut, "patientWindow", 2);
+        var patients = new ArrayList<PatientDTO>();
+        for (int i = 0; i < 10; i++) {
+            patients.addAll(patientsByContract.getPatients());
+        }
+        patientsByContract.setPatients(patients);
+
+        var executor = Executors.newFixedThreadPool(4);
+        var submitted = new ArrayList<CompletableFuture<Void>>();
+        var mostInProgress = new AtomicInteger();
+        try {
+            doAnswer(invocation -> {
+                invocation.callRealMethod();
+                int inProgress = (int) submitted.stream().filter(future -> !future.isDone()).count();
+                mostInProgress.accumulateAndGet(inProgress, Math::max);
+                CompletableFuture<Void> future = CompletableFuture.runAsync(this::pause, executor);
+                submitted.add(future);
+                return future;
+            }).when(patientClaimsProcessor).process(any());
+
+            cut.process(outputDir, contractData, NDJSON);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(30, submitted.size());
+        assertTrue(mostInProgress.get() < 2);
+        assertEquals(30, contractData.getProgressTracker().getProcessedCount());
+    }
+
+    @Test
+    @DisplayName("A patient found while the contract is being retrieved is processed with the months it ends up with")
+    void processJob_whenPatientIsFoundBeforeTheContractIsRetrieved_ShouldProcessItWithItsFinalMonths() throws Exception {
+        var patients = patientsByContract.getPatients();
+        var firstPatient = patients.get(0);
+        var patientsFetch = new ContractPatientsFetch(10);
+        patientsFetch.found(Set.of(firstPatient.getPatientId()));
+        contractData = createContractData(patientsFetch);
+
+        // The contract is retrieved once the patient found has been handed to the patient threads
+        var requests = new ArrayList<PatientClaimsRequest>();
+        doAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            if (!patientsFetch.isDone()) {
+                patientsFetch.complete(patientsByContract, null);
+            }
+            return invocation.callRealMethod();
+        }).when(patientClaimsProcessor).process(any());
+
+        cut.process(outputDir, contractData, NDJSON);
+
+        // patient ids are random so the first patient may be in the contract more than once
+        var firstPatientCount = patients.stream()
+                .filter(patient -> patient.getPatientId().equals(firstPatient.getPatientId())).count();
+        assertEquals(patients.size(), requests.size());
+        var early = requests.get(0);
+        assertEquals(firstPatient.getPatientId(), early.getPatientDTO().getPatientId());
+        assertTrue(early.getPatientDTO().getDateRangesUnderContract().isEmpty());
+        assertSame(firstPatient, early.awaitPatientDTO());
+        assertEquals(firstPatientCount, requests.stream()
+                .filter(request -> request.getPatientDTO().getPatientId().equals(firstPatient.getPatientId())).count());
+    }
+
+    @Test
+    @DisplayName("When the contract can't be retrieved, the patients found before are not left waiting for their months")
+    void processJob_whenTheContractFailsAfterPatientsWereFound_ShouldFailThosePatients() throws Exception {
+        var firstPatient = patientsByContract.getPatients().get(0);
+        var patientsFetch = new ContractPatientsFetch(10);
+        patientsFetch.found(Set.of(firstPatient.getPatientId()));
+        contractData = createContractData(patientsFetch);
+
+        var requests = new ArrayList<PatientClaimsRequest>();
+        doAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            patientsFetch.complete(null, new IllegalStateException("BFD is down"));
+            return new CompletableFuture<Void>();
+        }).when(patientClaimsProcessor).process(any());
+
+        var exceptionThrown = assertThrows(IllegalStateException.class,
+                () -> cut.process(outputDir, contractData, NDJSON));
+
+        assertEquals("BFD is down", exceptionThrown.getMessage());
+        assertEquals(1, requests.size());
+        assertThrows(CancellationException.class, () -> requests.get(0).awaitPatientDTO());
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ContractData createContractData(List<OptOut> optOuts) {
+        InMemoryOptOutIndex optOutIndex = new InMemoryOptOutIndex();
+        optOuts.forEach(optOut -> optOutIndex.add(optOut.getCcwId(), optOut.getEffectiveDate()));
+        return new ContractData(contractData.getContract(), contractData.getProgressTracker(),
+                contractData.getAttestedTime(), contractData.getSinceTime(), contractData.getUserId(), optOutIndex,
+                contractData.getPatientsFetch());
+    }
+
+    private ContractData createContractData(ContractPatientsFetch patientsFetch) {
+        return new ContractData(contractData.getContract(), contractData.getProgressTracker(),
+                contractData.getAttestedTime(), contractData.getSinceTime(), contractData.getUserId(),
+                contractData.getOptOutIndex(), patientsFetch);
+    }
+
     private List<OptOut> getOptOutRows(GetPatientsByContractResponse patientsByContract) {
         return patientsByContract.getPatients()
                 .stream().map(PatientDTO::getPatientId)
@@ -189,6 +325,7 @@ class ContractProcessorUnitTest {
     private OptOut createOptOut(String patientId) {
         OptOut optOut = new OptOut();
         optOut.setHicn(patientId);
+        optOut.setCcwId(patientId);
         optOut.setEffectiveDate(LocalDate.now().minusDays(10));
         return optOut;
     }
@@ -0,0 +1,45 @@
+package gov.cms.ab2d.worker.processor;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class EncodingBufferTest {
+
+    @Test
+    void onlyTheCurrentRecordIsHandedToTheHelper() throws Exception {
+        var buffer = new EncodingBuffer();
+        var helper = mock(StreamHelper.class);
+
+        buffer.getWriter().write("first record");
+        buffer.reset();
+        buffer.getWriter().write("Beneficiary Señor");
+        buffer.writeTo(helper);
+
+        byte[] expected = "Beneficiary Señor".getBytes(StandardCharsets.UTF_8);
+        verify(helper).addData(any(), eq(0), eq(expected.length));
+        assertArrayEquals(expected, buffer.toByteArray());
+        assertEquals("Beneficiary Señor", buffer.contents());
+        assertEquals(expected.length, buffer.takeBytesWritten());
+        assertEquals(0, buffer.takeBytesWritten());
+    }
+
+    @Test
+    void largeBuffersAreDroppedWhenReset() throws Exception {
+        var buffer = new EncodingBuffer();
+        buffer.getWriter().write("x".repeat(EncodingBuffer.MAX_RETAINED_SIZE + 1));
+        buffer.writeTo(mock(StreamHelper.class));
+
+        buffer.reset();
+
+        assertEquals(EncodingBuffer.INITIAL_SIZE, buffer.capacity());
+        assertEquals(0, buffer.size());
+    }
+}
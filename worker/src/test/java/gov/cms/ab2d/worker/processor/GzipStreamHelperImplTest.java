@@ -0,0 +1,104 @@
+package gov.cms.ab2d.worker.processor;
+
+import gov.cms.ab2d.eventlogger.LogManager;
+import gov.cms.ab2d.worker.processor.domainmodel.CompressionSettings;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GzipStreamHelperImplTest {
+    @TempDir
+    File tmpDirFolder;
+    @Mock
+    private LogManager eventLogger;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void init() {
+        MockitoAnnotations.initMocks(this);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void getEmptyDataFiles() throws IOException {
+        GzipStreamHelperImpl helper = new GzipStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 1000, 20, eventLogger, null,
+                new CompressionSettings(100, 2, executor));
+        helper.close();
+        assertTrue(helper.getDataFiles().isEmpty());
+    }
+
+    @Test
+    void blocksAreWrittenInOrder() throws IOException {
+        GzipStreamHelperImpl helper = new GzipStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 10_000_000, 20, eventLogger, null,
+                new CompressionSettings(1000, 2, executor));
+        String expected = addTestData(helper, 2000);
+        helper.close();
+
+        List<Path> dataFiles = helper.getDataFiles();
+        assertEquals(1, dataFiles.size());
+        assertEquals("C1111_0001.ndjson.gz", dataFiles.get(0).getFileName().toString());
+        assertEquals(expected, decompress(dataFiles.get(0)));
+    }
+
+    @Test
+    void filesRollOverBetweenBlocks() throws IOException {
+        GzipStreamHelperImpl helper = new GzipStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 5000, 20, eventLogger, null,
+                new CompressionSettings(1000, 2, executor));
+        String expected = addTestData(helper, 2000);
+        helper.close();
+
+        // Every file can be decompressed on its own and together they hold all the data in order
+        List<Path> dataFiles = helper.getDataFiles();
+        assertTrue(dataFiles.size() > 1);
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < dataFiles.size(); i++) {
+            Path dataFile = dataFiles.get(i);
+            assertEquals(String.format("C1111_%04d.ndjson.gz", i + 1), dataFile.getFileName().toString());
+            output.append(decompress(dataFile));
+        }
+        assertEquals(expected, output.toString());
+    }
+
+    private String addTestData(StreamHelper helper, int numLines) throws IOException {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < numLines; i++) {
+            String line = i + " " + RandomStringUtils.randomAlphanumeric(40) + "\n";
+            data.append(line);
+            helper.addData(line.getBytes(StandardCharsets.UTF_8));
+        }
+        return data.toString();
+    }
+
+    private String decompress(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file.toFile()))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -14,6 +14,7 @@ import gov.cms.ab2d.common.repository.JobRepository;
 import gov.cms.ab2d.common.repository.OptOutRepository;
 import gov.cms.ab2d.common.repository.SponsorRepository;
 import gov.cms.ab2d.common.repository.UserRepository;
+import gov.cms.ab2d.common.service.OptOutFilterService;
 import gov.cms.ab2d.common.util.AB2DPostgresqlContainer;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.eventlogger.LoggableEvent;
@@ -24,6 +25,7 @@ import gov.cms.ab2d.eventlogger.reports.sql.DoAll;
 import gov.cms.ab2d.eventlogger.utils.UtilMethods;
 import gov.cms.ab2d.worker.adapter.bluebutton.ContractAdapter;
 import gov.cms.ab2d.worker.service.FileService;
+import gov.cms.ab2d.worker.service.OptOutIndexServiceImpl;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
 import org.junit.Assert;
@@ -89,6 +91,8 @@ class JobProcessorIntegrationTest {
     @Autowired
     private OptOutRepository optOutRepository;
     @Autowired
+    private OptOutFilterService optOutFilterService;
+    @Autowired
     private SqlEventLogger sqlEventLogger;
     @Mock
     private KinesisEventLogger kinesisEventLogger;
@@ -136,13 +140,15 @@ class JobProcessorIntegrationTest {
         fail = new RuntimeException("TEST EXCEPTION");
 
         FhirContext fhirContext = FhirContext.forDstu3();
-        PatientClaimsProcessor patientClaimsProcessor = new PatientClaimsProcessorImpl(mockBfdClient, fhirContext, logManager);
+        PatientClaimsProcessor patientClaimsProcessor = new PatientClaimsProcessorImpl(mockBfdClient, fhirContext, logManager,
+                Runnable::run);
         ContractProcessor contractProcessor = new ContractProcessorImpl(
                 fileService,
                 jobRepository,
                 patientClaimsProcessor,
-                optOutRepository,
-                logManager
+                logManager,
+                Runnable::run,
+                Runnable::run
         );
 
         ReflectionTestUtils.setField(contractProcessor, "cancellationCheckFrequency", 10);
@@ -153,7 +159,9 @@ class JobProcessorIntegrationTest {
                 jobOutputRepository,
                 contractAdapterStub,
                 contractProcessor,
-                logManager
+                new OptOutIndexServiceImpl(optOutRepository, optOutFilterService),
+                logManager,
+                Runnable::run
         );
 
         ReflectionTestUtils.setField(cut, "efsMount", tmpEfsMountDir.toString());
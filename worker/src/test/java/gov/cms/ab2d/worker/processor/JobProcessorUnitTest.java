@@ -12,7 +12,9 @@ import gov.cms.ab2d.filter.FilterOutByDate;
 import gov.cms.ab2d.worker.adapter.bluebutton.ContractAdapter;
 import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse;
 import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse.PatientDTO;
+import gov.cms.ab2d.worker.processor.domainmodel.ContractData;
 import gov.cms.ab2d.worker.service.FileService;
+import gov.cms.ab2d.worker.service.OptOutIndexService;
 import org.hamcrest.CoreMatchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -32,15 +34,29 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.ParseException;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import static java.lang.Boolean.TRUE;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -65,6 +81,7 @@ class JobProcessorUnitTest {
     @Mock private JobOutputRepository jobOutputRepository;
     @Mock private ContractAdapter contractAdapter;
     @Mock private ContractProcessor contractProcessor;
+    @Mock private OptOutIndexService optOutIndexService;
     @Mock private LogManager eventLogger;
 
     private Job job;
@@ -79,7 +96,9 @@ class JobProcessorUnitTest {
                 jobOutputRepository,
                 contractAdapter,
                 contractProcessor,
-                eventLogger
+                optOutIndexService,
+                eventLogger,
+                Runnable::run
         );
 
         ReflectionTestUtils.setField(cut, "efsMount", efsMountTmpDir.toString());
@@ -93,7 +112,7 @@ class JobProcessorUnitTest {
         when(jobRepository.findByJobUuid(anyString())).thenReturn(job);
 
         patientsByContract = createPatientsByContractResponse(contract);
-        Mockito.when(contractAdapter.getPatients(anyString(), anyInt())).thenReturn(patientsByContract);
+        Mockito.when(contractAdapter.getPatients(anyString(), anyInt(), any())).thenReturn(patientsByContract);
 
         final Path outputDirPath = Paths.get(efsMountTmpDir.toString(), jobUuid);
         final Path outputDir = Files.createDirectories(outputDirPath);
@@ -154,9 +173,133 @@ class JobProcessorUnitTest {
         doVerify();
     }
 
+    @Test
+    @DisplayName("Contracts are processed in the order their patients are retrieved")
+    void contractsAreProcessedAsTheirPatientsAreRetrieved() throws Exception {
+        final Sponsor sponsor = job.getUser().getSponsor();
+        final Contract slowContract = sponsor.getAttestedContracts().get(0);
+        final Contract fastContract = createSecondContract(sponsor);
+        assertThat(sponsor.getAggregatedAttestedContracts(), is(List.of(slowContract, fastContract)));
+
+        // The first contract isn't retrieved until the second has been processed
+        var fastContractPatients = createPatientsByContractResponse(fastContract);
+        var fastContractProcessed = new CountDownLatch(1);
+        when(contractAdapter.getPatients(anyString(), anyInt(), any())).thenAnswer(invocation -> {
+            if (fastContract.getContractNumber().equals(invocation.getArgument(0))) {
+                return fastContractPatients;
+            }
+            fastContractProcessed.await(10, TimeUnit.SECONDS);
+            return patientsByContract;
+        });
+
+        List<String> processedContracts = new CopyOnWriteArrayList<>();
+        when(contractProcessor.process(any(), any(), any())).thenAnswer(invocation -> {
+            ContractData contractData = invocation.getArgument(1);
+            String contractNumber = contractData.getContract().getContractNumber();
+            processedContracts.add(contractNumber);
+            if (contractNumber.equals(fastContract.getContractNumber())) {
+                fastContractProcessed.countDown();
+            }
+            contractData.getPatientsFetch().getPatients();
+            return new ArrayList<>();
+        });
+
+        // The first contract is retrieved on another thread, the second before the contracts are processed
+        var submitted = new AtomicInteger();
+        Executor contractPatientsThreadPool = task -> {
+            if (submitted.getAndIncrement() == 0) {
+                new Thread(task).start();
+            } else {
+                task.run();
+            }
+        };
+        cut = new JobProcessorImpl(fileService, jobRepository, jobOutputRepository, contractAdapter,
+                contractProcessor, optOutIndexService, eventLogger, contractPatientsThreadPool);
+        ReflectionTestUtils.setField(cut, "efsMount", efsMountTmpDir.toString());
+
+        var processedJob = cut.process(jobUuid);
+
+        assertThat(processedJob.getStatus(), is(JobStatus.SUCCESSFUL));
+        assertThat(processedContracts, is(List.of(fastContract.getContractNumber(), slowContract.getContractNumber())));
+    }
+
+    @Test
+    @DisplayName("A contract is processed while its patients are still being retrieved")
+    void contractIsProcessedWhileItsPatientsAreRetrieved() throws Exception {
+        var firstPatientId = patientsByContract.getPatients().get(0).getPatientId();
+        var patientFound = new CountDownLatch(1);
+        when(contractAdapter.getPatients(anyString(), anyInt(), any())).thenAnswer(invocation -> {
+            invocation.<Consumer<Set<String>>>getArgument(2).accept(Set.of(firstPatientId));
+            patientFound.await(10, TimeUnit.SECONDS);
+            return patientsByContract;
+        });
+
+        var foundBeforeRetrieved = new CopyOnWriteArrayList<String>();
+        when(contractProcessor.process(any(), any(), any())).thenAnswer(invocation -> {
+            var patientsFetch = invocation.<ContractData>getArgument(1).getPatientsFetch();
+            assertFalse(patientsFetch.isDone());
+            foundBeforeRetrieved.add(patientsFetch.pollFound(10, TimeUnit.SECONDS));
+            patientFound.countDown();
+            patientsFetch.getPatients();
+            return new ArrayList<>();
+        });
+
+        ExecutorService contractPatientsThreadPool = Executors.newFixedThreadPool(1);
+        try {
+            cut = new JobProcessorImpl(fileService, jobRepository, jobOutputRepository, contractAdapter,
+                    contractProcessor, optOutIndexService, eventLogger, contractPatientsThreadPool);
+            ReflectionTestUtils.setField(cut, "efsMount", efsMountTmpDir.toString());
+            ReflectionTestUtils.setField(cut, "earlyDispatchLimit", 10);
+
+            var processedJob = cut.process(jobUuid);
+
+            assertThat(processedJob.getStatus(), is(JobStatus.SUCCESSFUL));
+        } finally {
+            contractPatientsThreadPool.shutdownNow();
+        }
+        assertThat(foundBeforeRetrieved, is(List.of(firstPatientId)));
+    }
+
+    @Test
+    @DisplayName("When a job fails, the contracts still being retrieved stop being retrieved")
+    void whenJobFails_contractsStillBeingRetrievedAreCancelled() throws Exception {
+        final Sponsor sponsor = job.getUser().getSponsor();
+        createSecondContract(sponsor);
+
+        // Neither contract is retrieved until it is cancelled
+        var cancelledFetches = new CountDownLatch(2);
+        when(contractAdapter.getPatients(anyString(), anyInt(), any())).thenAnswer(invocation -> {
+            Consumer<Set<String>> patientsFound = invocation.getArgument(2);
+            try {
+                while (true) {
+                    patientsFound.accept(Set.of());
+                    Thread.sleep(10);
+                }
+            } catch (CancellationException e) {
+                cancelledFetches.countDown();
+                throw e;
+            }
+        });
+        when(contractProcessor.process(any(), any(), any())).thenThrow(new RuntimeException("Contract failed"));
+
+        ExecutorService contractPatientsThreadPool = Executors.newFixedThreadPool(2);
+        try {
+            cut = new JobProcessorImpl(fileService, jobRepository, jobOutputRepository, contractAdapter,
+                    contractProcessor, optOutIndexService, eventLogger, contractPatientsThreadPool);
+            ReflectionTestUtils.setField(cut, "efsMount", efsMountTmpDir.toString());
+
+            var processedJob = cut.process(jobUuid);
+
+            assertThat(processedJob.getStatus(), is(JobStatus.FAILED));
+            assertTrue(cancelledFetches.await(10, TimeUnit.SECONDS));
+        } finally {
+            contractPatientsThreadPool.shutdownNow();
+        }
+    }
+
     private void doVerify() {
         verify(fileService).createDirectory(any());
-        verify(contractAdapter).getPatients(anyString(), anyInt());
+        verify(contractAdapter).getPatients(anyString(), anyInt(), any());
     }
 
     @Test
@@ -187,7 +330,7 @@ class JobProcessorUnitTest {
         assertThat(processedJob.getExpiresAt(), notNullValue());
 
         verify(fileService, times(2)).createDirectory(any());
-        verify(contractAdapter).getPatients(anyString(), anyInt());
+        verify(contractAdapter).getPatients(anyString(), anyInt(), any());
     }
 
     @Test
@@ -205,7 +348,7 @@ class JobProcessorUnitTest {
         var uncheckedIOE = new UncheckedIOException(errMsg, new IOException(errMsg));
 
         Mockito.when(fileService.createDirectory(any())).thenThrow(uncheckedIOE);
-        Mockito.lenient().when(contractAdapter.getPatients(anyString(), anyInt())).thenReturn(patientsByContract);
+        Mockito.lenient().when(contractAdapter.getPatients(anyString(), anyInt(), any())).thenReturn(patientsByContract);
 
         var processedJob = cut.process(jobUuid);
 
@@ -214,7 +357,7 @@ class JobProcessorUnitTest {
         assertThat(processedJob.getExpiresAt(), nullValue());
 
         verify(fileService).createDirectory(any());
-        verify(contractAdapter, never()).getPatients(anyString(), anyInt());
+        verify(contractAdapter, never()).getPatients(anyString(), anyInt(), any());
     }
 
     @Test
@@ -225,7 +368,7 @@ class JobProcessorUnitTest {
         var uncheckedIOE = new UncheckedIOException(errMsg, new IOException(errMsg));
 
         Mockito.when(fileService.createDirectory(any())).thenThrow(uncheckedIOE);
-        Mockito.lenient().when(contractAdapter.getPatients(anyString(), anyInt())).thenReturn(patientsByContract);
+        Mockito.lenient().when(contractAdapter.getPatients(anyString(), anyInt(), any())).thenReturn(patientsByContract);
 
         var processedJob = cut.process(jobUuid);
 
@@ -234,7 +377,7 @@ class JobProcessorUnitTest {
         assertThat(processedJob.getExpiresAt(), nullValue());
 
         verify(fileService).createDirectory(any());
-        verify(contractAdapter, never()).getPatients(anyString(), anyInt());
+        verify(contractAdapter, never()).getPatients(anyString(), anyInt(), any());
     }
 
     private Sponsor createParentSponsor() {
@@ -277,6 +420,18 @@ class JobProcessorUnitTest {
         return contract;
     }
 
+    private Contract createSecondContract(Sponsor sponsor) {
+        Contract contract = new Contract();
+        contract.setId(2L);
+        contract.setContractName("CONTRACT_NM_00001");
+        contract.setContractNumber("CONTRACT_00001");
+        contract.setAttestedOn(OffsetDateTime.now().minusDays(10));
+        contract.setSponsor(sponsor);
+
+        sponsor.getContracts().add(contract);
+        return contract;
+    }
+
     private Job createJob(User user) {
         Job job = new Job();
         job.setJobUuid("S0000");
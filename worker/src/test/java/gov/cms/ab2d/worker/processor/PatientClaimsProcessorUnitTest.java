@@ -1,6 +1,7 @@
 package gov.cms.ab2d.worker.processor;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
 import com.newrelic.api.agent.Token;
 import gov.cms.ab2d.bfd.client.BFDClient;
 import gov.cms.ab2d.common.model.Contract;
@@ -8,6 +9,7 @@ import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.filter.FilterOutByDate;
 import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse;
 import gov.cms.ab2d.worker.processor.domainmodel.PatientClaimsRequest;
+import gov.cms.ab2d.worker.processor.domainmodel.ProgressTracker;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
@@ -15,25 +17,39 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.hamcrest.CoreMatchers.startsWith;
 import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -77,6 +93,8 @@ public class PatientClaimsProcessorUnitTest {
         }
     };
     private PatientClaimsRequest request;
+    private ProgressTracker progressTracker;
+    private ProgressTracker.ContractProgress progress;
 
     @BeforeEach
     void setUp() throws Exception {
@@ -84,7 +102,8 @@ public class PatientClaimsProcessorUnitTest {
         cut = new PatientClaimsProcessorImpl(
                 mockBfdClient,
                 fhirContext,
-                eventLogger
+                eventLogger,
+                Runnable::run
         );
 
         eob = EobTestDataUtil.createEOB();
@@ -97,8 +116,10 @@ public class PatientClaimsProcessorUnitTest {
         StreamHelper helper = new TextStreamHelperImpl(tmpEfsMountDir.toPath(), contract.getContractNumber(),
                 30, 120, eventLogger, null);
 
+        progressTracker = ProgressTracker.builder().jobUuid("job").failureThreshold(10).build();
+        progress = progressTracker.getContractProgress("contractNum");
         request = new PatientClaimsRequest(patientDTO, helper, earlyAttDate, null, "user", "job",
-                "contractNum", noOpToken);
+                "contractNum", noOpToken, progress, null);
     }
 
     @Test
@@ -128,6 +149,161 @@ public class PatientClaimsProcessorUnitTest {
         verify(mockBfdClient).requestNextBundleFromServer(bundle1);
     }
 
+    @Test
+    void process_whenStreaming_writesEachPageBeforeRequestingTheNext() throws Exception {
+        ReflectionTestUtils.setField(cut, "streamingEnabled", true);
+
+        Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
+        bundle1.addLink(EobTestDataUtil.addNextLink());
+
+        Bundle bundle2 = EobTestDataUtil.createBundle(eob.copy());
+
+        when(mockBfdClient.requestEOBFromServer(patientId, null)).thenReturn(bundle1);
+        when(mockBfdClient.requestNextBundleFromServer(bundle1)).thenReturn(bundle2);
+
+        StreamHelper mockHelper = mock(StreamHelper.class);
+        var streamingRequest = new PatientClaimsRequest(patientDTO, mockHelper, earlyAttDate, null, "user", "job",
+                "contractNum", noOpToken, progress, null);
+
+        cut.process(streamingRequest).get();
+
+        InOrder inOrder = inOrder(mockHelper, mockBfdClient);
+        inOrder.verify(mockBfdClient).requestEOBFromServer(patientId, null);
+        inOrder.verify(mockHelper).addData(any(), anyInt(), anyInt());
+        inOrder.verify(mockBfdClient).requestNextBundleFromServer(bundle1);
+        inOrder.verify(mockHelper).addData(any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void process_whenPrefetching_requestsNextPageBeforeWritingTheCurrentOne() throws Exception {
+        ReflectionTestUtils.setField(cut, "streamingEnabled", true);
+        ReflectionTestUtils.setField(cut, "prefetchDepth", 1);
+
+        Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
+        bundle1.addLink(EobTestDataUtil.addNextLink());
+
+        Bundle bundle2 = EobTestDataUtil.createBundle(eob.copy());
+
+        when(mockBfdClient.requestEOBFromServer(patientId, null)).thenReturn(bundle1);
+        when(mockBfdClient.requestNextBundleFromServer(bundle1)).thenReturn(bundle2);
+
+        StreamHelper mockHelper = mock(StreamHelper.class);
+        var prefetchRequest = new PatientClaimsRequest(patientDTO, mockHelper, earlyAttDate, null, "user", "job",
+                "contractNum", noOpToken, progress, null);
+
+        cut.process(prefetchRequest).get();
+
+        InOrder inOrder = inOrder(mockHelper, mockBfdClient);
+        inOrder.verify(mockBfdClient).requestEOBFromServer(patientId, null);
+        inOrder.verify(mockBfdClient).requestNextBundleFromServer(bundle1);
+        inOrder.verify(mockHelper, times(2)).addData(any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void process_whenPrefetching_countsTheBfdTimeHiddenBehindWriting() throws Exception {
+        ExecutorService prefetchPool = Executors.newSingleThreadExecutor();
+        try {
+            cut = new PatientClaimsProcessorImpl(mockBfdClient, FhirContext.forDstu3(), eventLogger, prefetchPool);
+            ReflectionTestUtils.setField(cut, "streamingEnabled", true);
+            ReflectionTestUtils.setField(cut, "prefetchDepth", 1);
+
+            Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
+            bundle1.addLink(EobTestDataUtil.addNextLink());
+            Bundle bundle2 = EobTestDataUtil.createBundle(eob.copy());
+
+            when(mockBfdClient.requestEOBFromServer(patientId, null)).thenReturn(bundle1);
+            when(mockBfdClient.requestNextBundleFromServer(bundle1)).thenAnswer(invocation -> {
+                Thread.sleep(100);
+                return bundle2;
+            });
+
+            // Writing the first page takes as long as requesting the second
+            StreamHelper mockHelper = mock(StreamHelper.class);
+            doAnswer(invocation -> {
+                Thread.sleep(100);
+                return null;
+            }).when(mockHelper).addData(any(), anyInt(), anyInt());
+
+            cut.process(new PatientClaimsRequest(patientDTO, mockHelper, earlyAttDate, null, "user", "job",
+                    "contractNum", noOpToken, progress, null)).get();
+
+            assertTrue(progressTracker.snapshot().getPrefetchHiddenMillis() > 0);
+        } finally {
+            prefetchPool.shutdownNow();
+        }
+    }
+
+    @Test
+    void process_whenPrefetchingOnTheSameThread_nothingIsHidden() throws Exception {
+        ReflectionTestUtils.setField(cut, "streamingEnabled", true);
+        ReflectionTestUtils.setField(cut, "prefetchDepth", 1);
+
+        Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
+        bundle1.addLink(EobTestDataUtil.addNextLink());
+        Bundle bundle2 = EobTestDataUtil.createBundle(eob.copy());
+
+        when(mockBfdClient.requestEOBFromServer(patientId, null)).thenReturn(bundle1);
+        when(mockBfdClient.requestNextBundleFromServer(bundle1)).thenAnswer(invocation -> {
+            Thread.sleep(20);
+            return bundle2;
+        });
+
+        cut.process(request).get();
+
+        assertEquals(0, progressTracker.snapshot().getPrefetchHiddenMillis());
+    }
+
+    @Test
+    void process_whenPrefetchFails_thenPatientFails() {
+        ReflectionTestUtils.setField(cut, "streamingEnabled", true);
+        ReflectionTestUtils.setField(cut, "prefetchDepth", 2);
+
+        Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
+        bundle1.addLink(EobTestDataUtil.addNextLink());
+
+        when(mockBfdClient.requestEOBFromServer(patientId, null)).thenReturn(bundle1);
+        when(mockBfdClient.requestNextBundleFromServer(bundle1)).thenThrow(new RuntimeException("Next Page Exception"));
+
+        var exceptionThrown = assertThrows(ExecutionException.class,
+                () -> cut.process(request).get());
+
+        assertThat(exceptionThrown.getCause().getMessage(), startsWith("Next Page Exception"));
+    }
+
+    @Test
+    void process_whenJsonFilterEnabled_writesTheSameResourcesAsHapi() throws Exception {
+        ReflectionTestUtils.setField(cut, "jsonFilterEnabled", true);
+
+        IParser jsonParser = FhirContext.forDstu3().newJsonParser();
+        Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
+        bundle1.addLink(EobTestDataUtil.addNextLink().setUrl("https://bfd/next"));
+        Bundle bundle2 = EobTestDataUtil.createBundle(eob.copy());
+
+        when(mockBfdClient.requestEOBJsonFromServer(patientId, null))
+                .thenReturn(jsonParser.encodeResourceToString(bundle1).getBytes(StandardCharsets.UTF_8));
+        when(mockBfdClient.requestNextBundleJsonFromServer("https://bfd/next"))
+                .thenReturn(jsonParser.encodeResourceToString(bundle2).getBytes(StandardCharsets.UTF_8));
+
+        // The buffer the records are written from is reused, so they are copied as they are written
+        List<String> written = new ArrayList<>();
+        StreamHelper mockHelper = mock(StreamHelper.class);
+        doAnswer(invocation -> written.add(new String(invocation.getArgument(0), invocation.getArgument(1),
+                invocation.getArgument(2), StandardCharsets.UTF_8)))
+                .when(mockHelper).addData(any(), anyInt(), anyInt());
+        var jsonRequest = new PatientClaimsRequest(patientDTO, mockHelper, earlyAttDate, null, "user", "job",
+                "contractNum", noOpToken, progress, null);
+
+        cut.process(jsonRequest).get();
+
+        String expected = jsonParser.encodeResourceToString(eob) + System.lineSeparator();
+        assertEquals(List.of(expected, expected), written);
+        var snapshot = progressTracker.snapshot();
+        assertEquals(2, snapshot.getEobsWritten());
+        assertEquals(2L * expected.getBytes(StandardCharsets.UTF_8).length, snapshot.getBytesWritten());
+        assertEquals(2, snapshot.getContracts().get("contractNum").getEobsWritten());
+        verify(mockBfdClient, never()).requestEOBFromServer(patientId, null);
+    }
+
     @Test
     void process_whenBfdClientThrowsException() {
         Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
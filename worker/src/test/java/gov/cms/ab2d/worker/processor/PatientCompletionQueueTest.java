@@ -0,0 +1,63 @@
+package gov.cms.ab2d.worker.processor;
+
+import gov.cms.ab2d.worker.processor.domainmodel.ProgressTracker;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatientCompletionQueueTest {
+
+    private final ProgressTracker progressTracker = ProgressTracker.builder().jobUuid("JOB").failureThreshold(10).build();
+    private final PatientCompletionQueue queue = new PatientCompletionQueue(
+            progressTracker.getContractProgress("C0001"));
+
+    @Test
+    void patientsAreCountedAndTakenInTheOrderTheyComplete() throws Exception {
+        var first = new CompletableFuture<Void>();
+        var second = new CompletableFuture<Void>();
+        var third = new CompletableFuture<Void>();
+        queue.add(first);
+        queue.add(second);
+        queue.add(third);
+        assertNull(queue.poll());
+
+        second.complete(null);
+        third.completeExceptionally(new IllegalStateException("BFD is down"));
+
+        assertEquals(2, progressTracker.getProcessedCount());
+        assertEquals(1, progressTracker.getFailureCount());
+        assertEquals(1, progressTracker.snapshot().getContracts().get("C0001").getFailureCount());
+        assertSame(second, queue.poll(1, TimeUnit.SECONDS));
+        assertSame(third, queue.poll());
+        assertNull(queue.poll());
+        assertEquals(1, queue.size());
+
+        CompletableFuture.runAsync(() -> first.complete(null));
+        assertSame(first, queue.poll(10, TimeUnit.SECONDS));
+        assertTrue(queue.isEmpty());
+        assertEquals(3, progressTracker.getProcessedCount());
+    }
+
+    @Test
+    void cancelledPatientsAreNotFailures() {
+        var running = new CompletableFuture<Void>();
+        var done = CompletableFuture.<Void>completedFuture(null);
+        queue.add(running);
+        queue.add(done);
+
+        queue.cancelAll();
+
+        assertTrue(running.isCancelled());
+        assertEquals(2, progressTracker.getProcessedCount());
+        assertEquals(0, progressTracker.getFailureCount());
+        assertSame(done, queue.poll());
+        assertSame(running, queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,178 @@
+package gov.cms.ab2d.worker.processor;
+
+import gov.cms.ab2d.eventlogger.LogManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class QueuedStreamHelperImplTest {
+    @TempDir
+    File tmpDirFolder;
+    @Mock
+    private LogManager eventLogger;
+
+    private ExecutorService writerPool;
+
+    @BeforeEach
+    void init() {
+        MockitoAnnotations.initMocks(this);
+        writerPool = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void shutdown() {
+        writerPool.shutdownNow();
+    }
+
+    @Test
+    void writeFromManyThreads() throws Exception {
+        int threads = 16;
+        int linesPerThread = 500;
+
+        TextStreamHelperImpl textHelper = new TextStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 1_000_000, 20, eventLogger, null);
+        QueuedStreamHelperImpl helper = new QueuedStreamHelperImpl(textHelper, "C1111", 10, 30, writerPool);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < linesPerThread; i++) {
+                    helper.addData(("line-" + thread + "-" + i + "\n").getBytes());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        helper.close();
+
+        List<Path> dataFiles = helper.getDataFiles();
+        assertEquals(1, dataFiles.size());
+        Set<String> lines = new HashSet<>(Files.readAllLines(dataFiles.get(0)));
+        assertEquals(threads * linesPerThread, lines.size());
+    }
+
+    @Test
+    void coalescesRecordsIntoLargerWrites() throws Exception {
+        // Hold up the first write until every record has been queued
+        CountDownLatch allQueued = new CountDownLatch(1);
+        StreamHelper mockHelper = mock(StreamHelper.class);
+        doAnswer(invocation -> {
+            allQueued.await();
+            return null;
+        }).when(mockHelper).addData(any(), anyInt(), anyInt());
+        QueuedStreamHelperImpl helper = new QueuedStreamHelperImpl(mockHelper, "C1111", 1000, 30, writerPool);
+
+        for (int i = 0; i < 1000; i++) {
+            helper.addData("abc\n".getBytes());
+        }
+        allQueued.countDown();
+        helper.close();
+
+        // Whatever the writer had taken before it was held up, then everything else in a single write, each
+        // straight from the batch buffer
+        verify(mockHelper, atMost(2)).addData(any(), anyInt(), anyInt());
+        verify(mockHelper, never()).addData(any());
+        verify(mockHelper).close();
+    }
+
+    @Test
+    void writerFailureIsReported() throws IOException {
+        StreamHelper mockHelper = mock(StreamHelper.class);
+        doThrow(new IOException("disk full")).when(mockHelper).addData(any(), anyInt(), anyInt());
+        QueuedStreamHelperImpl helper = new QueuedStreamHelperImpl(mockHelper, "C1111", 1, 30, writerPool);
+
+        IOException exception = assertThrows(IOException.class, () -> {
+            for (int i = 0; i < 100; i++) {
+                helper.addData("abc\n".getBytes());
+            }
+        });
+        assertTrue(exception.getMessage().startsWith("Unable to write data for contract C1111"));
+
+        assertThrows(IOException.class, helper::close);
+        verify(mockHelper).close();
+    }
+
+    @Test
+    void closeDoesNotWaitForeverWhenTheWriterFailsWhilePatientsAreStillAdding() throws Exception {
+        StreamHelper mockHelper = mock(StreamHelper.class);
+        doThrow(new IOException("disk full")).when(mockHelper).addData(any(), anyInt(), anyInt());
+        QueuedStreamHelperImpl helper = new QueuedStreamHelperImpl(mockHelper, "C1111", 1, 30, writerPool);
+
+        // A patient thread which carries on adding data after its writes start failing
+        AtomicBoolean adding = new AtomicBoolean(true);
+        Future<?> patient = writerPool.submit(() -> {
+            while (adding.get()) {
+                try {
+                    helper.addData("abc\n".getBytes());
+                } catch (IOException e) {
+                    // carry on regardless
+                }
+            }
+        });
+
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(IOException.class, helper::close));
+        } finally {
+            adding.set(false);
+            patient.get();
+        }
+        verify(mockHelper).close();
+    }
+
+    @Test
+    void closeGivesUpWhenTheWriterDoesNotFinishInTime() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StreamHelper mockHelper = mock(StreamHelper.class);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(mockHelper).addData(any(), anyInt(), anyInt());
+        QueuedStreamHelperImpl helper = new QueuedStreamHelperImpl(mockHelper, "C1111", 10, 1, writerPool);
+
+        try {
+            helper.addData("abc\n".getBytes());
+
+            IOException exception = assertThrows(IOException.class, helper::close);
+            assertTrue(exception.getMessage().startsWith("Timed out waiting for output to be written"));
+            verify(mockHelper).close();
+        } finally {
+            release.countDown();
+        }
+    }
+}
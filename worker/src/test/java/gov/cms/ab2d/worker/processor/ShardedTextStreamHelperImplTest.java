@@ -0,0 +1,96 @@
+package gov.cms.ab2d.worker.processor;
+
+import gov.cms.ab2d.eventlogger.LogManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedTextStreamHelperImplTest {
+    @TempDir
+    File tmpDirFolder;
+    @Mock
+    private LogManager eventLogger;
+
+    @BeforeEach
+    void init() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    void getEmptyDataFiles() throws IOException {
+        ShardedTextStreamHelperImpl helper = new ShardedTextStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 10, 20, eventLogger, null, 4);
+        helper.close();
+        assertTrue(helper.getDataFiles().isEmpty());
+    }
+
+    @Test
+    void getDataFilesFromOneThread() throws IOException {
+        ShardedTextStreamHelperImpl helper = new ShardedTextStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 10, 20, eventLogger, null, 4);
+        helper.addData("Hello".getBytes());
+        helper.addData("W".getBytes());
+        helper.addData("Should 8".getBytes());
+        helper.close();
+
+        List<Path> dataFiles = helper.getDataFiles();
+        assertEquals(2, dataFiles.size());
+        assertEquals("C1111_0001.ndjson", dataFiles.get(0).getFileName().toString());
+        assertEquals("HelloW", Files.readAllLines(dataFiles.get(0)).get(0));
+        assertEquals("C1111_0002.ndjson", dataFiles.get(1).getFileName().toString());
+        assertEquals("Should 8", Files.readAllLines(dataFiles.get(1)).get(0));
+    }
+
+    @Test
+    void writeFromManyThreads() throws Exception {
+        int threads = 16;
+        int linesPerThread = 500;
+        long rollover = 2000;
+
+        ShardedTextStreamHelperImpl helper = new ShardedTextStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", rollover, 20, eventLogger, null, 4);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < linesPerThread; i++) {
+                    helper.addData(("line-" + thread + "-" + i + "\n").getBytes());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        helper.close();
+
+        Set<String> fileNames = new HashSet<>();
+        Set<String> lines = new HashSet<>();
+        for (Path dataFile : helper.getDataFiles()) {
+            assertTrue(fileNames.add(dataFile.getFileName().toString()));
+            assertTrue(dataFile.toFile().length() <= rollover);
+            lines.addAll(Files.readAllLines(dataFile));
+        }
+        assertEquals(threads * linesPerThread, lines.size());
+    }
+}
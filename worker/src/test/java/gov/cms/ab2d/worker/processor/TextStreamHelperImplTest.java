@@ -1,6 +1,8 @@
 package gov.cms.ab2d.worker.processor;
 
 import gov.cms.ab2d.eventlogger.LogManager;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -145,4 +147,37 @@ class TextStreamHelperImplTest {
         lines = Files.readAllLines(dataFiles.get(2));
         assertEquals(longString, lines.get(0));
     }
-}
\ No newline at end of file
+
+    @Test
+    void onlyTheGivenPartOfABufferIsWritten() throws IOException {
+        TextStreamHelperImpl helper = new TextStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 10, 20, eventLogger, null);
+        byte[] buffer = "--Hello--W--".getBytes();
+        helper.addData(buffer, 2, 5);
+        helper.addData(buffer, 9, 1);
+        helper.addData(buffer, 0, 0);
+        helper.close();
+
+        List<Path> dataFiles = helper.getDataFiles();
+        assertEquals(1, dataFiles.size());
+        assertEquals("HelloW", Files.readString(dataFiles.get(0)));
+    }
+
+    @Test
+    void checksumsAreCapturedWhileWriting() throws IOException {
+        TextStreamHelperImpl helper = new TextStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 10, 20, eventLogger, null);
+        helper.addData("Hello".getBytes());
+        helper.addData("W".getBytes());
+        helper.addData("Should 8".getBytes());
+        helper.close();
+
+        List<Path> dataFiles = helper.getDataFiles();
+        assertEquals(2, dataFiles.size());
+        for (Path dataFile : dataFiles) {
+            assertEquals(Hex.encodeHexString(DigestUtils.sha256(Files.readAllBytes(dataFile))), helper.getChecksum(dataFile));
+            assertEquals(dataFile.toFile().length(), helper.getFileLength(dataFile));
+        }
+        assertNull(helper.getChecksum(Path.of(tmpDirFolder.toString(), "unknown.ndjson")));
+    }
+}
@@ -52,6 +52,27 @@ class ZipStreamHelperImplTest {
         testZips("C0002", 100000, 20000, 5000, 100, 1000);
     }
 
+    @Test
+    void zipFilesRollOverNearLimit() throws IOException {
+        int totalBytesAllowedInFile = 20000;
+        int totalAllowedInPart = 5000;
+        ZipStreamHelperImpl helper = new ZipStreamHelperImpl(
+                tmpDirFolder.toPath(), "C0003", totalBytesAllowedInFile, totalAllowedInPart, 20,
+                eventLogger, null);
+        addTestData(2000, 100, 100, helper);
+        helper.close();
+
+        // A zip file can only go over its limit by what is left of the entry open when the limit was reached
+        List<Path> zipFiles = helper.getDataFiles();
+        assertTrue(zipFiles.size() > 1);
+        for (Path zip : zipFiles) {
+            assertTrue(zip.toFile().length() < totalBytesAllowedInFile + totalAllowedInPart + 1000);
+        }
+        for (Path zip : zipFiles.subList(0, zipFiles.size() - 1)) {
+            assertTrue(zip.toFile().length() >= totalBytesAllowedInFile);
+        }
+    }
+
     /**
      * Convenience method to test the zip file writing. It takes in different parameters, generates fake data,
      * generates the zip file and it's entries and afterwards, verifies that the files names were correct and
@@ -0,0 +1,75 @@
+package gov.cms.ab2d.worker.processor.domainmodel;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryOptOutIndexTest {
+
+    private final LocalDate today = LocalDate.of(2020, 6, 15);
+
+    @Test
+    void optOutIsEffectiveFromItsDate() {
+        InMemoryOptOutIndex index = new InMemoryOptOutIndex();
+        index.add("-19990000000001", today);
+        index.add("20010000000002", today.plusDays(1));
+
+        assertTrue(index.isOptedOut("-19990000000001", today));
+        assertFalse(index.isOptedOut("-19990000000001", today.minusDays(1)));
+        assertFalse(index.isOptedOut("20010000000002", today));
+        assertTrue(index.isOptedOut("20010000000002", today.plusDays(1)));
+        assertFalse(index.isOptedOut("20010000000003", today.plusDays(1)));
+        assertFalse(index.isOptedOut(null, today));
+    }
+
+    @Test
+    void earliestEffectiveDateIsKept() {
+        InMemoryOptOutIndex index = new InMemoryOptOutIndex();
+        index.add("123", today.plusDays(30));
+        index.add("123", today.minusDays(30));
+        index.add("123", today.plusDays(10));
+        index.add("ABC", today.plusDays(30));
+        index.add("ABC", today.minusDays(30));
+
+        assertEquals(2, index.size());
+        assertTrue(index.isOptedOut("123", today));
+        assertTrue(index.isOptedOut("ABC", today));
+    }
+
+    @Test
+    void idsWhichAreNotLongsAreKeptSeparately() {
+        InMemoryOptOutIndex index = new InMemoryOptOutIndex();
+        index.add("0", today);
+        index.add("-0", today.plusDays(10));
+        index.add("007", today.plusDays(10));
+        index.add("7", today);
+        index.add("12345678901234567890", today);
+        index.add("", today);
+
+        assertEquals(6, index.size());
+        assertTrue(index.isOptedOut("0", today));
+        assertFalse(index.isOptedOut("-0", today));
+        assertFalse(index.isOptedOut("007", today));
+        assertTrue(index.isOptedOut("7", today));
+        assertTrue(index.isOptedOut("12345678901234567890", today));
+        assertFalse(index.isOptedOut("1234567890123456789", today));
+        assertTrue(index.isOptedOut("", today));
+    }
+
+    @Test
+    void indexGrowsPastItsExpectedSize() {
+        InMemoryOptOutIndex index = new InMemoryOptOutIndex(10);
+        for (int i = 0; i < 10_000; i++) {
+            index.add(Integer.toString(i * 3), today);
+        }
+
+        assertEquals(10_000, index.size());
+        for (int i = 0; i < 30_000; i++) {
+            assertEquals(i % 3 == 0, index.isOptedOut(Integer.toString(i), today));
+        }
+    }
+}
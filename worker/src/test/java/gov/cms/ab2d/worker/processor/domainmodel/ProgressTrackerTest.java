@@ -0,0 +1,173 @@
+package gov.cms.ab2d.worker.processor.domainmodel;
+
+import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse;
+import gov.cms.ab2d.worker.adapter.bluebutton.GetPatientsByContractResponse.PatientDTO;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ProgressTrackerTest {
+
+    @Test
+    void contractsAddedWhenBuiltAreCounted() {
+        ProgressTracker progressTracker = ProgressTracker.builder()
+                .jobUuid("JOB")
+                .patientsByContract(createPatientsByContract("C0001", 10))
+                .patientsByContract(createPatientsByContract("C0002", 30))
+                .failureThreshold(10)
+                .build();
+
+        assertEquals(40, progressTracker.getTotalCount());
+        assertEquals(40, progressTracker.getEstimatedTotalCount());
+        assertEquals(30, progressTracker.getContractCount("C0002"));
+
+        for (int i = 0; i < 10; i++) {
+            progressTracker.incrementProcessedCount();
+        }
+        assertEquals(25, progressTracker.getPercentageCompleted());
+    }
+
+    @Test
+    void contractsAddedLaterAreEstimatedUntilCounted() {
+        ProgressTracker progressTracker = ProgressTracker.builder()
+                .jobUuid("JOB")
+                .expectedContractCount(2)
+                .failureThreshold(10)
+                .build();
+
+        progressTracker.addPatientsByContract(createPatientsByContract("C0001", 10));
+        assertEquals(10, progressTracker.getTotalCount());
+        assertEquals(20, progressTracker.getEstimatedTotalCount());
+
+        for (int i = 0; i < 10; i++) {
+            progressTracker.incrementProcessedCount();
+        }
+        assertEquals(50, progressTracker.getPercentageCompleted());
+
+        progressTracker.addPatientsByContract(createPatientsByContract("C0002", 30));
+        assertEquals(40, progressTracker.getTotalCount());
+        assertEquals(40, progressTracker.getEstimatedTotalCount());
+        assertEquals(25, progressTracker.getPercentageCompleted());
+    }
+
+    @Test
+    void contractsAreCountedOnTheirOwnAndInTheJob() {
+        ProgressTracker progressTracker = ProgressTracker.builder()
+                .jobUuid("JOB")
+                .patientsByContract(createPatientsByContract("C0001", 10))
+                .patientsByContract(createPatientsByContract("C0002", 30))
+                .failureThreshold(10)
+                .build();
+
+        var first = progressTracker.getContractProgress("C0001");
+        first.incrementProcessedCount();
+        first.incrementFailureCount();
+        first.incrementOptOutCount();
+        var second = progressTracker.getContractProgress("C0002");
+        second.incrementProcessedCount();
+        second.addEobsWritten(3);
+        second.addBytesWritten(3000);
+        assertSame(first, progressTracker.getContractProgress("C0001"));
+
+        ProgressSnapshot snapshot = progressTracker.snapshot();
+        assertEquals("JOB", snapshot.getJobUuid());
+        assertEquals(40, snapshot.getTotalCount());
+        assertEquals(2, snapshot.getProcessedCount());
+        assertEquals(1, snapshot.getFailureCount());
+        assertEquals(1, snapshot.getOptOutCount());
+        assertEquals(3, snapshot.getEobsWritten());
+        assertEquals(3000, snapshot.getBytesWritten());
+        assertEquals(5, snapshot.getPercentageCompleted());
+
+        var contract = snapshot.getContracts().get("C0002");
+        assertEquals(30, contract.getPatientCount());
+        assertEquals(1, contract.getProcessedCount());
+        assertEquals(0, contract.getFailureCount());
+        assertEquals(3, contract.getEobsWritten());
+        assertEquals(1, snapshot.getContracts().get("C0001").getOptOutCount());
+
+        // A snapshot doesn't move on with the tracker
+        second.incrementProcessedCount();
+        assertEquals(2, snapshot.getProcessedCount());
+        assertEquals(3, progressTracker.snapshot().getProcessedCount());
+    }
+
+    @Test
+    void patientsCountedByManyThreadsAreAllCounted() throws Exception {
+        ProgressTracker progressTracker = ProgressTracker.builder()
+                .jobUuid("JOB")
+                .patientsByContract(createPatientsByContract("C0001", 10))
+                .failureThreshold(10)
+                .build();
+        var progress = progressTracker.getContractProgress("C0001");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 10_000; j++) {
+                        progress.incrementProcessedCount();
+                        progress.addEobsWritten(2);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ProgressSnapshot snapshot = progressTracker.snapshot();
+        assertEquals(80_000, snapshot.getProcessedCount());
+        assertEquals(160_000, snapshot.getEobsWritten());
+        assertEquals(80_000, snapshot.getContracts().get("C0001").getProcessedCount());
+    }
+
+    @Test
+    void throughputIsMeasuredBetweenSnapshots() {
+        Instant started = Instant.parse("2020-01-01T00:00:00Z");
+        ProgressSnapshot earlier = ProgressSnapshot.builder()
+                .startedAt(started)
+                .takenAt(started.plusSeconds(10))
+                .processedCount(100)
+                .eobsWritten(1_000)
+                .build();
+        ProgressSnapshot later = ProgressSnapshot.builder()
+                .startedAt(started)
+                .takenAt(started.plusSeconds(20))
+                .processedCount(400)
+                .eobsWritten(2_000)
+                .build();
+
+        assertEquals(20.0, later.getPatientsPerSecond());
+        assertEquals(30.0, later.getPatientsPerSecondSince(earlier));
+        assertEquals(100.0, later.getEobsPerSecondSince(earlier));
+
+        // Before the progress has been logged the interval starts with the job
+        assertEquals(20.0, later.getPatientsPerSecondSince(null));
+        assertEquals(100.0, later.getEobsPerSecondSince(null));
+
+        // Snapshots taken at the same moment don't divide by zero
+        assertEquals(0.0, later.getPatientsPerSecondSince(later));
+    }
+
+    private GetPatientsByContractResponse createPatientsByContract(String contractNumber, int numPatients) {
+        GetPatientsByContractResponse.GetPatientsByContractResponseBuilder builder = GetPatientsByContractResponse.builder()
+                .contractNumber(contractNumber);
+        for (int i = 0; i < numPatients; i++) {
+            builder.patient(PatientDTO.builder().patientId(contractNumber + "_" + i).build());
+        }
+        return builder.build();
+    }
+}
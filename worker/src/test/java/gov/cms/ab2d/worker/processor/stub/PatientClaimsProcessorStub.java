@@ -2,18 +2,17 @@ package gov.cms.ab2d.worker.processor.stub;
 
 import gov.cms.ab2d.worker.processor.PatientClaimsProcessor;
 import gov.cms.ab2d.worker.processor.domainmodel.PatientClaimsRequest;
-import org.springframework.scheduling.annotation.AsyncResult;
 
 import java.nio.file.Path;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 public class PatientClaimsProcessorStub implements PatientClaimsProcessor {
 
     @Override
-    public Future<Void> process(PatientClaimsRequest request) {
+    public CompletableFuture<Void> process(PatientClaimsRequest request) {
 
         request.getHelper().getDataFiles().add(Path.of("TEST_DATA_FILE"));
         request.getHelper().getErrorFiles().add(Path.of("TEST_ERROR_FILE"));
-        return new AsyncResult<>(null);
+        return CompletableFuture.completedFuture(null);
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package gov.cms.ab2d.worker.service;
 
+import gov.cms.ab2d.common.dto.ClearCoverageCacheRequest;
 import gov.cms.ab2d.common.model.Beneficiary;
 import gov.cms.ab2d.common.model.Contract;
 import gov.cms.ab2d.common.model.Coverage;
@@ -8,11 +9,14 @@ import gov.cms.ab2d.common.repository.BeneficiaryRepository;
 import gov.cms.ab2d.common.repository.ContractRepository;
 import gov.cms.ab2d.common.repository.CoverageRepository;
 import gov.cms.ab2d.common.repository.SponsorRepository;
+import gov.cms.ab2d.common.service.CacheService;
 import gov.cms.ab2d.common.util.AB2DPostgresqlContainer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
@@ -28,6 +32,11 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 @SpringBootTest
 @Testcontainers
@@ -39,8 +48,9 @@ class BeneficiaryServiceIntegrationTest {
 
     @Autowired BeneficiaryRepository beneRepo;
     @Autowired ContractRepository contractRepo;
-    @Autowired CoverageRepository coverageRepo;
+    @SpyBean CoverageRepository coverageRepo;
     @Autowired SponsorRepository sponsorRepo;
+    @Autowired CacheService cacheService;
 
     private Random random = new Random();
     private Contract contract;
@@ -92,6 +102,51 @@ class BeneficiaryServiceIntegrationTest {
 
     }
 
+    @Test
+    void findPatientIdsInDb_StreamsTheCoverageInAReadOnlyTransaction() {
+        beneficiaries.forEach(beneficiary -> createCoverage(contract, beneficiary, 1));
+
+        doAnswer(invocation -> {
+            assertTrue(TransactionSynchronizationManager.isActualTransactionActive());
+            assertTrue(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+            return invocation.callRealMethod();
+        }).when(coverageRepo).streamActivePatientIds(anyLong(), anyInt());
+
+        assertThat(cut.findPatientIdsInDb(contract.getId(), 1), is(patientIds));
+        verify(coverageRepo).streamActivePatientIds(contract.getId(), 1);
+    }
+
+    @Test
+    void findPatientIdsInDb_ReadsAStoredMonthWithoutStreamingIt() {
+        cut.storeBeneficiaries(contract.getId(), patientIds, 1);
+
+        assertThat(cut.findPatientIdsInDb(contract.getId(), 1), is(patientIds));
+        verify(coverageRepo, never()).streamActivePatientIds(anyLong(), anyInt());
+    }
+
+    @Test
+    void findPatientIdsInDb_IgnoresAStoredMonthOnceItsCacheIsCleared() {
+        cut.storeBeneficiaries(contract.getId(), patientIds, 1);
+        cut.storeBeneficiaries(contract.getId(), patientIds, 2);
+
+        var request = new ClearCoverageCacheRequest();
+        request.setContractNumber(contract.getContractNumber());
+        request.setMonth(1);
+        cacheService.clearCache(request);
+
+        assertTrue(cut.findPatientIdsInDb(contract.getId(), 1).isEmpty());
+        assertThat(cut.findPatientIdsInDb(contract.getId(), 2), is(patientIds));
+    }
+
+    @Test
+    void findPatientIdsInDb_IgnoresEveryStoredMonthOnceTheWholeCacheIsCleared() {
+        cut.storeBeneficiaries(contract.getId(), patientIds, 1);
+
+        cacheService.clearCache(new ClearCoverageCacheRequest());
+
+        assertTrue(cut.findPatientIdsInDb(contract.getId(), 1).isEmpty());
+    }
+
     @Test
     void storeBeneficiaries_WhenTheBenesAlreadyExist() {
 
@@ -107,6 +162,18 @@ class BeneficiaryServiceIntegrationTest {
         verifyStoredBenes();
     }
 
+    @Test
+    void storeBeneficiaries_WhenTheMonthIsStoredAgain() {
+
+        patientIds.add(Instant.now().toString() + random.nextInt(100));
+        cut.storeBeneficiaries(contract.getId(), patientIds, 1);
+        cut.storeBeneficiaries(contract.getId(), patientIds, 1);
+        verifyStoredBenes();
+
+        assertThat(cut.findPatientIdsInDb(contract.getId(), 1), is(patientIds));
+        assertTrue(cut.findPatientIdsInDb(contract.getId(), 2).isEmpty());
+    }
+
     private void verifyStoredBenes() {
         beneficiaries.stream().forEach(beneficiary -> {
             var coverage = coverageRepo.findByContractAndBeneficiaryAndPartDMonth(contract, beneficiary, 1).get();
@@ -0,0 +1,66 @@
+package gov.cms.ab2d.worker.service;
+
+import gov.cms.ab2d.common.model.OptOut;
+import gov.cms.ab2d.common.repository.OptOutRepository;
+import gov.cms.ab2d.common.util.BloomFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BloomFilterOptOutIndexTest {
+
+    private final LocalDate today = LocalDate.of(2020, 6, 15);
+
+    @Mock private OptOutRepository optOutRepository;
+
+    private BloomFilter bloomFilter;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        bloomFilter = new BloomFilter(10, 0.01);
+    }
+
+    @Test
+    void beneficiariesNotInTheFilterAreNotLookedUp() {
+        BloomFilterOptOutIndex index = new BloomFilterOptOutIndex(bloomFilter, optOutRepository);
+
+        assertFalse(index.isOptedOut("-19990000000001", today));
+        assertFalse(index.isOptedOut(null, today));
+        verify(optOutRepository, never()).findByCcwId(anyString());
+    }
+
+    @Test
+    void beneficiariesInTheFilterAreCheckedAgainstTheirOptOuts() {
+        bloomFilter.add("-19990000000001");
+        bloomFilter.add("-19990000000002");
+        bloomFilter.add("-19990000000003");
+        when(optOutRepository.findByCcwId("-19990000000001")).thenReturn(List.of(createOptOut(today.minusDays(1))));
+        when(optOutRepository.findByCcwId("-19990000000002")).thenReturn(List.of(createOptOut(today.plusDays(1))));
+        when(optOutRepository.findByCcwId("-19990000000003")).thenReturn(List.of());
+
+        BloomFilterOptOutIndex index = new BloomFilterOptOutIndex(bloomFilter, optOutRepository);
+
+        assertTrue(index.isOptedOut("-19990000000001", today));
+        assertFalse(index.isOptedOut("-19990000000002", today));
+        assertTrue(index.isOptedOut("-19990000000002", today.plusDays(1)));
+        assertFalse(index.isOptedOut("-19990000000003", today));
+    }
+
+    private OptOut createOptOut(LocalDate effectiveDate) {
+        OptOut optOut = new OptOut();
+        optOut.setEffectiveDate(effectiveDate);
+        return optOut;
+    }
+}
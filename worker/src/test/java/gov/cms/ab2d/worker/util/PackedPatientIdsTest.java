@@ -0,0 +1,39 @@
+package gov.cms.ab2d.worker.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackedPatientIdsTest {
+
+    @Test
+    void idsComeBackUnchanged() {
+        Set<String> patientIds = new LinkedHashSet<>(List.of("-19990000001234", "20140000008325", "0123", "-0",
+                "ccw_patient_005", "", "20140000000001", "999999999999999999", "-999999999999999999", "ßenë"));
+
+        assertEquals(patientIds, PackedPatientIds.unpack(PackedPatientIds.pack(patientIds)));
+    }
+
+    @Test
+    void anEmptyMonthComesBackEmpty() {
+        assertTrue(PackedPatientIds.unpack(PackedPatientIds.pack(Set.of())).isEmpty());
+    }
+
+    @Test
+    void closeNumericIdsTakeAFewBytesEach() {
+        Set<String> patientIds = new LinkedHashSet<>();
+        for (long id = -20140000000000L; id > -20140000100000L; id -= 7) {
+            patientIds.add(Long.toString(id));
+        }
+
+        byte[] packed = PackedPatientIds.pack(patientIds);
+
+        assertTrue(packed.length < patientIds.size() * 2, "packed into " + packed.length + " bytes");
+        assertEquals(patientIds, PackedPatientIds.unpack(packed));
+    }
+}